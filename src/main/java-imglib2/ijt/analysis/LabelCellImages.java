@@ -0,0 +1,212 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import ij.process.FloatProcessor;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.view.Views;
+
+/**
+ * Computes oriented boxes of the labels within ImgLib2 label images, without
+ * copying the whole image into an ImageProcessor.
+ *
+ * The image is processed cell by cell. For cell images, the cells of the
+ * image grid are used, and are visited in storage order, so that each cell
+ * is loaded once from the cell cache. Other images are split into tiles of
+ * fixed size. Cells are summarized in parallel into TileSummary instances,
+ * that retain only the convex hull of each label, and summaries are merged
+ * before computing the boxes. Memory usage therefore depends on the size of
+ * the cells and on the number of labels, not on the size of the image. Each
+ * thread copies cells into its own tile buffers, that are reused from one
+ * cell to the next.
+ *
+ * Label values are copied into float tiles, as for 32-bit ImageJ label
+ * images, and must not exceed 2^24 in absolute value.
+ *
+ * This class requires ImgLib2, and is only compiled by the "imglib2"
+ * profile.
+ *
+ * @see TileSummary
+ *
+ * @author dlegland
+ *
+ */
+public class LabelCellImages
+{
+	// ====================================================
+	// Static variables
+
+	/** The size of the tiles used for images that are not cell images */
+	public static final int DEFAULT_TILE_SIZE = 512;
+
+	/** The largest label that can be stored exactly within a float */
+	private static final long MAX_LABEL = 1 << 24;
+
+	/**
+	 * The pixel buffers of each thread, one for each shape of cell: regular
+	 * cells, cells on the right border, cells on the bottom border, and the
+	 * bottom-right cell. A buffer is reused when its size matches the cell.
+	 */
+	private static final ThreadLocal<float[][]> TILE_BUFFERS = new ThreadLocal<float[][]>()
+	{
+		@Override
+		protected float[][] initialValue()
+		{
+			return new float[4][];
+		}
+	};
+
+
+	// ====================================================
+	// Static methods
+
+	/**
+	 * Computes the oriented box of each label of a 2D label image.
+	 *
+	 * @param image
+	 *            a 2D label image with integer values
+	 * @param criterion
+	 *            the quantity minimized by each box (width, area or perimeter)
+	 * @return a table containing the oriented box of each label, in image
+	 *         coordinates
+	 */
+	public static final <T extends IntegerType<T>> OrientedBoxTable orientedBoxTable(
+			RandomAccessibleInterval<T> image, OrientedBox2D.Criterion criterion)
+	{
+		return summarize(image).toBoxes(criterion);
+	}
+
+	/**
+	 * Computes the summary of each label of a 2D label image, by processing
+	 * the cells of the image in parallel and merging their summaries.
+	 *
+	 * @param image
+	 *            a 2D label image with integer values
+	 * @return the summary of the whole image, in image coordinates
+	 */
+	public static final <T extends IntegerType<T>> TileSummary summarize(final RandomAccessibleInterval<T> image)
+	{
+		if (image.numDimensions() != 2)
+		{
+			throw new IllegalArgumentException("Requires a 2D image, not a " + image.numDimensions() + "D one");
+		}
+
+		// use the cell grid of cell images, or tiles of fixed size
+		int cellWidth = DEFAULT_TILE_SIZE;
+		int cellHeight = DEFAULT_TILE_SIZE;
+		if (image instanceof AbstractCellImg)
+		{
+			CellGrid grid = ((AbstractCellImg<?, ?, ?, ?>) image).getCellGrid();
+			cellWidth = grid.cellDimension(0);
+			cellHeight = grid.cellDimension(1);
+		}
+
+		final long x0 = image.min(0);
+		final long y0 = image.min(1);
+		final long width = image.dimension(0);
+		final long height = image.dimension(1);
+		if (x0 < Integer.MIN_VALUE || y0 < Integer.MIN_VALUE || x0 + width > Integer.MAX_VALUE
+				|| y0 + height > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Image bounds exceed the range of integer coordinates");
+		}
+
+		final int cw = cellWidth;
+		final int ch = cellHeight;
+		final int nx = (int) ((width + cw - 1) / cw);
+		final int ny = (int) ((height + ch - 1) / ch);
+		final int nCells = nx * ny;
+		if (nCells == 0)
+		{
+			throw new IllegalArgumentException("Requires a non-empty image");
+		}
+
+		// summarize cells in parallel, cell indices following storage order
+		final TileSummary[] summaries = new TileSummary[nCells];
+		LabelTasks.forEachInOrder(nCells, new LabelTasks.Task()
+		{
+			@Override
+			public void process(int index)
+			{
+				long cellX = x0 + (long) (index % nx) * cw;
+				long cellY = y0 + (long) (index / nx) * ch;
+				int w = (int) Math.min(cw, x0 + width - cellX);
+				int h = (int) Math.min(ch, y0 + height - cellY);
+				// the summary does not retain the tile, whose buffer can be
+				// reused for the next cell processed by this thread
+				int shape = (w == cw ? 0 : 1) + (h == ch ? 0 : 2);
+				FloatProcessor tile = copyCell(image, cellX, cellY, w, h, shape);
+				summaries[index] = TileSummary.compute(tile, (int) cellX, (int) cellY);
+			}
+		});
+
+		return mergeAll(summaries);
+	}
+
+	/**
+	 * Copies the values of a rectangular cell of the image into a float
+	 * processor, backed by the buffer of the current thread for the
+	 * specified cell shape.
+	 */
+	private static final <T extends IntegerType<T>> FloatProcessor copyCell(RandomAccessibleInterval<T> image,
+			long cellX, long cellY, int cellWidth, int cellHeight, int shape)
+	{
+		long[] min = new long[] { cellX, cellY };
+		long[] max = new long[] { cellX + cellWidth - 1, cellY + cellHeight - 1 };
+
+		float[][] buffers = TILE_BUFFERS.get();
+		float[] pixels = buffers[shape];
+		if (pixels == null || pixels.length != cellWidth * cellHeight)
+		{
+			pixels = new float[cellWidth * cellHeight];
+			buffers[shape] = pixels;
+		}
+
+		// flat iteration order is the same as the order of processor pixels
+		Cursor<T> cursor = Views.flatIterable(Views.interval(image, min, max)).cursor();
+		int i = 0;
+		while (cursor.hasNext())
+		{
+			long label = cursor.next().getIntegerLong();
+			if (label > MAX_LABEL || label < -MAX_LABEL)
+			{
+				throw new IllegalArgumentException("Label can not be represented within a float: " + label);
+			}
+			pixels[i++] = label;
+		}
+		return new FloatProcessor(cellWidth, cellHeight, pixels);
+	}
+
+	/**
+	 * Merges an array of summaries by pairs, so that each label summary is
+	 * merged a logarithmic number of times.
+	 */
+	private static final TileSummary mergeAll(final TileSummary[] summaries)
+	{
+		int n = summaries.length;
+		for (int step = 1; step < n; step *= 2)
+		{
+			final int s = step;
+			int nPairs = (n + 2 * s - 1) / (2 * s);
+			LabelTasks.forEachInOrder(nPairs, new LabelTasks.Task()
+			{
+				@Override
+				public void process(int index)
+				{
+					int i = index * 2 * s;
+					if (i + s < summaries.length)
+					{
+						summaries[i] = summaries[i].merge(summaries[i + s]);
+						summaries[i + s] = null;
+					}
+				}
+			});
+		}
+		return summaries[0];
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.util.concurrent.ExecutorService;
+
+import org.scijava.ItemIO;
+import org.scijava.command.Command;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.thread.ThreadService;
+
+import net.imagej.table.DefaultResultsTable;
+import net.imagej.table.ResultsTable;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.IntegerType;
+
+/**
+ * Computes the oriented box of each label of a 2D label image, as a SciJava
+ * command that can be run headless, for example from scripts.
+ *
+ * Per-label computations run on the executor of the ThreadService of the
+ * context, instead of the shared pool of LabelTasks, and the number of
+ * threads is a parameter of the command. The image is processed cell by
+ * cell, and results are returned as a SciJava table, without using the
+ * ImageJ 1.x results table.
+ *
+ * This class requires SciJava and ImgLib2, and is only compiled by the
+ * "scijava" profile.
+ *
+ * @see LabelTasks#runWith(ExecutorService, int, Runnable)
+ * @see LabelCellImages
+ *
+ * @author dlegland
+ *
+ */
+@Plugin(type = Command.class, menuPath = "Plugins>Oriented Boxes>Oriented Box (Table)", headless = true)
+public class OrientedBoxCommand<T extends IntegerType<T>> implements Command
+{
+	// ====================================================
+	// Parameters
+
+	@Parameter
+	private ThreadService threadService;
+
+	@Parameter(label = "Label Image")
+	private RandomAccessibleInterval<T> labelImage;
+
+	@Parameter(label = "Box Criterion")
+	private OrientedBox2D.Criterion criterion = OrientedBox2D.Criterion.MIN_WIDTH;
+
+	@Parameter(label = "Number of Threads", min = "1")
+	private int nThreads = Runtime.getRuntime().availableProcessors();
+
+	@Parameter(type = ItemIO.OUTPUT, label = "Oriented Boxes")
+	private ResultsTable table;
+
+
+	// ====================================================
+	// Implementation of the Command interface
+
+	@Override
+	public void run()
+	{
+		final OrientedBoxTable[] boxTable = new OrientedBoxTable[1];
+		LabelTasks.runWith(this.threadService.getExecutorService(), this.nThreads, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				boxTable[0] = LabelCellImages.orientedBoxTable(labelImage, criterion);
+			}
+		});
+		this.table = asTable(boxTable[0]);
+	}
+
+
+	// ====================================================
+	// Static methods
+
+	/**
+	 * Converts a table of oriented boxes into a SciJava table, with one row
+	 * for each label and one column for each box parameter.
+	 *
+	 * @param boxTable
+	 *            the oriented boxes
+	 * @return a new table containing the parameters of the boxes
+	 */
+	public static final ResultsTable asTable(OrientedBoxTable boxTable)
+	{
+		int nLabels = boxTable.size();
+		ResultsTable table = new DefaultResultsTable(5, nLabels);
+		table.setColumnHeader(0, "Box.Center.X");
+		table.setColumnHeader(1, "Box.Center.Y");
+		table.setColumnHeader(2, "Box.Length");
+		table.setColumnHeader(3, "Box.Width");
+		table.setColumnHeader(4, "Box.Orientation");
+
+		LabelFormatter formatter = new LabelFormatter("lbl-", LabelFormatter.digitCount(nLabels));
+		for (int i = 0; i < nLabels; i++)
+		{
+			table.setRowHeader(i, formatter.format(boxTable.labels[i]));
+			table.setValue(0, i, boxTable.centerX[i]);
+			table.setValue(1, i, boxTable.centerY[i]);
+			table.setValue(2, i, boxTable.length[i]);
+			table.setValue(3, i, boxTable.width[i]);
+			table.setValue(4, i, boxTable.theta[i]);
+		}
+		return table;
+	}
+}
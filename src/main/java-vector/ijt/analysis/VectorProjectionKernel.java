@@ -0,0 +1,136 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementation of projection kernels based on the Java Vector API. The
+ * main loops process as many coordinates as fit into the preferred vector
+ * species of the platform, and the remaining coordinates are processed by
+ * scalar code.
+ * 
+ * This class requires the jdk.incubator.vector module, and is only compiled
+ * by the "vector-api" profile.
+ * 
+ * @author dlegland
+ *
+ */
+public class VectorProjectionKernel implements ProjectionKernel
+{
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public void projectionRange(double[] xCoords, double[] yCoords, int n, double ux, double uy, double[] range)
+	{
+		double pmin = Double.POSITIVE_INFINITY;
+		double pmax = Double.NEGATIVE_INFINITY;
+
+		int i = 0;
+		int bound = SPECIES.loopBound(n);
+		if (bound > 0)
+		{
+			DoubleVector vmin = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+			DoubleVector vmax = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+			for (; i < bound; i += SPECIES.length())
+			{
+				DoubleVector x = DoubleVector.fromArray(SPECIES, xCoords, i);
+				DoubleVector y = DoubleVector.fromArray(SPECIES, yCoords, i);
+				DoubleVector proj = x.mul(ux).add(y.mul(uy));
+				vmin = vmin.min(proj);
+				vmax = vmax.max(proj);
+			}
+			pmin = vmin.reduceLanes(VectorOperators.MIN);
+			pmax = vmax.reduceLanes(VectorOperators.MAX);
+		}
+
+		// process remaining coordinates
+		for (; i < n; i++)
+		{
+			double proj = xCoords[i] * ux + yCoords[i] * uy;
+			pmin = Math.min(pmin, proj);
+			pmax = Math.max(pmax, proj);
+		}
+		range[0] = pmin;
+		range[1] = pmax;
+	}
+
+	@Override
+	public double maxAbsCross(double[] xCoords, double[] yCoords, int n, double x0, double y0, double dx, double dy)
+	{
+		double maxCross = 0;
+
+		int i = 0;
+		int bound = SPECIES.loopBound(n);
+		if (bound > 0)
+		{
+			DoubleVector vmax = DoubleVector.zero(SPECIES);
+			for (; i < bound; i += SPECIES.length())
+			{
+				DoubleVector x = DoubleVector.fromArray(SPECIES, xCoords, i).sub(x0);
+				DoubleVector y = DoubleVector.fromArray(SPECIES, yCoords, i).sub(y0);
+				DoubleVector cross = x.mul(dy).sub(y.mul(dx)).abs();
+				vmax = vmax.max(cross);
+			}
+			maxCross = vmax.reduceLanes(VectorOperators.MAX);
+		}
+
+		// process remaining coordinates
+		for (; i < n; i++)
+		{
+			double cross = Math.abs((xCoords[i] - x0) * dy - (yCoords[i] - y0) * dx);
+			maxCross = Math.max(maxCross, cross);
+		}
+		return maxCross;
+	}
+
+	@Override
+	public double maxDistanceSq(double[] xCoords, double[] yCoords, int start, int n, double x0, double y0, int[] index)
+	{
+		double dist2Max = 0;
+		int indMax = -1;
+
+		int i = start;
+		int bound = start + SPECIES.loopBound(Math.max(n - start, 0));
+		if (bound > start)
+		{
+			// keep the maximum of each lane, and the index where it was found
+			DoubleVector vmax = DoubleVector.broadcast(SPECIES, -1.0);
+			DoubleVector vind = DoubleVector.zero(SPECIES);
+			DoubleVector lanes = DoubleVector.zero(SPECIES).addIndex(1);
+			for (; i < bound; i += SPECIES.length())
+			{
+				DoubleVector dx = DoubleVector.fromArray(SPECIES, xCoords, i).sub(x0);
+				DoubleVector dy = DoubleVector.fromArray(SPECIES, yCoords, i).sub(y0);
+				DoubleVector dist2 = dx.mul(dx).add(dy.mul(dy));
+				VectorMask<Double> greater = dist2.compare(VectorOperators.GT, vmax);
+				vmax = vmax.blend(dist2, greater);
+				vind = vind.blend(lanes.add(i), greater);
+			}
+			dist2Max = vmax.reduceLanes(VectorOperators.MAX);
+			
+			// smallest index among the lanes reaching the maximum
+			VectorMask<Double> reached = vmax.compare(VectorOperators.EQ, dist2Max);
+			indMax = (int) vind.reduceLanes(VectorOperators.MIN, reached);
+		}
+
+		// process remaining coordinates
+		for (; i < n; i++)
+		{
+			double dx = xCoords[i] - x0;
+			double dy = yCoords[i] - y0;
+			double dist2 = dx * dx + dy * dy;
+			if (dist2 > dist2Max || indMax < 0)
+			{
+				dist2Max = dist2;
+				indMax = i;
+			}
+		}
+		index[0] = indMax;
+		return dist2Max;
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import ij.IJ;
+
+/**
+ * Allows to stop a long computation before its end. The token is checked
+ * regularly by the computation, which stops as soon as possible and returns
+ * partial results.
+ *
+ * A token is cancelled either explicitly by calling the cancel() method, or
+ * automatically when its deadline is reached, when the thread it watches is
+ * interrupted, or when the Escape key is pressed within ImageJ. Once
+ * cancelled, a token remains cancelled.
+ *
+ * @author dlegland
+ *
+ */
+public class CancellationToken
+{
+	// ====================================================
+	// Class variables
+
+	/** True once the token has been cancelled */
+	private volatile boolean cancelled = false;
+
+	/** The deadline, as given by System.nanoTime(), or 0 if none */
+	private final long deadline;
+
+	/** The thread whose interruption cancels the token, or null */
+	private final Thread thread;
+
+	/** Specifies whether the Escape key cancels the token */
+	private final boolean escapeKey;
+
+
+	// ====================================================
+	// Static factories
+
+	/**
+	 * Creates a token cancelled when the Escape key is pressed within
+	 * ImageJ, or when the current thread is interrupted. The Escape key
+	 * status is reset, so that previous key presses are ignored.
+	 *
+	 * @return a new token for ImageJ plugins
+	 */
+	public static final CancellationToken forImageJ()
+	{
+		IJ.resetEscape();
+		return new CancellationToken(0, Thread.currentThread(), true);
+	}
+
+	/**
+	 * Creates a token cancelled when the current thread is interrupted, or
+	 * when the specified time has elapsed.
+	 *
+	 * @param timeoutMillis
+	 *            the maximum duration of the computation, in milliseconds, or
+	 *            0 for no time limit
+	 * @return a new token for services
+	 */
+	public static final CancellationToken forCurrentThread(long timeoutMillis)
+	{
+		return new CancellationToken(timeoutMillis, Thread.currentThread(), false);
+	}
+
+
+	// ====================================================
+	// Constructors
+
+	/**
+	 * Creates a new token that is only cancelled by calling the cancel()
+	 * method.
+	 */
+	public CancellationToken()
+	{
+		this(0, null, false);
+	}
+
+	/**
+	 * Creates a new token that is cancelled when the specified time has
+	 * elapsed, or by calling the cancel() method.
+	 *
+	 * @param timeoutMillis
+	 *            the maximum duration of the computation, in milliseconds, or
+	 *            0 for no time limit
+	 */
+	public CancellationToken(long timeoutMillis)
+	{
+		this(timeoutMillis, null, false);
+	}
+
+	/**
+	 * Creates a new token.
+	 *
+	 * @param timeoutMillis
+	 *            the maximum duration of the computation, in milliseconds, or
+	 *            0 for no time limit
+	 * @param thread
+	 *            the thread whose interruption cancels the token, or null
+	 * @param escapeKey
+	 *            true if the Escape key of ImageJ cancels the token
+	 */
+	public CancellationToken(long timeoutMillis, Thread thread, boolean escapeKey)
+	{
+		if (timeoutMillis < 0)
+		{
+			throw new IllegalArgumentException("Timeout must be positive, not " + timeoutMillis);
+		}
+		long deadline = 0;
+		if (timeoutMillis > 0)
+		{
+			// avoid the value 0, used for tokens without deadline
+			deadline = System.nanoTime() + timeoutMillis * 1000000L;
+			deadline = deadline == 0 ? 1 : deadline;
+		}
+		this.deadline = deadline;
+		this.thread = thread;
+		this.escapeKey = escapeKey;
+	}
+
+
+	// ====================================================
+	// Methods
+
+	/**
+	 * Cancels the computations using this token.
+	 */
+	public void cancel()
+	{
+		this.cancelled = true;
+	}
+
+	/**
+	 * Checks whether the computation should stop. This method is cheap
+	 * enough to be called for each row of an image, or for each label.
+	 *
+	 * @return true if the token has been cancelled
+	 */
+	public boolean isCancelled()
+	{
+		if (this.cancelled)
+		{
+			return true;
+		}
+
+		if ((this.deadline != 0 && System.nanoTime() - this.deadline >= 0)
+				|| (this.thread != null && this.thread.isInterrupted())
+				|| (this.escapeKey && IJ.escapePressed()))
+		{
+			this.cancelled = true;
+		}
+		return this.cancelled;
+	}
+
+	/**
+	 * Checks whether a computation using the specified token should stop.
+	 *
+	 * @param token
+	 *            a token, or null if the computation can not be cancelled
+	 * @return true if the token is not null and has been cancelled
+	 */
+	static final boolean isCancelled(CancellationToken token)
+	{
+		return token != null && token.isCancelled();
+	}
+}
@@ -0,0 +1,421 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Convex hull of a set of 3D points, represented by triangular faces.
+ *
+ * The hull is computed with an incremental algorithm: starting from a
+ * tetrahedron, each point located outside of the current hull replaces the
+ * faces it can see by a cone of faces joining the point to the horizon
+ * edges. The computation time is in O(n*h), for n points and h hull faces.
+ *
+ * @author dlegland
+ *
+ */
+public class ConvexHull3D
+{
+	// ====================================================
+	// Class variables
+
+	/** The indices of the hull vertices within the input arrays */
+	final int[] vertices;
+
+	/**
+	 * The faces of the hull, as triplets of indices within the input arrays.
+	 * Vertices are ordered counter-clockwise when seen from outside the hull.
+	 */
+	final int[][] faces;
+
+
+	// ====================================================
+	// Static methods
+
+	/**
+	 * Computes the convex hull of a set of 3D points. If all the points are
+	 * coplanar, the resulting hull has no face.
+	 *
+	 * @param xCoords
+	 *            the x-coordinates of the points
+	 * @param yCoords
+	 *            the y-coordinates of the points
+	 * @param zCoords
+	 *            the z-coordinates of the points
+	 * @param n
+	 *            the number of points to consider
+	 * @return the convex hull of the points
+	 */
+	public static final ConvexHull3D compute(double[] xCoords, double[] yCoords, double[] zCoords, int n)
+	{
+		if (n < 4)
+		{
+			return new ConvexHull3D(new int[0], new int[0][]);
+		}
+
+		// tolerance for visibility tests, relative to the size of the point set
+		double extent = 0;
+		for (int i = 1; i < n; i++)
+		{
+			extent = Math.max(extent, Math.abs(xCoords[i] - xCoords[0]));
+			extent = Math.max(extent, Math.abs(yCoords[i] - yCoords[0]));
+			extent = Math.max(extent, Math.abs(zCoords[i] - zCoords[0]));
+		}
+		double eps = 1e-10 * Math.max(extent, 1);
+
+		// find four points forming a non-degenerate tetrahedron
+		int i0 = 0;
+		int i1 = farthestPoint(xCoords, yCoords, zCoords, n, i0);
+		double[] normal = new double[3];
+		int i2 = -1;
+		double maxDist = eps;
+		for (int i = 0; i < n; i++)
+		{
+			triangleNormal(xCoords, yCoords, zCoords, i0, i1, i, normal);
+			double d = Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+			if (d > maxDist)
+			{
+				maxDist = d;
+				i2 = i;
+			}
+		}
+		if (i2 < 0)
+		{
+			return new ConvexHull3D(new int[0], new int[0][]);
+		}
+		int i3 = -1;
+		maxDist = eps;
+		double[] plane = createPlane(xCoords, yCoords, zCoords, i0, i1, i2);
+		for (int i = 0; i < n; i++)
+		{
+			double d = Math.abs(signedDistance(plane, xCoords[i], yCoords[i], zCoords[i]));
+			if (d > maxDist)
+			{
+				maxDist = d;
+				i3 = i;
+			}
+		}
+		if (i3 < 0)
+		{
+			return new ConvexHull3D(new int[0], new int[0][]);
+		}
+
+		// create the faces of the initial tetrahedron, oriented outward
+		if (signedDistance(plane, xCoords[i3], yCoords[i3], zCoords[i3]) > 0)
+		{
+			int tmp = i1;
+			i1 = i2;
+			i2 = tmp;
+		}
+		ArrayList<int[]> faces = new ArrayList<int[]>();
+		ArrayList<double[]> planes = new ArrayList<double[]>();
+		addFace(faces, planes, xCoords, yCoords, zCoords, i0, i1, i2);
+		addFace(faces, planes, xCoords, yCoords, zCoords, i0, i3, i1);
+		addFace(faces, planes, xCoords, yCoords, zCoords, i1, i3, i2);
+		addFace(faces, planes, xCoords, yCoords, zCoords, i2, i3, i0);
+
+		// add remaining points one by one
+		EdgeSet visibleEdges = new EdgeSet();
+		ArrayList<int[]> newFaces = new ArrayList<int[]>();
+		ArrayList<double[]> newPlanes = new ArrayList<double[]>();
+		for (int i = 0; i < n; i++)
+		{
+			if (i == i0 || i == i1 || i == i2 || i == i3)
+			{
+				continue;
+			}
+			double x = xCoords[i];
+			double y = yCoords[i];
+			double z = zCoords[i];
+
+			// identify the edges of the faces visible from the point
+			visibleEdges.clear();
+			newFaces.clear();
+			newPlanes.clear();
+			for (int f = 0; f < faces.size(); f++)
+			{
+				int[] face = faces.get(f);
+				if (signedDistance(planes.get(f), x, y, z) > eps)
+				{
+					visibleEdges.add(edgeKey(face[0], face[1], n));
+					visibleEdges.add(edgeKey(face[1], face[2], n));
+					visibleEdges.add(edgeKey(face[2], face[0], n));
+				}
+				else
+				{
+					newFaces.add(face);
+					newPlanes.add(planes.get(f));
+				}
+			}
+			if (visibleEdges.size == 0)
+			{
+				continue;
+			}
+
+			// join the point to each horizon edge, i.e. each visible edge
+			// whose opposite edge belongs to a hidden face
+			for (int e = 0; e < visibleEdges.size; e++)
+			{
+				long key = visibleEdges.get(e);
+				int a = (int) (key / n);
+				int b = (int) (key % n);
+				if (!visibleEdges.contains(edgeKey(b, a, n)))
+				{
+					addFace(newFaces, newPlanes, xCoords, yCoords, zCoords, a, b, i);
+				}
+			}
+
+			// swap face lists
+			ArrayList<int[]> tmpFaces = faces;
+			faces = newFaces;
+			newFaces = tmpFaces;
+			ArrayList<double[]> tmpPlanes = planes;
+			planes = newPlanes;
+			newPlanes = tmpPlanes;
+		}
+
+		// collect indices of hull vertices
+		boolean[] isVertex = new boolean[n];
+		int nVertices = 0;
+		for (int[] face : faces)
+		{
+			for (int v : face)
+			{
+				if (!isVertex[v])
+				{
+					isVertex[v] = true;
+					nVertices++;
+				}
+			}
+		}
+		int[] vertices = new int[nVertices];
+		nVertices = 0;
+		for (int i = 0; i < n; i++)
+		{
+			if (isVertex[i])
+			{
+				vertices[nVertices++] = i;
+			}
+		}
+
+		return new ConvexHull3D(vertices, faces.toArray(new int[faces.size()][]));
+	}
+
+	private static final int farthestPoint(double[] xCoords, double[] yCoords, double[] zCoords, int n, int i0)
+	{
+		int ind = i0;
+		double maxDist = 0;
+		for (int i = 0; i < n; i++)
+		{
+			double dx = xCoords[i] - xCoords[i0];
+			double dy = yCoords[i] - yCoords[i0];
+			double dz = zCoords[i] - zCoords[i0];
+			double d = dx * dx + dy * dy + dz * dz;
+			if (d > maxDist)
+			{
+				maxDist = d;
+				ind = i;
+			}
+		}
+		return ind;
+	}
+
+	private static final void addFace(ArrayList<int[]> faces, ArrayList<double[]> planes,
+			double[] xCoords, double[] yCoords, double[] zCoords, int i1, int i2, int i3)
+	{
+		faces.add(new int[] { i1, i2, i3 });
+		planes.add(createPlane(xCoords, yCoords, zCoords, i1, i2, i3));
+	}
+
+	/**
+	 * Computes the (non normalized) normal of a triangle.
+	 */
+	private static final void triangleNormal(double[] xCoords, double[] yCoords, double[] zCoords,
+			int i1, int i2, int i3, double[] normal)
+	{
+		double ux = xCoords[i2] - xCoords[i1];
+		double uy = yCoords[i2] - yCoords[i1];
+		double uz = zCoords[i2] - zCoords[i1];
+		double vx = xCoords[i3] - xCoords[i1];
+		double vy = yCoords[i3] - yCoords[i1];
+		double vz = zCoords[i3] - zCoords[i1];
+		normal[0] = uy * vz - uz * vy;
+		normal[1] = uz * vx - ux * vz;
+		normal[2] = ux * vy - uy * vx;
+	}
+
+	/**
+	 * Computes the plane containing a triangle, as a unit normal followed by
+	 * the offset of the plane along the normal.
+	 */
+	private static final double[] createPlane(double[] xCoords, double[] yCoords, double[] zCoords,
+			int i1, int i2, int i3)
+	{
+		double[] plane = new double[4];
+		triangleNormal(xCoords, yCoords, zCoords, i1, i2, i3, plane);
+		double norm = Math.sqrt(plane[0] * plane[0] + plane[1] * plane[1] + plane[2] * plane[2]);
+		plane[0] /= norm;
+		plane[1] /= norm;
+		plane[2] /= norm;
+		plane[3] = plane[0] * xCoords[i1] + plane[1] * yCoords[i1] + plane[2] * zCoords[i1];
+		return plane;
+	}
+
+	private static final double signedDistance(double[] plane, double x, double y, double z)
+	{
+		return plane[0] * x + plane[1] * y + plane[2] * z - plane[3];
+	}
+
+	private static final long edgeKey(int i1, int i2, int n)
+	{
+		return ((long) i1) * n + i2;
+	}
+
+
+	// ====================================================
+	// Inner class
+
+	/**
+	 * A set of edge keys, stored within an open addressing hash table of
+	 * primitive longs. Keys are also kept in insertion order, so that the
+	 * set can be iterated and cleared in time proportional to its size.
+	 */
+	private static final class EdgeSet
+	{
+		/** The value of empty slots, as keys are positive */
+		private static final long EMPTY = -1;
+
+		/** The hash table */
+		private long[] table = newTable(64);
+
+		/** The keys, in insertion order */
+		private long[] keys = new long[32];
+
+		/** The number of keys */
+		int size = 0;
+
+		private static final long[] newTable(int capacity)
+		{
+			long[] table = new long[capacity];
+			Arrays.fill(table, EMPTY);
+			return table;
+		}
+
+		long get(int index)
+		{
+			return this.keys[index];
+		}
+
+		boolean contains(long key)
+		{
+			int mask = this.table.length - 1;
+			for (int slot = hash(key) & mask; this.table[slot] != EMPTY; slot = (slot + 1) & mask)
+			{
+				if (this.table[slot] == key)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		void add(long key)
+		{
+			int mask = this.table.length - 1;
+			int slot = hash(key) & mask;
+			for (; this.table[slot] != EMPTY; slot = (slot + 1) & mask)
+			{
+				if (this.table[slot] == key)
+				{
+					return;
+				}
+			}
+			this.table[slot] = key;
+			if (this.size == this.keys.length)
+			{
+				this.keys = Arrays.copyOf(this.keys, 2 * this.size);
+			}
+			this.keys[this.size++] = key;
+
+			// keep the load factor below one half
+			if (2 * this.size > this.table.length)
+			{
+				this.table = newTable(2 * this.table.length);
+				mask = this.table.length - 1;
+				for (int i = 0; i < this.size; i++)
+				{
+					slot = hash(this.keys[i]) & mask;
+					while (this.table[slot] != EMPTY)
+					{
+						slot = (slot + 1) & mask;
+					}
+					this.table[slot] = this.keys[i];
+				}
+			}
+		}
+
+		void clear()
+		{
+			// empty only the slots that were used
+			int mask = this.table.length - 1;
+			for (int i = 0; i < this.size; i++)
+			{
+				int slot = hash(this.keys[i]) & mask;
+				while (this.table[slot] != this.keys[i])
+				{
+					slot = (slot + 1) & mask;
+				}
+				this.table[slot] = EMPTY;
+			}
+			this.size = 0;
+		}
+
+		private static final int hash(long key)
+		{
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+
+
+	// ====================================================
+	// Constructor
+
+	private ConvexHull3D(int[] vertices, int[][] faces)
+	{
+		this.vertices = vertices;
+		this.faces = faces;
+	}
+
+
+	// ====================================================
+	// Accessors
+
+	/**
+	 * @return the indices of the hull vertices within the input arrays
+	 */
+	public int[] getVertices()
+	{
+		return this.vertices;
+	}
+
+	/**
+	 * @return the triangular faces of the hull, as triplets of indices within
+	 *         the input arrays
+	 */
+	public int[][] getFaces()
+	{
+		return this.faces;
+	}
+
+	/**
+	 * @return true if the points are coplanar, and the hull has no face
+	 */
+	public boolean isDegenerate()
+	{
+		return this.faces.length == 0;
+	}
+}
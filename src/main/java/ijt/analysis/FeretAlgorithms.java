@@ -0,0 +1,545 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Random;
+
+import ijt.analysis.FeretDiameters.AngleDiameterPair;
+
+/**
+ * Registry of the algorithms used for the different stages of Feret diameter
+ * and oriented box computations: convex hull, minimum width, maximum
+ * diameter, and oriented box.
+ *
+ * For each stage, the algorithm is selected depending on the size of the
+ * input (the number of points for the convex hull, the number of hull
+ * vertices for the other stages). By default, brute force algorithms are
+ * used for small inputs, as they avoid setup overhead, and algorithms with
+ * better complexity are used for larger inputs. Thresholds can be changed by
+ * registering algorithms again, or estimated by a short micro-benchmark using
+ * the calibrate() method. Calibration is performed at class initialization if
+ * the system property "ijt.analysis.calibrate" is set to true.
+ *
+ * @author dlegland
+ *
+ */
+public class FeretAlgorithms
+{
+	// ====================================================
+	// Strategy interfaces
+
+	/**
+	 * Computes the convex hull of a set of points.
+	 */
+	public interface HullAlgorithm
+	{
+		/**
+		 * @param points
+		 *            a list of points (not necessarily ordered)
+		 * @return the convex hull of the points, as a list of vertices
+		 *         oriented counter-clockwise
+		 */
+		public ArrayList<Point2D> convexHull(ArrayList<? extends Point2D> points);
+	}
+
+	/**
+	 * Computes the minimum width (minimum Feret diameter) of a convex polygon.
+	 */
+	public interface MinWidthAlgorithm
+	{
+		/**
+		 * @param convexHull
+		 *            the vertices of a convex polygon
+		 * @return the minimum width and its direction
+		 */
+		public AngleDiameterPair minWidth(ArrayList<? extends Point2D> convexHull);
+	}
+
+	/**
+	 * Computes the diameter (maximum Feret diameter) of a convex polygon.
+	 */
+	public interface MaxDiameterAlgorithm
+	{
+		/**
+		 * @param convexHull
+		 *            the vertices of a convex polygon
+		 * @return the maximum diameter and its direction
+		 */
+		public AngleDiameterPair maxDiameter(ArrayList<? extends Point2D> convexHull);
+	}
+
+	/**
+	 * Computes the oriented box of a convex polygon.
+	 */
+	public interface BoxAlgorithm
+	{
+		/**
+		 * @param convexHull
+		 *            the vertices of a convex polygon
+		 * @param criterion
+		 *            the quantity minimized by the box
+		 * @return the oriented box of the polygon
+		 */
+		public OrientedBox2D box(ArrayList<? extends Point2D> convexHull, OrientedBox2D.Criterion criterion);
+	}
+
+
+	// ====================================================
+	// Built-in algorithms
+
+	/** Gift wrap algorithm, in O(n*h) */
+	public static final HullAlgorithm JARVIS = new HullAlgorithm()
+	{
+		@Override
+		public ArrayList<Point2D> convexHull(ArrayList<? extends Point2D> points)
+		{
+			return Polygons2D.convexHull_jarvis(points);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Jarvis";
+		}
+	};
+
+	/** Monotone chain algorithm, in O(n*log(n)) */
+	public static final HullAlgorithm MONOTONE_CHAIN = new HullAlgorithm()
+	{
+		@Override
+		public ArrayList<Point2D> convexHull(ArrayList<? extends Point2D> points)
+		{
+			return Polygons2D.convexHull_monotoneChain(points);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "MonotoneChain";
+		}
+	};
+
+	/** Computes the width for each edge direction, in O(h^2) */
+	public static final MinWidthAlgorithm MIN_WIDTH_BRUTE_FORCE = new MinWidthAlgorithm()
+	{
+		@Override
+		public AngleDiameterPair minWidth(ArrayList<? extends Point2D> convexHull)
+		{
+			return FeretDiameters.minWidthNaive(convexHull);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "BruteForce";
+		}
+	};
+
+	/** Rotating calipers, in O(h) */
+	public static final MinWidthAlgorithm MIN_WIDTH_CALIPERS = new MinWidthAlgorithm()
+	{
+		@Override
+		public AngleDiameterPair minWidth(ArrayList<? extends Point2D> convexHull)
+		{
+			return RotatingCalipers.compute(convexHull).minFeretDiameter();
+		}
+
+		@Override
+		public String toString()
+		{
+			return "RotatingCalipers";
+		}
+	};
+
+	/** Computes the distance between each pair of vertices, in O(h^2) */
+	public static final MaxDiameterAlgorithm MAX_DIAMETER_BRUTE_FORCE = new MaxDiameterAlgorithm()
+	{
+		@Override
+		public AngleDiameterPair maxDiameter(ArrayList<? extends Point2D> convexHull)
+		{
+			return FeretDiameters.maxFeretDiameter(convexHull);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "BruteForce";
+		}
+	};
+
+	/** Rotating calipers over antipodal pairs, in O(h) */
+	public static final MaxDiameterAlgorithm MAX_DIAMETER_CALIPERS = new MaxDiameterAlgorithm()
+	{
+		@Override
+		public AngleDiameterPair maxDiameter(ArrayList<? extends Point2D> convexHull)
+		{
+			return RotatingCalipers.compute(convexHull).maxFeretDiameter();
+		}
+
+		@Override
+		public String toString()
+		{
+			return "RotatingCalipers";
+		}
+	};
+
+	/** Projects every vertex onto the frame of each edge, in O(h^2) */
+	public static final BoxAlgorithm BOX_BRUTE_FORCE = new BoxAlgorithm()
+	{
+		@Override
+		public OrientedBox2D box(ArrayList<? extends Point2D> convexHull, OrientedBox2D.Criterion criterion)
+		{
+			return bruteForceBox(convexHull, criterion);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "BruteForce";
+		}
+	};
+
+	/** Rotating calipers, in O(h) */
+	public static final BoxAlgorithm BOX_CALIPERS = new BoxAlgorithm()
+	{
+		@Override
+		public OrientedBox2D box(ArrayList<? extends Point2D> convexHull, OrientedBox2D.Criterion criterion)
+		{
+			return RotatingCalipers.compute(convexHull, criterion).box;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "RotatingCalipers";
+		}
+	};
+
+
+	// ====================================================
+	// Registries
+
+	/** Algorithms for computing convex hulls, selected by number of points */
+	public static final SizeSelector<HullAlgorithm> HULL = new SizeSelector<HullAlgorithm>("ConvexHull");
+
+	/** Algorithms for computing minimum width, selected by hull size */
+	public static final SizeSelector<MinWidthAlgorithm> MIN_WIDTH = new SizeSelector<MinWidthAlgorithm>("MinWidth");
+
+	/** Algorithms for computing maximum diameter, selected by hull size */
+	public static final SizeSelector<MaxDiameterAlgorithm> MAX_DIAMETER = new SizeSelector<MaxDiameterAlgorithm>("MaxDiameter");
+
+	/** Algorithms for computing oriented boxes, selected by hull size */
+	public static final SizeSelector<BoxAlgorithm> BOX = new SizeSelector<BoxAlgorithm>("OrientedBox");
+
+	static
+	{
+		resetDefaults();
+		if (Boolean.getBoolean("ijt.analysis.calibrate"))
+		{
+			calibrate();
+		}
+	}
+
+
+	// ====================================================
+	// Static methods
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private FeretAlgorithms()
+	{
+	}
+
+	/**
+	 * Registers the built-in algorithms with default thresholds: the gift
+	 * wrap algorithm for fewer than 32 points, and brute force algorithms for
+	 * hulls with fewer than 8 vertices.
+	 */
+	public static final void resetDefaults()
+	{
+		HULL.register(0, JARVIS);
+		HULL.register(32, MONOTONE_CHAIN);
+		MIN_WIDTH.register(0, MIN_WIDTH_BRUTE_FORCE);
+		MIN_WIDTH.register(8, MIN_WIDTH_CALIPERS);
+		MAX_DIAMETER.register(0, MAX_DIAMETER_BRUTE_FORCE);
+		MAX_DIAMETER.register(8, MAX_DIAMETER_CALIPERS);
+		BOX.register(0, BOX_BRUTE_FORCE);
+		BOX.register(8, BOX_CALIPERS);
+	}
+
+	/**
+	 * Computes the convex hull of a set of points, using the algorithm
+	 * registered for the number of points.
+	 *
+	 * @param points
+	 *            a list of points (not necessarily ordered)
+	 * @return the convex hull of the points
+	 */
+	public static final ArrayList<Point2D> convexHull(ArrayList<? extends Point2D> points)
+	{
+		return HULL.select(points.size()).convexHull(points);
+	}
+
+	/**
+	 * Computes the minimum width of a convex polygon, using the algorithm
+	 * registered for the number of vertices.
+	 *
+	 * @param convexHull
+	 *            the vertices of a convex polygon
+	 * @return the minimum width and its direction
+	 */
+	public static final AngleDiameterPair minWidth(ArrayList<? extends Point2D> convexHull)
+	{
+		return MIN_WIDTH.select(convexHull.size()).minWidth(convexHull);
+	}
+
+	/**
+	 * Computes the maximum diameter of a convex polygon, using the algorithm
+	 * registered for the number of vertices.
+	 *
+	 * @param convexHull
+	 *            the vertices of a convex polygon
+	 * @return the maximum diameter and its direction
+	 */
+	public static final AngleDiameterPair maxDiameter(ArrayList<? extends Point2D> convexHull)
+	{
+		return MAX_DIAMETER.select(convexHull.size()).maxDiameter(convexHull);
+	}
+
+	/**
+	 * Computes the oriented box of a convex polygon, using the algorithm
+	 * registered for the number of vertices.
+	 *
+	 * @param convexHull
+	 *            the vertices of a convex polygon
+	 * @param criterion
+	 *            the quantity minimized by the box
+	 * @return the oriented box of the polygon
+	 */
+	public static final OrientedBox2D box(ArrayList<? extends Point2D> convexHull, OrientedBox2D.Criterion criterion)
+	{
+		return BOX.select(convexHull.size()).box(convexHull, criterion);
+	}
+
+	/**
+	 * Computes the convex hull and optionally the oriented box of each set
+	 * of corner points, in parallel, starting from the largest sets. Each set
+	 * of points is released once its hull has been computed.
+	 *
+	 * @param corners
+	 *            the corner points of each label. Entries are set to null.
+	 * @param criterion
+	 *            the quantity minimized by each box
+	 * @param hulls
+	 *            the array receiving the convex hull of each label
+	 * @param boxes
+	 *            the array receiving the oriented box of each label, or null
+	 *            for computing only the hulls
+	 */
+	static final void hullsAndBoxes(final ArrayList<Point2D>[] corners, final OrientedBox2D.Criterion criterion,
+			final ArrayList<Point2D>[] hulls, final OrientedBox2D[] boxes)
+	{
+		LabelTasks.forEach(OrientedBox2D.pointSetSizes(corners), new LabelTasks.Task()
+		{
+			@Override
+			public void process(int index)
+			{
+				hulls[index] = convexHull(corners[index]);
+				corners[index] = null;
+				if (boxes != null)
+				{
+					boxes[index] = box(hulls[index], criterion);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Estimates the thresholds between the built-in algorithms by running a
+	 * short micro-benchmark for increasing input sizes, and registers the
+	 * built-in algorithms with the estimated thresholds.
+	 */
+	public static final void calibrate()
+	{
+		HULL.register(0, JARVIS);
+		HULL.register(crossover(new Task<HullAlgorithm>()
+		{
+			@Override
+			public void run(HullAlgorithm algorithm, ArrayList<Point2D> points)
+			{
+				algorithm.convexHull(points);
+			}
+		}, JARVIS, MONOTONE_CHAIN, false), MONOTONE_CHAIN);
+
+		MIN_WIDTH.register(0, MIN_WIDTH_BRUTE_FORCE);
+		MIN_WIDTH.register(crossover(new Task<MinWidthAlgorithm>()
+		{
+			@Override
+			public void run(MinWidthAlgorithm algorithm, ArrayList<Point2D> points)
+			{
+				algorithm.minWidth(points);
+			}
+		}, MIN_WIDTH_BRUTE_FORCE, MIN_WIDTH_CALIPERS, true), MIN_WIDTH_CALIPERS);
+
+		MAX_DIAMETER.register(0, MAX_DIAMETER_BRUTE_FORCE);
+		MAX_DIAMETER.register(crossover(new Task<MaxDiameterAlgorithm>()
+		{
+			@Override
+			public void run(MaxDiameterAlgorithm algorithm, ArrayList<Point2D> points)
+			{
+				algorithm.maxDiameter(points);
+			}
+		}, MAX_DIAMETER_BRUTE_FORCE, MAX_DIAMETER_CALIPERS, true), MAX_DIAMETER_CALIPERS);
+
+		BOX.register(0, BOX_BRUTE_FORCE);
+		BOX.register(crossover(new Task<BoxAlgorithm>()
+		{
+			@Override
+			public void run(BoxAlgorithm algorithm, ArrayList<Point2D> points)
+			{
+				algorithm.box(points, OrientedBox2D.Criterion.MIN_WIDTH);
+			}
+		}, BOX_BRUTE_FORCE, BOX_CALIPERS, true), BOX_CALIPERS);
+	}
+
+	/**
+	 * Finds the smallest input size for which the large-input algorithm is
+	 * faster than the small-input algorithm.
+	 *
+	 * @param convex
+	 *            if true, inputs are convex polygons, otherwise random point
+	 *            sets
+	 */
+	private static final <T> int crossover(Task<T> task, T small, T large, boolean convex)
+	{
+		int[] sizes = new int[] { 4, 6, 8, 12, 16, 24, 32, 48, 64, 96, 128, 192, 256 };
+		Random random = new Random(1);
+		for (int size : sizes)
+		{
+			ArrayList<Point2D> points = convex ? regularPolygon(size) : randomPoints(size, random);
+
+			// each test runs about the same number of elementary operations
+			int nRuns = Math.max(4, 20000 / size);
+			time(task, small, points, nRuns);
+			time(task, large, points, nRuns);
+			long timeSmall = time(task, small, points, nRuns);
+			long timeLarge = time(task, large, points, nRuns);
+			if (timeLarge < timeSmall)
+			{
+				return size;
+			}
+		}
+		return Integer.MAX_VALUE;
+	}
+
+	private static final <T> long time(Task<T> task, T algorithm, ArrayList<Point2D> points, int nRuns)
+	{
+		long t0 = System.nanoTime();
+		for (int i = 0; i < nRuns; i++)
+		{
+			task.run(algorithm, points);
+		}
+		return System.nanoTime() - t0;
+	}
+
+	private static final ArrayList<Point2D> regularPolygon(int n)
+	{
+		ArrayList<Point2D> points = new ArrayList<Point2D>(n);
+		for (int i = 0; i < n; i++)
+		{
+			double t = 2 * Math.PI * i / n;
+			points.add(new Point2D.Double(100 * Math.cos(t), 60 * Math.sin(t)));
+		}
+		return points;
+	}
+
+	private static final ArrayList<Point2D> randomPoints(int n, Random random)
+	{
+		// use distinct points within a disc, as pixel corners would be
+		ArrayList<Point2D> points = new ArrayList<Point2D>(n);
+		for (int i = 0; i < n; i++)
+		{
+			double t = 2 * Math.PI * random.nextDouble();
+			double r = 100 * Math.sqrt(random.nextDouble());
+			points.add(new Point2D.Double(r * Math.cos(t), r * Math.sin(t)));
+		}
+		return points;
+	}
+
+	/**
+	 * Runs a computation stage with a given algorithm, for calibration.
+	 */
+	private interface Task<T>
+	{
+		public void run(T algorithm, ArrayList<Point2D> points);
+	}
+
+	/**
+	 * Computes the oriented box by evaluating the rectangle flush with each
+	 * edge, using two projections of the vertices per edge.
+	 */
+	private static final OrientedBox2D bruteForceBox(ArrayList<? extends Point2D> convexHull, OrientedBox2D.Criterion criterion)
+	{
+		int n = convexHull.size();
+		if (n < 3)
+		{
+			return RotatingCalipers.compute(convexHull, criterion).box;
+		}
+		double[] xCoords = new double[n];
+		double[] yCoords = new double[n];
+		Polygons2D.getCoordinates(convexHull, xCoords, yCoords);
+
+		ProjectionKernel kernel = ProjectionKernels.getDefault();
+		double[] uRange = new double[2];
+		double[] vRange = new double[2];
+		double bestValue = Double.POSITIVE_INFINITY;
+		OrientedBox2D bestBox = null;
+		for (int i = 0; i < n; i++)
+		{
+			int i2 = (i + 1) % n;
+			double dx = xCoords[i2] - xCoords[i];
+			double dy = yCoords[i2] - yCoords[i];
+			double invNorm = Geometry2D.inverseNorm(dx, dy);
+			if (Double.isNaN(invNorm))
+			{
+				continue;
+			}
+
+			// project vertices onto edge direction and edge normal
+			double ux = dx * invNorm;
+			double uy = dy * invNorm;
+			kernel.projectionRange(xCoords, yCoords, n, ux, uy, uRange);
+			kernel.projectionRange(xCoords, yCoords, n, -uy, ux, vRange);
+			double length = uRange[1] - uRange[0];
+			double width = vRange[1] - vRange[0];
+
+			double value = criterion.evaluate(length, width);
+			if (value < bestValue)
+			{
+				bestValue = value;
+				double du = (uRange[0] + uRange[1]) / 2;
+				double dv = (vRange[0] + vRange[1]) / 2;
+				double theta = Math.toDegrees(Math.atan2(uy, ux));
+				if (length < width)
+				{
+					double tmp = length;
+					length = width;
+					width = tmp;
+					theta += 90;
+				}
+				theta = (theta + 360) % 180;
+				bestBox = new OrientedBox2D(du * ux - dv * uy, du * uy + dv * ux, length, width, theta);
+			}
+		}
+
+		if (bestBox == null)
+		{
+			return RotatingCalipers.compute(convexHull, criterion).box;
+		}
+		return bestBox;
+	}
+}
@@ -3,7 +3,10 @@
  */
 package ijt.analysis;
 
+import ij.IJ;
+import ij.measure.ResultsTable;
 import ij.process.ImageProcessor;
+import inra.ijpb.label.LabelImages;
 
 import java.awt.Point;
 import java.awt.geom.Point2D;
@@ -17,6 +20,88 @@ public class FeretDiameters
 {
 	public final static double TWO_PI = Math.PI * 2;
 	
+	/**
+	 * Computes minimum and maximum Feret diameters of each label of a label
+	 * image.
+	 * 
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @return the Feret diameters of each label, stored in columns
+	 */
+	public final static LabelDiameters labelFeretDiameters(ImageProcessor image)
+	{
+		IJ.showStatus("Find Labels");
+		int[] labels = LabelImages.findAllLabels(image);
+		return labelFeretDiameters(image, labels);
+	}
+	
+	/**
+	 * Computes minimum and maximum Feret diameters of the specified labels of
+	 * a label image.
+	 * 
+	 * The corner points of all labels are collected within a single scan of
+	 * the image, and the diameters of the convex hull of each label are then
+	 * computed in parallel.
+	 * 
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @param labels
+	 *            the labels to process
+	 * @return the Feret diameters of each label, stored in columns
+	 */
+	public final static LabelDiameters labelFeretDiameters(ImageProcessor image, int[] labels)
+	{
+		// For each label, create a list of corner points
+		IJ.showStatus("Find Label Corner Points");
+		final ArrayList<Point2D>[] labelCornerPointsArray = OrientedBox2D.computeLabelsCornersArray(image, labels);
+		
+		// Compute diameters of the convex hull of each label
+		IJ.showStatus("Compute Feret diameters");
+		final LabelDiameters result = new LabelDiameters(labels);
+		LabelTasks.forEach(OrientedBox2D.pointSetSizes(labelCornerPointsArray), new LabelTasks.Task()
+		{
+			@Override
+			public void process(int i)
+			{
+				ArrayList<Point2D> convexHull = FeretAlgorithms.convexHull(labelCornerPointsArray[i]);
+				labelCornerPointsArray[i] = null;
+				result.set(i, FeretAlgorithms.minWidth(convexHull), FeretAlgorithms.maxDiameter(convexHull));
+			}
+		});
+		
+		IJ.showStatus("");
+		return result;
+	}
+
+	/**
+	 * Converts the result of Feret diameters computation to a ResultsTable.
+	 * Angles are given in degrees.
+	 * 
+	 * @param diameters
+	 *            the Feret diameters of a set of labels
+	 * @return a ResultsTable containing Feret diameters and angles
+	 */
+	public final static ResultsTable asTable(LabelDiameters diameters)
+	{
+		// Create data table
+		ResultsTable table = new ResultsTable();
+		
+		int nLabels = diameters.labels.length;
+		LabelFormatter formatter = new LabelFormatter("lbl-", LabelFormatter.digitCount(nLabels));
+		for (int i = 0; i < nLabels; i++)
+		{
+			table.incrementCounter();
+			table.addLabel(formatter.format(diameters.labels[i]));
+			
+			table.addValue("MinFeret", diameters.minFeret[i]);
+			table.addValue("MinFeretAngle", Math.toDegrees(diameters.minFeretAngle[i]));
+			table.addValue("MaxFeret", diameters.maxFeret[i]);
+			table.addValue("MaxFeretAngle", Math.toDegrees(diameters.maxFeretAngle[i]));
+		}
+		
+		return table;
+	}
+	
 	/**
 	 * Computes Maximum Feret diameter from a single particle in a binary image.
 	 * 
@@ -32,9 +117,9 @@ public class FeretDiameters
 //		ArrayList<Point> points = boundaryPoints(image);
 //		ArrayList<Point> convHull = Polygons2D.convexHull_jarvis_int(points);
 		ArrayList<Point2D> points = binaryParticleCorners(image);
-		ArrayList<Point2D> convHull = Polygons2D.convexHull_jarvis(points);
+		ArrayList<Point2D> convHull = FeretAlgorithms.convexHull(points);
 
-		return maxFeretDiameter(convHull);
+		return FeretAlgorithms.maxDiameter(convHull);
 	}
 	
 	/**
@@ -49,19 +134,30 @@ public class FeretDiameters
 	 */
 	public final static AngleDiameterPair maxFeretDiameter(ArrayList<? extends Point2D> points)
 	{
-		double distMax = Double.MIN_VALUE;
-		double angleMax = 0;
-		for (Point2D p1 : points)
+		int n = points.size();
+		double[] xCoords = new double[n];
+		double[] yCoords = new double[n];
+		Polygons2D.getCoordinates(points, xCoords, yCoords);
+
+		// compare squared distances, and compute square root only once
+		ProjectionKernel kernel = ProjectionKernels.getDefault();
+		int[] farthest = new int[1];
+		double dist2Max = 0;
+		int ind1 = 0;
+		int ind2 = 0;
+		for (int i = 0; i < n; i++)
 		{
-			for (Point2D p2 : points)
+			double dist2 = kernel.maxDistanceSq(xCoords, yCoords, i + 1, n, xCoords[i], yCoords[i], farthest);
+			if (dist2 > dist2Max)
 			{
-				double dist = p1.distance(p2);
-				distMax = Math.max(distMax, dist);
-				angleMax = Math.atan2(p2.getY() - p1.getY(), p2.getX() - p1.getX());
+				dist2Max = dist2;
+				ind1 = i;
+				ind2 = farthest[0];
 			}
 		}
 	
-		return new AngleDiameterPair(angleMax, distMax);
+		double angleMax = n > 0 ? Math.atan2(yCoords[ind2] - yCoords[ind1], xCoords[ind2] - xCoords[ind1]) : 0;
+		return new AngleDiameterPair(angleMax, Math.sqrt(dist2Max));
 	}
 	
 	/**
@@ -74,9 +170,9 @@ public class FeretDiameters
 	public final static AngleDiameterPair minFeretDiameterSingle(ImageProcessor image)
 	{
 		ArrayList<Point2D> points = binaryParticleCorners(image);
-		ArrayList<Point2D> convHull = Polygons2D.convexHull_jarvis(points);
+		ArrayList<Point2D> convHull = FeretAlgorithms.convexHull(points);
 	
-		return minFeretDiameter(convHull);
+		return FeretAlgorithms.minWidth(convHull);
 	}
 
 
@@ -90,8 +186,9 @@ public class FeretDiameters
 	 */
 	public final static AngleDiameterPair minFeretDiameter(ArrayList<? extends Point2D> points)
 	{
-		// TODO: change to rotating caliper algorithm
-		return minFeretDiameterNaive(points);
+		// algorithms are selected depending on point set and hull size
+		ArrayList<Point2D> convHull = FeretAlgorithms.convexHull(points);
+		return FeretAlgorithms.minWidth(convHull);
 	}
 	 
 	/**
@@ -106,17 +203,28 @@ public class FeretDiameters
 	{
 		// first compute convex hull to simplify
 		ArrayList<Point2D> convHull = Polygons2D.convexHull_jarvis(points);
-		int n = convHull.size();
+		int n0 = convHull.size();
+		double[] xCoords = new double[n0];
+		double[] yCoords = new double[n0];
+		Polygons2D.getCoordinates(convHull, xCoords, yCoords);
+		
+		// remove duplicate vertices, and ensure counter-clockwise orientation 
+		double[] px = new double[n0];
+		double[] py = new double[n0];
+		int n = Polygons2D.copyVertices(xCoords, yCoords, n0, 0, 0, px, py);
+		if (n < 3 || !Polygons2D.ensureCounterClockwise(px, py, n))
+		{
+			return RotatingCalipers.compute(px, py, n).minFeretDiameter();
+		}
 		
 		// find index of extreme vertices in vertical direction
 		int indA = 0;
 		int indB = 0;
-		double yMin = Double.MAX_VALUE;
-		double yMax = Double.MIN_VALUE;
+		double yMin = Double.POSITIVE_INFINITY;
+		double yMax = Double.NEGATIVE_INFINITY;
 		for (int i = 0; i < n; i++)
 		{
-			Point2D p = convHull.get(i);
-			double y = p.getY();
+			double y = py[i];
 			if (y < yMin)
 			{
 				yMin = y;
@@ -129,70 +237,77 @@ public class FeretDiameters
 			}
 		}
 		
-		// Caliper A points along the positive x-axis
-		Vector2D caliperA = new Vector2D(1, 0);
-		// Caliper B points along the negative x-axis
-		Vector2D caliperB = new Vector2D(-1, 0);
+		// Caliper A points along the positive x-axis, caliper B points in the
+		// opposite direction
+		double caliperX = 1;
+		double caliperY = 0;
 		
 		// initialize result
-		double width;
 		double widthMin = Double.POSITIVE_INFINITY;
-		double angleMin = 0;
-		StraightLine2D line;
+		double angleMinX = 1;
+		double angleMinY = 0;
 		
-		// Find the direction with minimum width (rotating caliper algorithm)
-		double rotatedAngle = 0;
-		while (rotatedAngle < Math.PI)
+		// Find the direction with minimum width (rotating caliper algorithm).
+		// Each step moves one caliper to the next edge, and the calipers have
+		// turned by PI once every edge has been visited.
+		for (int step = 0; step < n; step++)
 		{
-		    // compute the direction vector corresponding to first edge
-		    int indA2 = (indA + 1) % n;
-		    Point2D pA1 = convHull.get(indA);
-		    Point2D pA2 = convHull.get(indA2);
-		    Vector2D vectorA = new Vector2D(pA2.getX() - pA1.getX(), pA2.getY() - pA1.getY());
+			// compute the direction vector corresponding to first edge
+			int indA2 = (indA + 1) % n;
+			double vAx = px[indA2] - px[indA];
+			double vAy = py[indA2] - py[indA];
 			
-		    // compute the direction vector corresponding to second edge
-		    int indB2 = (indB + 1) % n;
-		    Point2D pB1 = convHull.get(indB);
-		    Point2D pB2 = convHull.get(indB2);
-		    Vector2D vectorB = new Vector2D(pB2.getX() - pB1.getX(), pB2.getY() - pB1.getY());
-		    
-		    // Determine the angle between each caliper and the next adjacent edge
-		    // in the polygon 
-		    double angleA = (Vector2D.angle(caliperA, vectorA) + TWO_PI) % TWO_PI;
-		    double angleB = (Vector2D.angle(caliperB, vectorB) + TWO_PI) % TWO_PI;
-		    
-		    // increment rotatedAngle by the smallest of these angles
-		    double angleIncrement = Math.min(angleA, angleB);
-		    rotatedAngle += angleIncrement;
-		    
-		    // compute current width, and update opposite vertex
-		    if (angleA < angleB)
-		    {
-		        line = new StraightLine2D(pA1, pA2);
-		        width = line.distance(pB1);
-		        indA = indA2;
-		    }
-		    else
-		    {
-		        line = new StraightLine2D(pB1, pB2);
-		        width = line.distance(pA1);
-		        indB = indB2;
-		    }
-
-		    // update minimum width and corresponding angle if needed
-		    if (width < widthMin)
-		    {
-		        widthMin = width;
-		        angleMin = rotatedAngle;
-		    }
+			// compute the direction vector corresponding to second edge
+			int indB2 = (indB + 1) % n;
+			double vBx = px[indB2] - px[indB];
+			double vBy = py[indB2] - py[indB];
+			
+			// Compare the angles between each caliper and the next adjacent
+			// edge in the polygon. As caliper B is opposite to caliper A, the
+			// angle of B is computed with the opposite of the edge vector.
+			double angleA = Geometry2D.pseudoAngle(caliperX, caliperY, vAx, vAy);
+			double angleB = Geometry2D.pseudoAngle(caliperX, caliperY, -vBx, -vBy);
+			
+			// as the polygon is convex, angles can not be greater than PI, and
+			// larger values result from round-off errors on collinear edges
+			if (angleA > 2) angleA = 0;
+			if (angleB > 2) angleB = 0;
+			
+			// rotate calipers by the smallest of these angles, and compute
+			// current width
+			double width;
+			if (angleA < angleB)
+			{
+				double invNorm = Geometry2D.inverseNorm(vAx, vAy);
+				width = Geometry2D.lineDistance(px[indA], py[indA], vAx, vAy, invNorm, px[indB], py[indB]);
+				caliperX = vAx;
+				caliperY = vAy;
+				indA = indA2;
+			}
+			else
+			{
+				double invNorm = Geometry2D.inverseNorm(vBx, vBy);
+				width = Geometry2D.lineDistance(px[indB], py[indB], vBx, vBy, invNorm, px[indA], py[indA]);
+				caliperX = -vBx;
+				caliperY = -vBy;
+				indB = indB2;
+			}
+			
+			// update minimum width and corresponding direction if needed
+			if (width < widthMin)
+			{
+				widthMin = width;
+				angleMinX = caliperX;
+				angleMinY = caliperY;
+			}
 		}
-
-		return new AngleDiameterPair(angleMin - Math.PI/2, widthMin);				
+		
+		return new AngleDiameterPair(Math.atan2(angleMinY, angleMinX) - Math.PI/2, widthMin);
 	}
 	
 	/**
-	 * Computes Minimum Feret diameter of a set of points, using the rotating
-	 * caliper algorithm.
+	 * Computes Minimum Feret diameter of a set of points, by computing the
+	 * width of the convex hull for the direction of each of its edges.
 	 * 
 	 * @param points
 	 *            a collection of planar points
@@ -202,39 +317,51 @@ public class FeretDiameters
 	{
 		// first compute convex hull to simplify
 		ArrayList<Point2D> convHull = Polygons2D.convexHull_jarvis(points);
-		int n = convHull.size();
+		return minWidthNaive(convHull);
+	}
+	
+	/**
+	 * Computes the width of a convex polygon by computing its width for the
+	 * direction of each of its edges, without computing the convex hull.
+	 * 
+	 * @param convexHull
+	 *            the ordered list of vertices of a convex polygon
+	 * @return the minimum Feret diameter of the polygon
+	 */
+	final static AngleDiameterPair minWidthNaive(ArrayList<? extends Point2D> convexHull)
+	{
+		int n = convexHull.size();
+		double[] xCoords = new double[n];
+		double[] yCoords = new double[n];
+		Polygons2D.getCoordinates(convexHull, xCoords, yCoords);
 
 		// initialize result
+		ProjectionKernel kernel = ProjectionKernels.getDefault();
 		double widthMin = Double.POSITIVE_INFINITY;
 		double angleMin = 0;
-		StraightLine2D line;
 
 		for (int i = 0; i < n; i++)
 		{
-			Point2D p1 = convHull.get(i);
-			Point2D p2 = convHull.get((i + 1) % n);
+			int i2 = (i + 1) % n;
+			double x1 = xCoords[i];
+			double y1 = yCoords[i];
+			double dx = xCoords[i2] - x1;
+			double dy = yCoords[i2] - y1;
 			
 			// avoid degenerated lines
-			if (p1.distance(p2) < 1e-12)
+			double invNorm = Geometry2D.inverseNorm(dx, dy);
+			if (Double.isNaN(invNorm))
 			{
 				continue;
 			}
 
 			// Compute the width for this polygon edge
-			line = new StraightLine2D(p1, p2);
-			double width = 0;
-			for (Point2D p : convHull)
-			{
-				double dist = line.distance(p);
-				width = Math.max(width, dist);
-			}
+			double width = kernel.maxAbsCross(xCoords, yCoords, n, x1, y1, dx, dy) * invNorm;
 			
 			// check if smallest width
 			if (width < widthMin)
 			{
 				widthMin = width;
-				double dx = p2.getX() - p1.getX();
-				double dy = p2.getY() - p1.getY();
 				angleMin = Math.atan2(dy, dx);
 			}
 		}
@@ -371,4 +498,47 @@ public class FeretDiameters
 			this.diameter = diameter;
 		}
 	}
+
+	/**
+	 * Data structure used to return Feret diameters of a set of labels. The
+	 * values for the label at index i are stored at index i of each array.
+	 * 
+	 * @author dlegland
+	 *
+	 */
+	public static class LabelDiameters
+	{
+		/** The label of each region */
+		public final int[] labels;
+		
+		/** The minimum Feret diameter of each region */
+		public final double[] minFeret;
+		
+		/** The angle of the minimum Feret diameter, in radians */
+		public final double[] minFeretAngle;
+		
+		/** The maximum Feret diameter of each region */
+		public final double[] maxFeret;
+		
+		/** The angle of the maximum Feret diameter, in radians */
+		public final double[] maxFeretAngle;
+		
+		public LabelDiameters(int[] labels)
+		{
+			int n = labels.length;
+			this.labels = labels;
+			this.minFeret = new double[n];
+			this.minFeretAngle = new double[n];
+			this.maxFeret = new double[n];
+			this.maxFeretAngle = new double[n];
+		}
+		
+		void set(int index, AngleDiameterPair minPair, AngleDiameterPair maxPair)
+		{
+			this.minFeret[index] = minPair.diameter;
+			this.minFeretAngle[index] = minPair.angle;
+			this.maxFeret[index] = maxPair.diameter;
+			this.maxFeretAngle[index] = maxPair.angle;
+		}
+	}
 }
@@ -0,0 +1,178 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+
+import ij.IJ;
+import ij.process.ImageProcessor;
+
+/**
+ * Computes Feret profiles, i.e. the caliper diameter of a particle as a
+ * function of the direction of measurement.
+ *
+ * The profile is sampled at N regularly spaced angles between 0 and 180
+ * degrees. The angle with index k equals k*PI/N, and the diameter is measured
+ * along the direction (cos(angle), sin(angle)).
+ *
+ * For a convex polygon, the vertex with the largest projection onto a
+ * direction moves forward along the polygon as the direction rotates
+ * counter-clockwise. The profile is therefore computed by merging the
+ * sequence of edge normals with the sequence of sampling angles, in O(h + N)
+ * operations for a polygon with h vertices.
+ *
+ * @author dlegland
+ *
+ */
+public class FeretProfiles
+{
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private FeretProfiles()
+	{
+	}
+
+	/**
+	 * Computes the Feret profile of each label in a label image.
+	 *
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @param labels
+	 *            the labels to process
+	 * @param nAngles
+	 *            the number of angles used to sample the profiles
+	 * @return an array of Feret profiles, with size nLabels-by-nAngles
+	 */
+	public final static double[][] feretProfiles(ImageProcessor image, int[] labels, int nAngles)
+	{
+		// For each label, create a list of corner points
+		IJ.showStatus("Find Label Corner Points");
+		ArrayList<Point2D>[] labelCornerPointsArray = OrientedBox2D.computeLabelsCornersArray(image, labels);
+
+		// Compute the profile of the convex hull of each label
+		IJ.showStatus("Compute Feret profiles");
+		int nLabels = labels.length;
+		double[][] profiles = new double[nLabels][];
+		for (int i = 0; i < nLabels; i++)
+		{
+			IJ.showProgress(i, nLabels);
+			ArrayList<Point2D> convexHull = FeretAlgorithms.convexHull(labelCornerPointsArray[i]);
+			profiles[i] = feretProfile(convexHull, nAngles);
+		}
+
+		IJ.showProgress(1);
+		IJ.showStatus("");
+		return profiles;
+	}
+
+	/**
+	 * Computes the Feret profile of a convex polygon.
+	 *
+	 * @param convexHull
+	 *            the ordered list of vertices of a convex polygon, oriented
+	 *            either clockwise or counter-clockwise
+	 * @param nAngles
+	 *            the number of angles used to sample the profile
+	 * @return the caliper diameters measured for each angle
+	 */
+	public final static double[] feretProfile(ArrayList<? extends Point2D> convexHull, int nAngles)
+	{
+		int n = convexHull.size();
+		double[] xCoords = new double[n];
+		double[] yCoords = new double[n];
+		Polygons2D.getCoordinates(convexHull, xCoords, yCoords);
+		return feretProfile(xCoords, yCoords, n, nAngles);
+	}
+
+	/**
+	 * Computes the Feret profile of a convex polygon given by the coordinates
+	 * of its vertices. The input arrays are not modified.
+	 *
+	 * @param xCoords
+	 *            the x-coordinates of the polygon vertices
+	 * @param yCoords
+	 *            the y-coordinates of the polygon vertices
+	 * @param n
+	 *            the number of vertices to consider
+	 * @param nAngles
+	 *            the number of angles used to sample the profile
+	 * @return the caliper diameters measured for each angle
+	 */
+	public final static double[] feretProfile(double[] xCoords, double[] yCoords, int n, int nAngles)
+	{
+		double[] profile = new double[nAngles];
+		if (n == 0)
+		{
+			return profile;
+		}
+
+		// copy vertices, and ensure counter-clockwise orientation
+		double[] px = new double[n];
+		double[] py = new double[n];
+		int nv = Polygons2D.copyVertices(xCoords, yCoords, n, xCoords[0], yCoords[0], px, py);
+		if (nv < 3 || !Polygons2D.ensureCounterClockwise(px, py, nv))
+		{
+			// for degenerate polygons, use projection of each vertex
+			for (int k = 0; k < nAngles; k++)
+			{
+				double angle = k * Math.PI / nAngles;
+				profile[k] = extent(px, py, nv, Math.cos(angle), Math.sin(angle));
+			}
+			return profile;
+		}
+
+		// find extreme vertices for the first direction (horizontal)
+		int iMax = 0;
+		int iMin = 0;
+		for (int i = 1; i < nv; i++)
+		{
+			if (px[i] > px[iMax]) iMax = i;
+			if (px[i] < px[iMin]) iMin = i;
+		}
+
+		for (int k = 0; k < nAngles; k++)
+		{
+			double angle = k * Math.PI / nAngles;
+			double ux = Math.cos(angle);
+			double uy = Math.sin(angle);
+
+			// advance the two calipers along the polygon
+			int next = (iMax + 1) % nv;
+			while (Geometry2D.dot(px[next], py[next], ux, uy) > Geometry2D.dot(px[iMax], py[iMax], ux, uy))
+			{
+				iMax = next;
+				next = (iMax + 1) % nv;
+			}
+			next = (iMin + 1) % nv;
+			while (Geometry2D.dot(px[next], py[next], ux, uy) < Geometry2D.dot(px[iMin], py[iMin], ux, uy))
+			{
+				iMin = next;
+				next = (iMin + 1) % nv;
+			}
+
+			profile[k] = Geometry2D.dot(px[iMax] - px[iMin], py[iMax] - py[iMin], ux, uy);
+		}
+
+		return profile;
+	}
+
+	/**
+	 * Computes the extent of the projection of a set of points onto a
+	 * direction vector.
+	 */
+	private static final double extent(double[] px, double[] py, int n, double ux, double uy)
+	{
+		double pmin = Double.POSITIVE_INFINITY;
+		double pmax = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++)
+		{
+			double proj = px[i] * ux + py[i] * uy;
+			pmin = Math.min(pmin, proj);
+			pmax = Math.max(pmax, proj);
+		}
+		return pmax - pmin;
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+/**
+ * Static geometry kernels operating on primitive coordinates. They are
+ * intended for the inner loops of Feret diameter and oriented box
+ * computations, and avoid allocating intermediate Vector2D or StraightLine2D
+ * instances.
+ *
+ * @author dlegland
+ *
+ */
+public class Geometry2D
+{
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private Geometry2D()
+	{
+	}
+
+	/**
+	 * Computes the dot product of two vectors.
+	 *
+	 * @return the dot product of (x1,y1) and (x2,y2)
+	 */
+	public static final double dot(double x1, double y1, double x2, double y2)
+	{
+		return x1 * x2 + y1 * y2;
+	}
+
+	/**
+	 * Computes the cross product of two vectors. The result is positive if
+	 * the second vector is obtained from the first one by a counter-clockwise
+	 * rotation.
+	 *
+	 * @return the cross product of (x1,y1) and (x2,y2)
+	 */
+	public static final double cross(double x1, double y1, double x2, double y2)
+	{
+		return x1 * y2 - y1 * x2;
+	}
+
+	/**
+	 * Computes the orientation of the triangle defined by three points, given
+	 * as twice its signed area.
+	 *
+	 * @return a positive value if the three points are in counter-clockwise
+	 *         order, a negative value if they are in clockwise order, and
+	 *         zero if they are collinear
+	 */
+	public static final double orientation(double x1, double y1, double x2, double y2, double x3, double y3)
+	{
+		return (x2 - x1) * (y3 - y1) - (y2 - y1) * (x3 - x1);
+	}
+
+	/**
+	 * Computes the squared distance between two points.
+	 *
+	 * @return the squared distance between (x1,y1) and (x2,y2)
+	 */
+	public static final double distanceSq(double x1, double y1, double x2, double y2)
+	{
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Computes the inverse of the norm of a vector, to be used with the
+	 * lineDistance method.
+	 *
+	 * @return the inverse of the norm of (dx,dy), or NaN if the vector is too
+	 *         small
+	 */
+	public static final double inverseNorm(double dx, double dy)
+	{
+		double delta = dx * dx + dy * dy;
+		if (delta < 1e-12)
+		{
+			return Double.NaN;
+		}
+		return 1.0 / Math.sqrt(delta);
+	}
+
+	/**
+	 * Computes the distance between a point and the straight line through
+	 * (x0,y0) with direction (dx,dy).
+	 *
+	 * @param invNorm
+	 *            the inverse of the norm of the direction vector, as returned
+	 *            by the inverseNorm method
+	 * @return the distance between the point (px,py) and the line
+	 */
+	public static final double lineDistance(double x0, double y0, double dx, double dy, double invNorm,
+			double px, double py)
+	{
+		return Math.abs((px - x0) * dy - (py - y0) * dx) * invNorm;
+	}
+
+	/**
+	 * Computes the largest distance between a set of points and the straight
+	 * line through (x0,y0) with direction (dx,dy).
+	 *
+	 * @param invNorm
+	 *            the inverse of the norm of the direction vector, as returned
+	 *            by the inverseNorm method
+	 * @return the largest distance between the points and the line
+	 */
+	public static final double maxLineDistance(double[] xCoords, double[] yCoords, int n,
+			double x0, double y0, double dx, double dy, double invNorm)
+	{
+		double maxDist = 0;
+		for (int i = 0; i < n; i++)
+		{
+			double dist = Math.abs((xCoords[i] - x0) * dy - (yCoords[i] - y0) * dx);
+			maxDist = Math.max(maxDist, dist);
+		}
+		return maxDist * invNorm;
+	}
+
+	/**
+	 * Computes a pseudo-angle of a vector, that varies monotonically with the
+	 * angle of the vector but does not require trigonometric functions. The
+	 * result is within [0, 4), with 0, 1, 2 and 3 corresponding to angles 0,
+	 * PI/2, PI and 3*PI/2 respectively.
+	 *
+	 * @return the pseudo-angle of the vector (dx,dy)
+	 */
+	public static final double pseudoAngle(double dx, double dy)
+	{
+		double sum = Math.abs(dx) + Math.abs(dy);
+		if (sum == 0)
+		{
+			return 0;
+		}
+		double p = dy / sum;
+		if (dx < 0)
+		{
+			return 2 - p;
+		}
+		return p < 0 ? 4 + p : p;
+	}
+
+	/**
+	 * Computes the pseudo-angle of the counter-clockwise rotation from the
+	 * vector (x1,y1) to the vector (x2,y2).
+	 *
+	 * @see #pseudoAngle(double, double)
+	 *
+	 * @return the pseudo-angle between the two vectors, within [0, 4)
+	 */
+	public static final double pseudoAngle(double x1, double y1, double x2, double y2)
+	{
+		return pseudoAngle(x1 * x2 + y1 * y2, x1 * y2 - y1 * x2);
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * A resizable array of integers, stored either within a Java array or
+ * within native memory.
+ *
+ * Native memory is allocated with direct byte buffers. It is not counted in
+ * the Java heap, and is released by the free() method without waiting for
+ * the garbage collector. If the JVM does not allow releasing direct buffers
+ * explicitly, the memory is released when the buffer is garbage collected.
+ *
+ * @author dlegland
+ *
+ */
+final class IntStore
+{
+	// ====================================================
+	// Static variables
+
+	/** The method used for releasing direct buffers, or null */
+	private static final Method INVOKE_CLEANER;
+
+	/** The instance of sun.misc.Unsafe used for releasing direct buffers */
+	private static final Object UNSAFE;
+
+	static
+	{
+		Method method = null;
+		Object unsafe = null;
+		try
+		{
+			// available since Java 9
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			method = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+		}
+		catch (Exception ex)
+		{
+			method = null;
+		}
+		INVOKE_CLEANER = method;
+		UNSAFE = unsafe;
+	}
+
+
+	// ====================================================
+	// Class variables
+
+	/** Specifies whether values are stored in native memory */
+	private final boolean direct;
+
+	/** The native memory, or null if values are stored in a Java array */
+	private ByteBuffer bytes = null;
+
+	/** The buffer used for accessing values */
+	private IntBuffer ints = IntBuffer.allocate(0);
+
+
+	// ====================================================
+	// Constructor
+
+	/**
+	 * Creates a new empty store.
+	 *
+	 * @param direct
+	 *            true for storing values in native memory, false for storing
+	 *            them within a Java array
+	 */
+	IntStore(boolean direct)
+	{
+		this.direct = direct;
+	}
+
+
+	// ====================================================
+	// Methods
+
+	/**
+	 * Ensures the store can contain the specified number of values. When the
+	 * store is enlarged, the previous values are discarded.
+	 *
+	 * @param size
+	 *            the number of values to store
+	 */
+	void ensureCapacity(int size)
+	{
+		int capacity = this.ints.capacity();
+		if (capacity >= size)
+		{
+			return;
+		}
+
+		size = Math.max(size, capacity + (capacity >> 1));
+		if (this.direct)
+		{
+			free();
+			this.bytes = ByteBuffer.allocateDirect(4 * size).order(ByteOrder.nativeOrder());
+			this.ints = this.bytes.asIntBuffer();
+		}
+		else
+		{
+			this.ints = IntBuffer.allocate(size);
+		}
+	}
+
+	/**
+	 * Ensures the store can contain the specified number of values. When the
+	 * store is enlarged, the previous values are copied into the new memory.
+	 *
+	 * @param size
+	 *            the number of values to store
+	 */
+	void grow(int size)
+	{
+		int capacity = this.ints.capacity();
+		if (capacity >= size)
+		{
+			return;
+		}
+
+		ByteBuffer previousBytes = this.bytes;
+		IntBuffer previous = this.ints;
+		size = Math.max(size, capacity + (capacity >> 1));
+		if (this.direct)
+		{
+			this.bytes = ByteBuffer.allocateDirect(4 * size).order(ByteOrder.nativeOrder());
+			this.ints = this.bytes.asIntBuffer();
+		}
+		else
+		{
+			this.ints = IntBuffer.allocate(size);
+		}
+		previous.clear();
+		this.ints.put(previous);
+		this.ints.clear();
+		if (previousBytes != null)
+		{
+			release(previousBytes);
+		}
+	}
+
+	int get(int index)
+	{
+		return this.ints.get(index);
+	}
+
+	void set(int index, int value)
+	{
+		this.ints.put(index, value);
+	}
+
+	/**
+	 * @return the number of values the store can contain
+	 */
+	int capacity()
+	{
+		return this.ints.capacity();
+	}
+
+	/**
+	 * Releases the memory used by this store, that becomes empty.
+	 */
+	void free()
+	{
+		if (this.bytes != null)
+		{
+			release(this.bytes);
+			this.bytes = null;
+		}
+		this.ints = IntBuffer.allocate(0);
+	}
+
+	/**
+	 * Releases the native memory of a direct buffer, if the JVM allows it.
+	 */
+	private static final void release(ByteBuffer buffer)
+	{
+		try
+		{
+			if (INVOKE_CLEANER != null)
+			{
+				INVOKE_CLEANER.invoke(UNSAFE, buffer);
+				return;
+			}
+
+			// Java 8: call DirectByteBuffer.cleaner().clean()
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null)
+			{
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		}
+		catch (Exception ex)
+		{
+			// memory will be released by the garbage collector
+		}
+	}
+}
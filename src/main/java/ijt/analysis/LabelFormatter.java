@@ -0,0 +1,98 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+/**
+ * Formats integer labels as a prefix followed by a zero-padded number, as
+ * used for the row labels of tables and for the names of ROIs. This is
+ * equivalent to String.format(prefix + "%0" + nDigits + "d", label), but
+ * avoids parsing the format string for each label.
+ *
+ * Instances reuse an internal buffer, and should not be shared between
+ * threads.
+ *
+ * @author dlegland
+ *
+ */
+final class LabelFormatter
+{
+	// ====================================================
+	// Class variables
+
+	/** The buffer containing the prefix, followed by the digits */
+	private final char[] buffer;
+
+	/** The number of characters of the prefix */
+	private final int prefixLength;
+
+	/** The minimum number of digits */
+	private final int nDigits;
+
+
+	// ====================================================
+	// Constructor
+
+	/**
+	 * Creates a new formatter.
+	 *
+	 * @param prefix
+	 *            the string written before each number
+	 * @param nDigits
+	 *            the minimum number of digits of each number
+	 */
+	LabelFormatter(String prefix, int nDigits)
+	{
+		this.prefixLength = prefix.length();
+		this.nDigits = Math.max(nDigits, 1);
+		this.buffer = new char[this.prefixLength + Math.max(this.nDigits, 10)];
+		prefix.getChars(0, this.prefixLength, this.buffer, 0);
+	}
+
+	/**
+	 * Computes the number of digits required for writing the numbers between
+	 * 0 and the specified value.
+	 *
+	 * @param maxValue
+	 *            the largest value to write
+	 * @return the number of digits of the largest value
+	 */
+	static final int digitCount(int maxValue)
+	{
+		int n = 1;
+		while (maxValue >= 10)
+		{
+			maxValue /= 10;
+			n++;
+		}
+		return n;
+	}
+
+
+	// ====================================================
+	// Methods
+
+	/**
+	 * Formats a label.
+	 *
+	 * @param label
+	 *            the label to format
+	 * @return the prefix followed by the zero-padded label
+	 */
+	String format(int label)
+	{
+		if (label < 0)
+		{
+			return new String(this.buffer, 0, this.prefixLength) + String.format("%0" + this.nDigits + "d", label);
+		}
+
+		int length = Math.max(this.nDigits, digitCount(label));
+		int end = this.prefixLength + length;
+		for (int i = end - 1; i >= this.prefixLength; i--)
+		{
+			this.buffer[i] = (char) ('0' + label % 10);
+			label /= 10;
+		}
+		return new String(this.buffer, 0, end);
+	}
+}
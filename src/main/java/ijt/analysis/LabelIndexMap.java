@@ -0,0 +1,180 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Associates dense indices to the labels of an image, in the order the
+ * labels are encountered.
+ *
+ * Labels are stored within an open addressing hash table of primitive
+ * integers, so that the index of a label is retrieved without boxing, and
+ * memory usage depends on the number of labels, not on their values. The
+ * value 0, used for the background, can not be stored.
+ *
+ * @author dlegland
+ *
+ */
+final class LabelIndexMap
+{
+	// ====================================================
+	// Class variables
+
+	/** The hash table of labels, 0 denoting an empty slot */
+	private int[] keys;
+
+	/** The index associated to the label in the same slot */
+	private int[] values;
+
+	/** The labels, in the order of their indices */
+	private int[] labels;
+
+	/** The number of labels */
+	private int size = 0;
+
+
+	// ====================================================
+	// Constructor
+
+	/**
+	 * Creates a new empty map.
+	 */
+	LabelIndexMap()
+	{
+		this.keys = new int[16];
+		this.values = new int[16];
+		this.labels = new int[8];
+	}
+
+
+	// ====================================================
+	// Methods
+
+	/**
+	 * @return the number of labels within this map
+	 */
+	int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Returns the index of a label.
+	 *
+	 * @param label
+	 *            a label, different from 0
+	 * @return the index of the label, or -1 if the label is not in the map
+	 */
+	int indexOf(int label)
+	{
+		int mask = this.keys.length - 1;
+		for (int slot = hash(label) & mask; this.keys[slot] != 0; slot = (slot + 1) & mask)
+		{
+			if (this.keys[slot] == label)
+			{
+				return this.values[slot];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index of a label, adding the label to the map if needed.
+	 * New labels receive the index equal to the number of labels already in
+	 * the map.
+	 *
+	 * @param label
+	 *            a label, different from 0
+	 * @return the index of the label
+	 */
+	int add(int label)
+	{
+		if (label == 0)
+		{
+			throw new IllegalArgumentException("Can not index the background label");
+		}
+
+		int mask = this.keys.length - 1;
+		int slot = hash(label) & mask;
+		for (; this.keys[slot] != 0; slot = (slot + 1) & mask)
+		{
+			if (this.keys[slot] == label)
+			{
+				return this.values[slot];
+			}
+		}
+
+		int index = this.size++;
+		this.keys[slot] = label;
+		this.values[slot] = index;
+		if (index == this.labels.length)
+		{
+			this.labels = Arrays.copyOf(this.labels, 2 * index);
+		}
+		this.labels[index] = label;
+
+		// keep the load factor below one half
+		if (2 * this.size > this.keys.length)
+		{
+			rehash(2 * this.keys.length);
+		}
+		return index;
+	}
+
+	/**
+	 * Removes all the labels from this map, keeping the memory allocated for
+	 * them.
+	 */
+	void clear()
+	{
+		Arrays.fill(this.keys, 0);
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the label associated to an index.
+	 *
+	 * @param index
+	 *            the index of a label, smaller than the size of the map
+	 * @return the label with this index
+	 */
+	int getLabel(int index)
+	{
+		return this.labels[index];
+	}
+
+	/**
+	 * @return the labels, in the order of their indices
+	 */
+	int[] getLabels()
+	{
+		return Arrays.copyOf(this.labels, this.size);
+	}
+
+	private void rehash(int capacity)
+	{
+		int[] newKeys = new int[capacity];
+		int[] newValues = new int[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < this.size; i++)
+		{
+			int slot = hash(this.labels[i]) & mask;
+			while (newKeys[slot] != 0)
+			{
+				slot = (slot + 1) & mask;
+			}
+			newKeys[slot] = this.labels[i];
+			newValues[slot] = i;
+		}
+		this.keys = newKeys;
+		this.values = newValues;
+	}
+
+	private static final int hash(int label)
+	{
+		int h = label * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
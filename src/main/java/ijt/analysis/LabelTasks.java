@@ -0,0 +1,475 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent computations for each label of an image using a
+ * fork-join pool.
+ *
+ * Labels are sorted by decreasing size, and each thread claims the next
+ * label in this order when its previous task is done, so that the largest
+ * labels are processed first and the last tasks to finish are short ones.
+ * Each task is identified by the index of the label, and is expected to
+ * write its result into an index-addressed array.
+ *
+ * The number of threads is shared by all computations, and can be changed
+ * with the setParallelism() method. Computations already running keep
+ * their threads, and only new computations use the new number of threads.
+ * Alternatively, the runWith() method runs a computation with the threads of
+ * an executor provided by the caller, for example by an application
+ * framework.
+ *
+ * @author dlegland
+ *
+ */
+public class LabelTasks
+{
+	// ====================================================
+	// Inner interface
+
+	/**
+	 * The computation to run for each label.
+	 */
+	public interface Task
+	{
+		/**
+		 * Processes the label with the specified index.
+		 *
+		 * @param index
+		 *            the index of the label
+		 */
+		public void process(int index);
+	}
+
+
+	// ====================================================
+	// Static variables
+
+	/** The number of threads used for computations */
+	private static int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/** The pool used for new computations, created on demand */
+	private static LabelPool pool = null;
+
+	/** The executor used by the computations of the current thread, or null */
+	private static final ThreadLocal<ExecutorScope> scope = new ThreadLocal<ExecutorScope>();
+
+	/** The scope used within workers, that runs nested loops sequentially */
+	private static final ExecutorScope SEQUENTIAL = new ExecutorScope(null, 1);
+
+
+	// ====================================================
+	// Static methods
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private LabelTasks()
+	{
+	}
+
+	/**
+	 * @return the number of threads used for per-label computations
+	 */
+	public static final synchronized int getParallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * Changes the number of threads used for per-label computations. A value
+	 * of 1 runs computations within the calling thread.
+	 *
+	 * Computations running on the previous pool, including the per-label
+	 * loops they start later on, keep using it. The previous pool is shut
+	 * down once it has no computation left.
+	 *
+	 * @param nThreads
+	 *            the number of threads, greater than or equal to 1
+	 */
+	public static final synchronized void setParallelism(int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be positive, not " + nThreads);
+		}
+		if (nThreads != parallelism && pool != null)
+		{
+			if (pool.nComputations == 0)
+			{
+				pool.shutdown();
+			}
+			pool = null;
+		}
+		parallelism = nThreads;
+	}
+
+	/**
+	 * Runs a computation within the current thread, using the threads of the
+	 * specified executor instead of the shared pool for the per-label tasks
+	 * of the computation. At most nThreads tasks run at the same time, one of
+	 * them within the current thread. Per-label loops started from a task
+	 * run within the thread of this task.
+	 *
+	 * @param executor
+	 *            the executor used for running per-label tasks
+	 * @param nThreads
+	 *            the maximum number of tasks running at the same time
+	 * @param computation
+	 *            the computation to run
+	 */
+	public static final void runWith(ExecutorService executor, int nThreads, Runnable computation)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be positive, not " + nThreads);
+		}
+
+		ExecutorScope previous = scope.get();
+		scope.set(new ExecutorScope(executor, nThreads));
+		try
+		{
+			computation.run();
+		}
+		finally
+		{
+			scope.set(previous);
+		}
+	}
+
+	/**
+	 * Runs a task for each label, starting with the largest ones.
+	 *
+	 * @param sizes
+	 *            the size of each label, used for scheduling (for example the
+	 *            number of corner points)
+	 * @param task
+	 *            the task to run for each label index
+	 */
+	public static final void forEach(int[] sizes, Task task)
+	{
+		int[] order = sortBySizeDescending(sizes);
+		ExecutorScope executorScope = scope.get();
+		if (executorScope != null)
+		{
+			executorScope.forEach(order, task);
+			return;
+		}
+
+		runOnPool(order, order.length, task);
+	}
+
+	/**
+	 * Runs a task for each label index, starting tasks by increasing index.
+	 * Each thread claims the next index when its previous task is done, so
+	 * that the tasks running at a given time have close indices. This is
+	 * useful when results are consumed in index order, as only a few of them
+	 * need to be buffered.
+	 *
+	 * @param n
+	 *            the number of label indices
+	 * @param task
+	 *            the task to run for each label index
+	 */
+	public static final void forEachInOrder(int n, Task task)
+	{
+		ExecutorScope executorScope = scope.get();
+		if (executorScope != null)
+		{
+			int[] order = new int[n];
+			for (int i = 0; i < n; i++)
+			{
+				order[i] = i;
+			}
+			executorScope.forEach(order, task);
+			return;
+		}
+
+		runOnPool(null, n, task);
+	}
+
+	/**
+	 * Computes the order of label indices by decreasing label size. Labels
+	 * with the same size are ordered by increasing index.
+	 */
+	static final int[] sortBySizeDescending(final int[] sizes)
+	{
+		// pack each size with its index, so that a primitive sort can be
+		// used, and reverse the index so that ties end in index order
+		int n = sizes.length;
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++)
+		{
+			keys[i] = ((long) sizes[i] << 32) | (Integer.MAX_VALUE - i);
+		}
+		Arrays.sort(keys);
+
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			order[i] = Integer.MAX_VALUE - (int) keys[n - 1 - i];
+		}
+		return order;
+	}
+
+	/**
+	 * Runs the task for each label index, in the specified order, using the
+	 * shared pool. Threads claim the next index from a shared counter.
+	 *
+	 * @param order
+	 *            the order of label indices, or null for increasing indices
+	 * @param n
+	 *            the number of label indices
+	 * @param task
+	 *            the task to run for each label index
+	 */
+	private static final void runOnPool(int[] order, int n, Task task)
+	{
+		// when called from a task of a pool, as when processing the slices of
+		// a stack, run within the pool of the current worker thread
+		ForkJoinPool current = ForkJoinTask.getPool();
+		if (current instanceof LabelPool)
+		{
+			runOnPool((LabelPool) current, order, n, task);
+			return;
+		}
+
+		LabelPool pool = acquirePool();
+		try
+		{
+			runOnPool(pool, order, n, task);
+		}
+		finally
+		{
+			releasePool(pool);
+		}
+	}
+
+	private static final void runOnPool(LabelPool pool, int[] order, int n, Task task)
+	{
+		if (pool == null || n < 2)
+		{
+			for (int i = 0; i < n; i++)
+			{
+				task.process(order == null ? i : order[i]);
+			}
+			return;
+		}
+
+		final ClaimAction[] workers = new ClaimAction[Math.min(pool.getParallelism(), n)];
+		AtomicInteger next = new AtomicInteger(0);
+		for (int i = 0; i < workers.length; i++)
+		{
+			workers[i] = new ClaimAction(next, order, n, task);
+		}
+		RecursiveAction action = new RecursiveAction()
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute()
+			{
+				invokeAll(workers);
+			}
+		};
+		if (ForkJoinTask.getPool() == pool)
+		{
+			action.invoke();
+		}
+		else
+		{
+			pool.invoke(action);
+		}
+	}
+
+	/**
+	 * Returns the pool for the current parallelism, or null if computations
+	 * should run within the calling thread. The pool must be released once
+	 * the computation is done.
+	 */
+	private static final synchronized LabelPool acquirePool()
+	{
+		if (parallelism == 1)
+		{
+			return null;
+		}
+		if (pool == null)
+		{
+			pool = new LabelPool(parallelism);
+		}
+		pool.nComputations++;
+		return pool;
+	}
+
+	/**
+	 * Releases a pool returned by acquirePool(), and shuts it down if it has
+	 * been replaced and has no computation left.
+	 */
+	private static final synchronized void releasePool(LabelPool released)
+	{
+		if (released == null)
+		{
+			return;
+		}
+		released.nComputations--;
+		if (released != pool && released.nComputations == 0)
+		{
+			released.shutdown();
+		}
+	}
+
+
+	// ====================================================
+	// Inner classes
+
+	/**
+	 * The pool used by computations, that counts the computations started on
+	 * it so that it can be shut down once replaced.
+	 */
+	private static final class LabelPool extends ForkJoinPool
+	{
+		/** The number of computations using this pool, guarded by LabelTasks.class */
+		int nComputations = 0;
+
+		LabelPool(int parallelism)
+		{
+			super(parallelism);
+		}
+	}
+
+	/**
+	 * Processes label indices claimed from a shared counter, in the order of
+	 * the array of indices, until all indices have been claimed.
+	 */
+	private static final class ClaimAction extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final AtomicInteger next;
+		final int[] order;
+		final int n;
+		final Task task;
+
+		ClaimAction(AtomicInteger next, int[] order, int n, Task task)
+		{
+			this.next = next;
+			this.order = order;
+			this.n = n;
+			this.task = task;
+		}
+
+		@Override
+		protected void compute()
+		{
+			int i;
+			while ((i = next.getAndIncrement()) < n)
+			{
+				task.process(order == null ? i : order[i]);
+			}
+		}
+	}
+
+	/**
+	 * The executor used by the computations started with the runWith()
+	 * method. Workers claim label indices from a shared counter, in the
+	 * order of the array of indices.
+	 */
+	private static final class ExecutorScope
+	{
+		final ExecutorService executor;
+		final int nThreads;
+
+		ExecutorScope(ExecutorService executor, int nThreads)
+		{
+			this.executor = executor;
+			this.nThreads = nThreads;
+		}
+
+		void forEach(final int[] order, final Task task)
+		{
+			final int n = order.length;
+			final AtomicInteger next = new AtomicInteger(0);
+			Runnable worker = new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					// nested loops run within the thread of the worker
+					ExecutorScope previous = scope.get();
+					scope.set(SEQUENTIAL);
+					try
+					{
+						int index;
+						while ((index = next.getAndIncrement()) < n)
+						{
+							task.process(order[index]);
+						}
+					}
+					finally
+					{
+						scope.set(previous);
+					}
+				}
+			};
+
+			int nWorkers = Math.min(this.nThreads, n);
+			if (nWorkers < 2)
+			{
+				worker.run();
+				return;
+			}
+
+			ArrayList<Future<?>> futures = new ArrayList<Future<?>>(nWorkers - 1);
+			try
+			{
+				for (int i = 1; i < nWorkers; i++)
+				{
+					futures.add(this.executor.submit(worker));
+				}
+				worker.run();
+				for (Future<?> future : futures)
+				{
+					future.get();
+				}
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for label tasks", ex);
+			}
+			catch (ExecutionException ex)
+			{
+				Throwable cause = ex.getCause();
+				if (cause instanceof RuntimeException)
+				{
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error)
+				{
+					throw (Error) cause;
+				}
+				throw new RuntimeException(cause);
+			}
+			finally
+			{
+				// stop the remaining workers if a task failed
+				next.set(n);
+				for (Future<?> future : futures)
+				{
+					future.cancel(false);
+				}
+			}
+		}
+	}
+}
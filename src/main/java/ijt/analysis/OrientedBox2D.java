@@ -5,11 +5,15 @@ package ijt.analysis;
 
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ij.IJ;
 import ij.ImagePlus;
+import ij.ImageStack;
 import ij.gui.Overlay;
 import ij.gui.PolygonRoi;
 import ij.gui.Roi;
@@ -26,151 +30,1249 @@ import inra.ijpb.label.LabelImages;
  */
 public class OrientedBox2D
 {
+	// ====================================================
+	// Inner enumeration
+
+	/**
+	 * The different criteria that can be used for choosing the orientation
+	 * of the box.
+	 */
+	public enum Criterion
+	{
+		/** Box aligned with the minimum Feret diameter */
+		MIN_WIDTH("Minimum Width"),
+		/** Box with the smallest area */
+		MIN_AREA("Minimum Area"),
+		/** Box with the smallest perimeter */
+		MIN_PERIMETER("Minimum Perimeter");
+
+		private final String label;
+
+		private Criterion(String label)
+		{
+			this.label = label;
+		}
+
+		/**
+		 * Computes the value of the criterion for a rectangle with the given
+		 * dimensions.
+		 * 
+		 * @param length
+		 *            the first dimension of the rectangle
+		 * @param width
+		 *            the second dimension of the rectangle
+		 * @return the value to minimize
+		 */
+		public double evaluate(double length, double width)
+		{
+			switch (this)
+			{
+			case MIN_AREA:
+				return length * width;
+			case MIN_PERIMETER:
+				return 2 * (length + width);
+			default:
+				return width;
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return this.label;
+		}
+
+		/**
+		 * Returns the list of labels for this enumeration.
+		 * 
+		 * @return the list of labels for this enumeration.
+		 */
+		public static String[] getAllLabels()
+		{
+			Criterion[] values = Criterion.values();
+			String[] labels = new String[values.length];
+			for (int i = 0; i < values.length; i++)
+			{
+				labels[i] = values[i].label;
+			}
+			return labels;
+		}
+
+		/**
+		 * Determines the criterion from its label.
+		 * 
+		 * @param label
+		 *            the label of the criterion
+		 * @return the criterion associated to the label
+		 * @throws IllegalArgumentException
+		 *             if label is not recognized.
+		 */
+		public static Criterion fromLabel(String label)
+		{
+			for (Criterion criterion : Criterion.values())
+			{
+				if (criterion.label.equalsIgnoreCase(label))
+					return criterion;
+			}
+			throw new IllegalArgumentException("Unable to parse Criterion with label: " + label);
+		}
+	}
+
+
 	// ====================================================
 	// Static methods
 
 	/**
-	 * Computes the object-oriented bounding box of a set of points.
+	 * Computes the object-oriented bounding box of a set of points.
+	 * 
+	 * The box is aligned with the direction of the minimum Feret diameter,
+	 * and is obtained from a single rotating calipers sweep over the convex
+	 * hull of the points.
+	 * 
+	 * @param points
+	 *            a list of points (not necessarily ordered)
+	 * @return the oriented box of this set of points.
+	 * @see RotatingCalipers
+	 */
+	public static final OrientedBox2D computeBox(ArrayList<? extends Point2D> points)
+	{
+		return computeBox(points, Criterion.MIN_WIDTH);
+	}
+	
+	/**
+	 * Computes the object-oriented bounding box of a set of points that
+	 * minimizes the specified criterion.
+	 * 
+	 * @param points
+	 *            a list of points (not necessarily ordered)
+	 * @param criterion
+	 *            the quantity minimized by the box (width, area or perimeter)
+	 * @return the oriented box of this set of points.
+	 * @see FeretAlgorithms
+	 */
+	public static final OrientedBox2D computeBox(ArrayList<? extends Point2D> points, Criterion criterion)
+	{
+		ArrayList<Point2D> convexHull = FeretAlgorithms.convexHull(points);
+		return FeretAlgorithms.box(convexHull, criterion);
+	}
+	
+	
+	/**
+	 * Computes parameters of oriented box for each label of the input label
+	 * image.
+	 * 
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @return a ResultsTable containing oriented box parameters
+	 */
+	public final static Map<Integer, OrientedBox2D> orientedBox(ImageProcessor image)
+	{
+		return orientedBox(image, Criterion.MIN_WIDTH);
+	}
+	
+	/**
+	 * Computes parameters of oriented box for each label of the input label
+	 * image, using the specified criterion for choosing box orientation.
+	 * 
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @param criterion
+	 *            the quantity minimized by each box (width, area or perimeter)
+	 * @return a read-only map between labels and boxes, sorted by label
+	 * @see #orientedBoxTable(ImageProcessor, Criterion)
+	 */
+	public final static Map<Integer, OrientedBox2D> orientedBox(ImageProcessor image, Criterion criterion)
+	{
+		// Check validity of parameters
+		if (image == null)
+			return null;
+
+		return orientedBoxTable(image, criterion).asMap();
+	}
+
+	/**
+	 * Computes parameters of oriented box for each label of the input label
+	 * image, and stores them within a columnar table.
+	 * 
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @param criterion
+	 *            the quantity minimized by each box (width, area or perimeter)
+	 * @return a table containing the oriented box of each label
+	 */
+	public final static OrientedBoxTable orientedBoxTable(ImageProcessor image, Criterion criterion)
+	{
+		return orientedBoxTable(image, criterion, null);
+	}
+
+	/**
+	 * Computes parameters of oriented box for each label of the input label
+	 * image, and stores them within a columnar table. The computation stops
+	 * when the token is cancelled, and the returned table then only contains
+	 * the labels processed so far, and is marked as incomplete. If the token
+	 * is cancelled while the image is scanned, only the labels whose rows
+	 * have all been scanned may be processed, and only while the token is
+	 * not cancelled.
+	 * 
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @param criterion
+	 *            the quantity minimized by each box (width, area or perimeter)
+	 * @param token
+	 *            a token for stopping the computation, or null
+	 * @return a table containing the oriented box of each processed label
+	 * @see OrientedBoxTable#isComplete()
+	 */
+	public final static OrientedBoxTable orientedBoxTable(ImageProcessor image, Criterion criterion, CancellationToken token)
+	{
+		OrientedBoxTable table = orientedBoxTable(image, criterion, token, new ThrottledProgressListener());
+		IJ.showStatus("");
+		return table;
+	}
+
+	/**
+	 * Computes parameters of oriented box for each label of the input label
+	 * image, and reports the number of processed labels to a progress
+	 * listener. The computation stops when the token is cancelled.
+	 * 
+	 * The steps of the computation are also reported to the listener, and
+	 * this method does not update the status bar of ImageJ by itself, so
+	 * that it can be called from several threads at the same time.
+	 * 
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @param criterion
+	 *            the quantity minimized by each box (width, area or perimeter)
+	 * @param token
+	 *            a token for stopping the computation, or null
+	 * @param progress
+	 *            the listener notified when labels are processed, for example
+	 *            ProgressListener.NONE for batch processing
+	 * @return a table containing the oriented box of each processed label
+	 */
+	public final static OrientedBoxTable orientedBoxTable(ImageProcessor image, Criterion criterion, CancellationToken token,
+			ProgressListener progress)
+	{
+		// extract particle labels
+		progress.start("Find Labels", 0);
+		int[][] labelsAndRows = findLabelsAndLastRows(image);
+		int[] labels = labelsAndRows[0];
+
+        // For each label, create a list of corner points
+		progress.start("Find Label Corner Points", 0);
+        ArrayList<Point2D>[] labelCornerPointsArray = newPointLists(labels.length);
+        int nRows = scanCorners(image, labels, labelCornerPointsArray, token);
+        if (nRows < image.getHeight())
+        {
+        	// only the labels entirely within the scanned rows can be
+        	// processed, and the token still stops the computation
+        	int n = keepScannedLabels(labels, labelsAndRows[1], labelCornerPointsArray, nRows);
+        	int[] scannedLabels = Arrays.copyOf(labels, n);
+        	OrientedBoxTable table = OrientedBoxTable.fromPartialBoxes(scannedLabels,
+        			computeBoxes(Arrays.copyOf(labelCornerPointsArray, n), criterion, token, progress));
+        	table.complete = false;
+        	return table;
+        }
+                
+        // Compute the oriented box of each set of corner points, in parallel,
+        // starting from the labels with the largest number of corners
+		OrientedBox2D[] boxes = computeBoxes(labelCornerPointsArray, criterion, token, progress);
+        return OrientedBoxTable.fromPartialBoxes(labels, boxes);
+	}
+
+	/**
+	 * Computes parameters of oriented box for each label of the input label
+	 * image, using a persistent cache. If the same image has already been
+	 * processed with the same criterion, boxes are read from the cache.
+	 * 
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @param criterion
+	 *            the quantity minimized by each box (width, area or perimeter)
+	 * @param cache
+	 *            the cache used to store results, or null to always compute
+	 *            the boxes
+	 * @return the oriented box of each label
+	 */
+	public final static Map<Integer, OrientedBox2D> orientedBox(ImageProcessor image, Criterion criterion, OrientedBoxCache cache)
+	{
+		if (cache == null)
+		{
+			return orientedBox(image, criterion);
+		}
+		return cache.get(image, criterion).boxes;
+	}
+
+	/**
+	 * Computes the oriented box of each label of the input label image, and
+	 * sends each box to a listener as soon as it is available, instead of
+	 * returning all the boxes at the end of the computation.
+	 * 
+	 * When boxes are emitted in label order, labels are processed by
+	 * increasing label, and boxes computed ahead of the next label to emit
+	 * are kept until the previous labels have been emitted. When boxes are
+	 * emitted in completion order, the largest labels are processed first,
+	 * and each box is emitted without delay. In both cases, the corner points
+	 * of each label are released once its box has been computed, and boxes
+	 * are not retained after being emitted.
+	 * 
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @param criterion
+	 *            the quantity minimized by each box (width, area or perimeter)
+	 * @param listener
+	 *            the listener that receives each box. Calls to the listener
+	 *            are never concurrent.
+	 * @param order
+	 *            the order used for emitting boxes
+	 */
+	public final static void orientedBox(ImageProcessor image, final Criterion criterion,
+			final OrientedBoxListener listener, OrientedBoxListener.Order order)
+	{
+		orientedBox(image, criterion, listener, order, null);
+	}
+
+	/**
+	 * Computes the oriented box of each label of the input label image, and
+	 * sends each box to a listener as soon as it is available, until the
+	 * token is cancelled. When the token is cancelled, the boxes of the
+	 * labels that were not processed are not emitted. If the token is
+	 * cancelled while the image is scanned, only the labels whose rows have
+	 * all been scanned may be emitted, and only while the token is not
+	 * cancelled.
+	 * 
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @param criterion
+	 *            the quantity minimized by each box (width, area or perimeter)
+	 * @param listener
+	 *            the listener that receives each box. Calls to the listener
+	 *            are never concurrent.
+	 * @param order
+	 *            the order used for emitting boxes
+	 * @param token
+	 *            a token for stopping the computation, or null
+	 * @return true if the boxes of all the labels were emitted, false if the
+	 *         computation was cancelled
+	 */
+	public final static boolean orientedBox(ImageProcessor image, final Criterion criterion,
+			final OrientedBoxListener listener, OrientedBoxListener.Order order, final CancellationToken token)
+	{
+		// Check validity of parameters
+		if (image == null)
+			return true;
+
+		int[][] labelsAndRows = findLabelsAndLastRows(image);
+		int[] allLabels = labelsAndRows[0];
+		ArrayList<Point2D>[] allCorners = newPointLists(allLabels.length);
+		int nRows = scanCorners(image, allLabels, allCorners, token);
+		if (nRows < image.getHeight())
+		{
+			// only the labels entirely within the scanned rows can be
+			// emitted, and the token still stops the computation
+			int n = keepScannedLabels(allLabels, labelsAndRows[1], allCorners, nRows);
+			emitBoxes(Arrays.copyOf(allLabels, n), Arrays.copyOf(allCorners, n), criterion, listener, order, token);
+			return false;
+		}
+		return emitBoxes(allLabels, allCorners, criterion, listener, order, token);
+	}
+
+	/**
+	 * Computes the box of each set of corners and sends it to the listener,
+	 * until the token is cancelled.
+	 * 
+	 * @return true if the boxes of all the labels were emitted
+	 */
+	private static final boolean emitBoxes(final int[] labels, final ArrayList<Point2D>[] corners,
+			final Criterion criterion, final OrientedBoxListener listener, OrientedBoxListener.Order order,
+			final CancellationToken token)
+	{
+		final int nLabels = labels.length;
+
+		if (order == OrientedBoxListener.Order.LABEL)
+		{
+			// labels are sorted, so label order is the same as index order
+			final OrderedEmitter emitter = new OrderedEmitter(labels, listener);
+			LabelTasks.forEachInOrder(nLabels, new LabelTasks.Task()
+			{
+				@Override
+				public void process(int index)
+				{
+					if (CancellationToken.isCancelled(token))
+					{
+						return;
+					}
+					OrientedBox2D box = computeBox(corners[index], criterion);
+					corners[index] = null;
+					emitter.add(index, box);
+				}
+			});
+			return emitter.emittedCount() == nLabels;
+		}
+
+		final AtomicInteger emitted = new AtomicInteger(0);
+		final Object lock = new Object();
+		LabelTasks.forEach(pointSetSizes(corners), new LabelTasks.Task()
+		{
+			@Override
+			public void process(int index)
+			{
+				if (CancellationToken.isCancelled(token))
+				{
+					return;
+				}
+				OrientedBox2D box = computeBox(corners[index], criterion);
+				corners[index] = null;
+				synchronized (lock)
+				{
+					listener.boxComputed(labels[index], box);
+					emitted.incrementAndGet();
+				}
+			}
+		});
+		return emitted.get() == nLabels;
+	}
+
+	/**
+	 * Sends the boxes computed by several threads to a listener, by
+	 * increasing label index.
+	 * 
+	 * Boxes computed ahead of the next index to emit are kept within a ring
+	 * buffer, whose size depends on the number of boxes waiting for a
+	 * previous one, and not on the number of labels. Ready boxes are drained
+	 * under the lock, and the listener is called outside of the lock, by a
+	 * single thread at a time: the thread that finds no emission in progress
+	 * emits boxes until none is ready, including the boxes added by other
+	 * threads in the meantime.
+	 */
+	private static final class OrderedEmitter
+	{
+		final int[] labels;
+		final OrientedBoxListener listener;
+
+		/** The boxes waiting to be emitted, at index modulo the buffer size */
+		OrientedBox2D[] buffer = new OrientedBox2D[16];
+
+		/** The index of the next box to emit */
+		int next = 0;
+
+		/** True while a thread is emitting boxes */
+		boolean emitting = false;
+
+		OrderedEmitter(int[] labels, OrientedBoxListener listener)
+		{
+			this.labels = labels;
+			this.listener = listener;
+		}
+
+		/**
+		 * Adds the box of the label with the specified index, and emits the
+		 * boxes that are ready, unless another thread is emitting.
+		 */
+		void add(int index, OrientedBox2D box)
+		{
+			synchronized (this)
+			{
+				store(index, box);
+				if (this.emitting)
+				{
+					return;
+				}
+				this.emitting = true;
+			}
+
+			ArrayList<OrientedBox2D> ready = new ArrayList<OrientedBox2D>();
+			while (true)
+			{
+				int first;
+				synchronized (this)
+				{
+					first = this.next;
+					int mask = this.buffer.length - 1;
+					while (this.buffer[this.next & mask] != null)
+					{
+						ready.add(this.buffer[this.next & mask]);
+						this.buffer[this.next & mask] = null;
+						this.next++;
+					}
+					if (ready.isEmpty())
+					{
+						this.emitting = false;
+						return;
+					}
+				}
+
+				for (int i = 0; i < ready.size(); i++)
+				{
+					this.listener.boxComputed(this.labels[first + i], ready.get(i));
+				}
+				ready.clear();
+			}
+		}
+
+		/**
+		 * @return the number of emitted boxes, once all the threads are done
+		 */
+		synchronized int emittedCount()
+		{
+			return this.next;
+		}
+
+		private void store(int index, OrientedBox2D box)
+		{
+			// grow the buffer if the box is too far ahead of the next index
+			int offset = index - this.next;
+			if (offset >= this.buffer.length)
+			{
+				int size = this.buffer.length;
+				while (offset >= size)
+				{
+					size *= 2;
+				}
+				OrientedBox2D[] newBuffer = new OrientedBox2D[size];
+				int oldMask = this.buffer.length - 1;
+				for (int i = this.next; i < this.next + this.buffer.length; i++)
+				{
+					newBuffer[i & (size - 1)] = this.buffer[i & oldMask];
+				}
+				this.buffer = newBuffer;
+			}
+			this.buffer[index & (this.buffer.length - 1)] = box;
+		}
+	}
+
+	/**
+	 * Computes parameters of oriented box for each label within each plane of
+	 * a stack of label images.
+	 * 
+	 * Planes are processed in parallel, and the labels within each plane are
+	 * also processed in parallel, using the number of threads specified by
+	 * LabelTasks. The processor of each plane is only referenced while the
+	 * plane is processed, so that corner points and other intermediate
+	 * buffers can be released once the plane is done.
+	 * 
+	 * @param stack
+	 *            a stack of label images (8, 16 or 32 bits)
+	 * @param criterion
+	 *            the quantity minimized by each box (width, area or perimeter)
+	 * @return an array containing, for each plane of the stack, the oriented
+	 *         box of each label
+	 */
+	public final static Map<Integer, OrientedBox2D>[] orientedBoxes(final ImageStack stack, final Criterion criterion)
+	{
+		return orientedBoxes(stack, criterion, null);
+	}
+
+	/**
+	 * Computes parameters of oriented box for each label within each plane of
+	 * a stack of label images, until the token is cancelled. The planes that
+	 * were not processed when the token was cancelled are associated to
+	 * empty maps, and the plane being processed contains the labels
+	 * processed so far.
+	 * 
+	 * @param stack
+	 *            a stack of label images (8, 16 or 32 bits)
+	 * @param criterion
+	 *            the quantity minimized by each box (width, area or perimeter)
+	 * @param token
+	 *            a token for stopping the computation, or null
+	 * @return an array containing, for each plane of the stack, the oriented
+	 *         box of each label
+	 */
+	public final static Map<Integer, OrientedBox2D>[] orientedBoxes(final ImageStack stack, final Criterion criterion,
+			final CancellationToken token)
+	{
+		int nPlanes = stack.getSize();
+		@SuppressWarnings("unchecked")
+		final Map<Integer, OrientedBox2D>[] planeBoxMaps = (Map<Integer, OrientedBox2D>[]) new Map<?, ?>[nPlanes];
+		
+		// progress is reported by plane, as planes are processed concurrently
+		final ProgressListener progress = new ThrottledProgressListener();
+		progress.start("Compute oriented boxes", nPlanes);
+
+		// all planes have the same size, and are processed in stack order
+		int[] sizes = new int[nPlanes];
+		Arrays.fill(sizes, 1);
+		LabelTasks.forEach(sizes, new LabelTasks.Task()
+		{
+			@Override
+			public void process(int index)
+			{
+				if (CancellationToken.isCancelled(token))
+				{
+					planeBoxMaps[index] = new TreeMap<Integer, OrientedBox2D>();
+					return;
+				}
+				ImageProcessor plane = stack.getProcessor(index + 1);
+				planeBoxMaps[index] = orientedBoxTable(plane, criterion, token, ProgressListener.NONE).asMap();
+				progress.progress(1);
+			}
+		});
+		
+		progress.finish();
+		return planeBoxMaps;
+	}
+
+	/**
+	 * Computes the oriented box of each set of points, using the number of
+	 * threads specified by LabelTasks. Each list of points is released once
+	 * its box has been computed.
+	 * 
+	 * @param pointsArray
+	 *            an array of point lists
+	 * @param criterion
+	 *            the quantity minimized by each box
+	 * @return an array of oriented boxes, with the same size as the input
+	 *         array
+	 * @see LabelTasks#setParallelism(int)
+	 */
+	public final static OrientedBox2D[] computeBoxes(final ArrayList<Point2D>[] pointsArray, final Criterion criterion)
+	{
+		return computeBoxes(pointsArray, criterion, null);
+	}
+
+	/**
+	 * Computes the oriented box of each set of points, until the token is
+	 * cancelled. The boxes of the point sets that were not processed are
+	 * null.
+	 * 
+	 * @param pointsArray
+	 *            an array of point lists
+	 * @param criterion
+	 *            the quantity minimized by each box
+	 * @param token
+	 *            a token for stopping the computation, or null
+	 * @return an array of oriented boxes, with the same size as the input
+	 *         array
+	 */
+	public final static OrientedBox2D[] computeBoxes(final ArrayList<Point2D>[] pointsArray, final Criterion criterion,
+			final CancellationToken token)
+	{
+		return computeBoxes(pointsArray, criterion, token, new ThrottledProgressListener());
+	}
+
+	/**
+	 * Computes the oriented box of each set of points, until the token is
+	 * cancelled, and notifies the progress listener each time a box has been
+	 * computed.
+	 * 
+	 * @param pointsArray
+	 *            an array of point lists
+	 * @param criterion
+	 *            the quantity minimized by each box
+	 * @param token
+	 *            a token for stopping the computation, or null
+	 * @param progress
+	 *            the listener notified when boxes are computed
+	 * @return an array of oriented boxes, with the same size as the input
+	 *         array
+	 */
+	public final static OrientedBox2D[] computeBoxes(final ArrayList<Point2D>[] pointsArray, final Criterion criterion,
+			final CancellationToken token, final ProgressListener progress)
+	{
+		final int nLabels = pointsArray.length;
+		final OrientedBox2D[] boxes = new OrientedBox2D[nLabels];
+		progress.start("Compute oriented boxes", nLabels);
+		LabelTasks.forEach(pointSetSizes(pointsArray), new LabelTasks.Task()
+		{
+			@Override
+			public void process(int index)
+			{
+				if (CancellationToken.isCancelled(token))
+				{
+					return;
+				}
+				boxes[index] = computeBox(pointsArray[index], criterion);
+				pointsArray[index] = null;
+				progress.progress(1);
+			}
+		});
+		progress.finish();
+		return boxes;
+	}
+
+	/**
+	 * Returns the size of each point list, used for scheduling per-label
+	 * computations.
+	 */
+	static final int[] pointSetSizes(ArrayList<Point2D>[] pointsArray)
+	{
+		int[] sizes = new int[pointsArray.length];
+		for (int i = 0; i < pointsArray.length; i++)
+		{
+			sizes[i] = pointsArray[i].size();
+		}
+		return sizes;
+	}
+
+	/**
+	 * Computes an approximation of the oriented box of a set of points, by
+	 * projecting the convex hull onto a fixed number of directions regularly
+	 * spaced between 0 and 180 degrees, and retaining the direction with the
+	 * smallest extent.
+	 * 
+	 * The computation time only depends on the number of directions and on
+	 * the number of hull vertices. The width of the resulting box exceeds the
+	 * minimum Feret diameter by at most D*sin(PI/(2*nDirections)), where D is
+	 * the maximum Feret diameter. This bound, estimated using the diagonal of
+	 * the box, is stored in the result.
+	 * 
+	 * @param points
+	 *            a list of points (not necessarily ordered)
+	 * @param nDirections
+	 *            the number of directions used to sample the orientations
+	 * @return the approximated oriented box, together with the bound on the
+	 *         width error
+	 */
+	public static final Approximation approximateBox(ArrayList<? extends Point2D> points, int nDirections)
+	{
+		if (nDirections < 1)
+		{
+			throw new IllegalArgumentException("Number of directions must be positive, not " + nDirections);
+		}
+		
+		// copy hull vertices into coordinate arrays
+		ArrayList<Point2D> convexHull = FeretAlgorithms.convexHull(points);
+		int n = convexHull.size();
+		double[] px = new double[n];
+		double[] py = new double[n];
+		Polygons2D.getCoordinates(convexHull, px, py);
+		
+		// identify the direction with smallest extent
+		DirectionTable table = DirectionTable.get(nDirections);
+		double[] cosTable = table.cos;
+		double[] sinTable = table.sin;
+		ProjectionKernel kernel = ProjectionKernels.getDefault();
+		double[] range = new double[2];
+		double widthMin = Double.POSITIVE_INFINITY;
+		int kMin = 0;
+		for (int k = 0; k < nDirections; k++)
+		{
+			kernel.projectionRange(px, py, n, cosTable[k], sinTable[k], range);
+			double width = range[1] - range[0];
+			if (width < widthMin)
+			{
+				widthMin = width;
+				kMin = k;
+			}
+		}
+		
+		// compute extents along the retained direction and its perpendicular
+		double cot = cosTable[kMin];
+		double sit = sinTable[kMin];
+		double umin = Double.POSITIVE_INFINITY;
+		double umax = Double.NEGATIVE_INFINITY;
+		double vmin = Double.POSITIVE_INFINITY;
+		double vmax = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++)
+		{
+			double u = px[i] * cot + py[i] * sit;
+			double v = -px[i] * sit + py[i] * cot;
+			umin = Math.min(umin, u);
+			umax = Math.max(umax, u);
+			vmin = Math.min(vmin, v);
+			vmax = Math.max(vmax, v);
+		}
+		
+		// change coordinates from rectangle to user-space
+		double du = (umin + umax) / 2;
+		double dv = (vmin + vmax) / 2;
+		double cx = du * cot - dv * sit;
+		double cy = du * sit + dv * cot;
+		
+		// the length of the box is measured perpendicular to the direction of
+		// smallest extent
+		double length = vmax - vmin;
+		double width = umax - umin;
+		double angle = Math.toDegrees(table.angle(kMin)) + 90;
+		if (length < width)
+		{
+			length = umax - umin;
+			width = vmax - vmin;
+			angle += 90;
+		}
+		angle = angle % 180;
+		
+		OrientedBox2D box = new OrientedBox2D(cx, cy, length, width, angle);
+		double errorBound = Math.hypot(length, width) * Math.sin(Math.PI / (2 * nDirections));
+		return new Approximation(box, errorBound);
+	}
+	
+	/**
+	 * Computes an approximation of the oriented box for each label of the
+	 * input label image, by sampling a fixed number of directions.
+	 * 
+	 * @see #approximateBox(ArrayList, int)
+	 * 
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @param nDirections
+	 *            the number of directions used to sample the orientations
+	 * @return the approximated oriented box of each label
+	 */
+	public final static Map<Integer, Approximation> approximateOrientedBox(ImageProcessor image, int nDirections)
+	{
+		// Check validity of parameters
+		if (image == null)
+			return null;
+
+		// extract particle labels
+		IJ.showStatus("Find Labels");
+		int[] labels = LabelImages.findAllLabels(image);
+		int nLabels = labels.length;
+
+		// For each label, create a list of corner points
+		IJ.showStatus("Find Label Corner Points");
+		ArrayList<Point2D>[] labelCornerPointsArray = computeLabelsCornersArray(image, labels);
+
+		// Compute the approximated oriented box of each set of corner points
+		Map<Integer, Approximation> labelBoxMap = new TreeMap<Integer, Approximation>();
+		ProgressListener progress = new ThrottledProgressListener();
+		progress.start("Compute approximated oriented boxes", nLabels);
+		for (int i = 0; i < nLabels; i++)
+		{
+			labelBoxMap.put(labels[i], approximateBox(labelCornerPointsArray[i], nDirections));
+			progress.progress(1);
+		}
+
+		progress.finish();
+		IJ.showStatus("");
+		return labelBoxMap;
+	}
+	
+	/**
+	 * Computes an oriented box for each label of the input label image, using
+	 * the moments of each region instead of its convex hull.
+	 * 
+	 * The image is scanned once. For each run of pixels, the zeroth, first and
+	 * second order moments of the label are updated, and the run end points
+	 * are merged into the extent of the label within the current row. The
+	 * orientation of the principal axis is then computed from the moments,
+	 * and the corners of the row extents are projected onto the principal
+	 * axes to obtain the extents of the box. As projection is linear, the
+	 * extreme projections within a row are reached at the leftmost and
+	 * rightmost run end points, and the other end points need not be kept.
+	 * 
+	 * This method is faster than the hull-based computation, but the resulting
+	 * box is not the box with minimal width.
+	 * 
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @return the oriented box of each label, aligned with its principal axes
+	 */
+	public final static Map<Integer, OrientedBox2D> momentsOrientedBox(ImageProcessor image)
+	{
+		// Check validity of parameters
+		if (image == null)
+			return null;
+
+		IJ.showStatus("Compute moments");
+		Map<Integer, OrientedBox2D> labelBoxMap = computeMomentsBoxes(image);
+		IJ.showStatus("");
+		return labelBoxMap;
+	}
+
+	/**
+	 * Computes the oriented box of each label within each plane of a stack,
+	 * using the moments of each region. Planes are processed in parallel,
+	 * and progress is reported by plane.
+	 * 
+	 * @param stack
+	 *            a stack of label images (8, 16 or 32 bits)
+	 * @return an array containing, for each plane of the stack, the oriented
+	 *         box of each label, aligned with its principal axes
+	 * @see #momentsOrientedBox(ImageProcessor)
+	 */
+	public final static Map<Integer, OrientedBox2D>[] momentsOrientedBoxes(final ImageStack stack)
+	{
+		int nPlanes = stack.getSize();
+		@SuppressWarnings("unchecked")
+		final Map<Integer, OrientedBox2D>[] planeBoxMaps = (Map<Integer, OrientedBox2D>[]) new Map<?, ?>[nPlanes];
+
+		final ProgressListener progress = new ThrottledProgressListener();
+		progress.start("Compute moments", nPlanes);
+		LabelTasks.forEachInOrder(nPlanes, new LabelTasks.Task()
+		{
+			@Override
+			public void process(int index)
+			{
+				planeBoxMaps[index] = computeMomentsBoxes(stack.getProcessor(index + 1));
+				progress.progress(1);
+			}
+		});
+
+		progress.finish();
+		return planeBoxMaps;
+	}
+
+	/**
+	 * Computes the moments box of each label, without reporting progress.
+	 */
+	private static final Map<Integer, OrientedBox2D> computeMomentsBoxes(ImageProcessor image)
+	{
+		// accumulate moments and row extents of each label, run by run
+		LabelRuns runs = new LabelRuns();
+		int width = image.getWidth();
+		int height = image.getHeight();
+		for (int y = 0; y < height; y++)
+		{
+			int currentLabel = 0;
+			int runStart = 0;
+			for (int x = 0; x < width; x++)
+			{
+				int pixel = (int) image.getf(x, y);
+				if (pixel != currentLabel)
+				{
+					if (currentLabel > 0)
+					{
+						runs.add(currentLabel, runStart, x, y);
+					}
+					currentLabel = pixel;
+					runStart = x;
+				}
+			}
+			if (currentLabel > 0)
+			{
+				runs.add(currentLabel, runStart, width, y);
+			}
+		}
+
+		// create the boxes
+		int[] labels = runs.indices.getLabels();
+		Map<Integer, OrientedBox2D> labelBoxMap = new TreeMap<Integer, OrientedBox2D>();
+		for (int i = 0; i < labels.length; i++)
+		{
+			labelBoxMap.put(labels[i], runs.box(i));
+		}
+		return labelBoxMap;
+	}
+
+	/**
+	 * Moments and row extents of the labels of an image, updated run by run
+	 * during the scan of the image. Labels are associated to dense indices in
+	 * the order they are encountered.
+	 */
+	private static final class LabelRuns
+	{
+		final LabelIndexMap indices = new LabelIndexMap();
+
+		// moments of each label
+		double[] counts = new double[16];
+		double[] sumX = new double[16];
+		double[] sumY = new double[16];
+		double[] sumXX = new double[16];
+		double[] sumXY = new double[16];
+		double[] sumYY = new double[16];
+
+		// for each label, the rows containing the label, with the leftmost
+		// start and the rightmost end of the runs within each row
+		int[][] rowY = new int[16][];
+		int[][] rowMin = new int[16][];
+		int[][] rowMax = new int[16][];
+		int[] rowCount = new int[16];
+
+		// the label of the last run and its index, as runs of a label are
+		// often separated by background runs only
+		int lastLabel = 0;
+		int lastIndex = -1;
+
+		/**
+		 * Adds the run of pixels between x0 (inclusive) and x1 (exclusive)
+		 * within row y.
+		 */
+		void add(int label, int x0, int x1, int y)
+		{
+			int index = this.lastIndex;
+			if (label != this.lastLabel)
+			{
+				index = this.indices.add(label);
+				if (index == this.counts.length)
+				{
+					grow(2 * index);
+				}
+				this.lastLabel = label;
+				this.lastIndex = index;
+			}
+
+			// moments of pixel centers x0+.5, ..., x1-.5 within the run
+			double n = x1 - x0;
+			double sx = n * (x0 + x1) / 2;
+			double sxx = (x1 * (double) x1 * x1 - x0 * (double) x0 * x0) / 3 - n / 12;
+			double yc = y + .5;
+			this.counts[index] += n;
+			this.sumX[index] += sx;
+			this.sumY[index] += n * yc;
+			this.sumXX[index] += sxx;
+			this.sumXY[index] += sx * yc;
+			this.sumYY[index] += n * yc * yc;
+
+			// update the extent of the label within the row, rows being
+			// visited in increasing order
+			int nRows = this.rowCount[index];
+			if (nRows > 0 && this.rowY[index][nRows - 1] == y)
+			{
+				this.rowMax[index][nRows - 1] = x1;
+				return;
+			}
+			if (this.rowY[index] == null)
+			{
+				this.rowY[index] = new int[4];
+				this.rowMin[index] = new int[4];
+				this.rowMax[index] = new int[4];
+			}
+			else if (nRows == this.rowY[index].length)
+			{
+				this.rowY[index] = Arrays.copyOf(this.rowY[index], 2 * nRows);
+				this.rowMin[index] = Arrays.copyOf(this.rowMin[index], 2 * nRows);
+				this.rowMax[index] = Arrays.copyOf(this.rowMax[index], 2 * nRows);
+			}
+			this.rowY[index][nRows] = y;
+			this.rowMin[index][nRows] = x0;
+			this.rowMax[index][nRows] = x1;
+			this.rowCount[index] = nRows + 1;
+		}
+
+		/**
+		 * Computes the box of the label with the specified index, aligned with
+		 * the principal axes of the label.
+		 */
+		OrientedBox2D box(int index)
+		{
+			// compute centroid and orientation
+			double n = this.counts[index];
+			double xc = this.sumX[index] / n;
+			double yc = this.sumY[index] / n;
+			double cxx = this.sumXX[index] / n - xc * xc;
+			double cxy = this.sumXY[index] / n - xc * yc;
+			double cyy = this.sumYY[index] / n - yc * yc;
+			double theta = Math.atan2(2 * cxy, cxx - cyy) / 2;
+			double cot = Math.cos(theta);
+			double sit = Math.sin(theta);
+
+			// project the corners of each row extent onto the principal axes
+			double umin = Double.POSITIVE_INFINITY;
+			double umax = Double.NEGATIVE_INFINITY;
+			double vmin = Double.POSITIVE_INFINITY;
+			double vmax = Double.NEGATIVE_INFINITY;
+			int[] ys = this.rowY[index];
+			int[] x0s = this.rowMin[index];
+			int[] x1s = this.rowMax[index];
+			for (int r = 0; r < this.rowCount[index]; r++)
+			{
+				double xr0 = x0s[r] - xc;
+				double xr1 = x1s[r] - xc;
+				for (int dy = 0; dy < 2; dy++)
+				{
+					double yr = ys[r] + dy - yc;
+					double u0 = xr0 * cot + yr * sit;
+					double v0 = -xr0 * sit + yr * cot;
+					double u1 = xr1 * cot + yr * sit;
+					double v1 = -xr1 * sit + yr * cot;
+					umin = Math.min(umin, Math.min(u0, u1));
+					umax = Math.max(umax, Math.max(u0, u1));
+					vmin = Math.min(vmin, Math.min(v0, v1));
+					vmax = Math.max(vmax, Math.max(v0, v1));
+				}
+			}
+
+			// create the box
+			double du = (umin + umax) / 2;
+			double dv = (vmin + vmax) / 2;
+			double cx = xc + du * cot - dv * sit;
+			double cy = yc + du * sit + dv * cot;
+			double length = umax - umin;
+			double width = vmax - vmin;
+			double angle = Math.toDegrees(theta);
+			if (length < width)
+			{
+				length = vmax - vmin;
+				width = umax - umin;
+				angle += 90;
+			}
+			angle = (angle + 360) % 180;
+			return new OrientedBox2D(cx, cy, length, width, angle);
+		}
+
+		private void grow(int capacity)
+		{
+			this.counts = Arrays.copyOf(this.counts, capacity);
+			this.sumX = Arrays.copyOf(this.sumX, capacity);
+			this.sumY = Arrays.copyOf(this.sumY, capacity);
+			this.sumXX = Arrays.copyOf(this.sumXX, capacity);
+			this.sumXY = Arrays.copyOf(this.sumXY, capacity);
+			this.sumYY = Arrays.copyOf(this.sumYY, capacity);
+			this.rowY = Arrays.copyOf(this.rowY, capacity);
+			this.rowMin = Arrays.copyOf(this.rowMin, capacity);
+			this.rowMax = Arrays.copyOf(this.rowMax, capacity);
+			this.rowCount = Arrays.copyOf(this.rowCount, capacity);
+		}
+	}
+	
+	/**
+	 * Converts an array of oriented boxes to a ResultsTable containing
+	 * parameters of each oriented box.
 	 * 
-	 * @param points
-	 *            a list of points (not necessarily ordered)
-	 * @return the oriented box of this set of points.
+	 * @return a ResultsTable containing oriented box parameters
 	 */
-	public static final OrientedBox2D computeBox(ArrayList<? extends Point2D> points)
+	public final static ResultsTable asTable(Map<Integer, OrientedBox2D> labelBoxMap)
 	{
-		ArrayList<Point2D> convexHull = Polygons2D.convexHull_jarvis(points);
-		
-		// compute convex hull centroid
-		Point2D center = Polygons2D.centroid(convexHull);
-		double cx = center.getX();
-		double cy = center.getY();
-		
-//		FeretDiameters.AngleDiameterPair minFeret = FeretDiameters.minFeretDiameter(centeredHull);
-		FeretDiameters.AngleDiameterPair minFeret = FeretDiameters.minFeretDiameter(convexHull);
-		
-		// recenter the convex hull
-		ArrayList<Point2D> centeredHull = new ArrayList<Point2D>(convexHull.size());
-		for (Point2D p : convexHull)
-		{
-			centeredHull.add(new Point2D.Double(p.getX() - cx, p.getY() - cy));
-		}
-		
-		// orientation of the main axis
-		// pre-compute trigonometric functions
-		double cot = Math.cos(minFeret.angle);
-		double sit = Math.sin(minFeret.angle);
-
-		// compute elongation in direction of rectangle length and width
-		double xmin = Double.MAX_VALUE;
-		double ymin = Double.MAX_VALUE;
-		double xmax = Double.MIN_VALUE;
-		double ymax = Double.MIN_VALUE;
-		for (Point2D p : centeredHull)
-		{
-			// coordinates of current point
-			double x = p.getX(); 
-			double y = p.getY();
-			
-			// compute rotated coordinates
-			double x2 = x * cot + y * sit; 
-			double y2 = - x * sit + y * cot;
-			
-			// update bounding box
-			xmin = Math.min(xmin, x2);
-			ymin = Math.min(ymin, y2);
-			xmax = Math.max(xmax, x2);
-			ymax = Math.max(ymax, y2);
-		}
-		
-		// position of the center with respect to the centroid compute before
-		double dl = (xmax + xmin) / 2;
-		double dw = (ymax + ymin) / 2;
+		return asTable(OrientedBoxTable.fromMap(labelBoxMap));
+	}
 
-		// change coordinates from rectangle to user-space
-		double dx  = dl * cot - dw * sit;
-		double dy  = dl * sit + dw * cot;
+	/**
+	 * Converts a table of oriented boxes to a ResultsTable containing
+	 * parameters of each oriented box.
+	 * 
+	 * All the rows are created first, and each column is then filled from
+	 * the corresponding array of the box table, so that column names are
+	 * resolved only once.
+	 * 
+	 * @param boxTable
+	 *            the table of oriented boxes
+	 * @return a ResultsTable containing oriented box parameters
+	 */
+	public final static ResultsTable asTable(OrientedBoxTable boxTable)
+	{
+		// Create data table
+		ResultsTable table = new ResultsTable();
 
-		// coordinates of oriented box center
-		cx += dx;
-		cy += dy;
+		// create rows, with the label of each region
+		int nLabels = boxTable.size();
+		addRows(table, boxTable.labels, nLabels, labelFormatter(nLabels));
 
-		// size of the rectangle
-		double length = ymax - ymin;
-		double width  = xmax - xmin;
-		
-		// store angle in degrees, between 0 and 180
-		double angle = (Math.toDegrees(minFeret.angle) + 270) % 180;
+		// fill the columns containing parameters of oriented boxes
+		setColumn(table, "Box.Center.X", boxTable.centerX);
+		setColumn(table, "Box.Center.Y", boxTable.centerY);
+		setColumn(table, "Box.Length", boxTable.length);
+		setColumn(table, "Box.Width", boxTable.width);
+		setColumn(table, "Box.Orientation", boxTable.theta);
 
-		// Store results in a new instance of OrientedBox2D
-		return new OrientedBox2D(cx, cy, length, width, angle);
+		return table;
 	}
-	
-	
+
 	/**
-	 * Computes parameters of oriented box for each label of the input label
-	 * image.
+	 * Creates the formatter used for the row labels of the tables, and for
+	 * the names of the ROIs. Labels are padded according to the number of
+	 * labels.
 	 * 
-	 * @param image
-	 *            a label image (8, 16 or 32 bits)
-	 * @return a ResultsTable containing oriented box parameters
+	 * @param nLabels
+	 *            the number of labels
+	 * @return the formatter of row labels
 	 */
-	public final static Map<Integer, OrientedBox2D> orientedBox(ImageProcessor image)
+	static final LabelFormatter labelFormatter(int nLabels)
 	{
-		// Check validity of parameters
-		if (image == null)
-			return null;
+		return new LabelFormatter("lbl-", LabelFormatter.digitCount(nLabels));
+	}
 
-		// extract particle labels
-		IJ.showStatus("Find Labels");
-		int[] labels = LabelImages.findAllLabels(image);
-		int nLabels = labels.length;
+	/**
+	 * Creates a row for each label within an empty table, using the
+	 * formatter to create the row labels.
+	 */
+	private static final void addRows(ResultsTable table, int[] labels, int nRows, LabelFormatter formatter)
+	{
+		for (int i = 0; i < nRows; i++)
+		{
+			table.incrementCounter();
+			table.setLabel(formatter.format(labels[i]), i);
+		}
+	}
 
-        // For each label, create a list of corner points
-		IJ.showStatus("Find Label Corner Points");
-//        HashMap<Integer, ArrayList<Point2D>> labelCornerPoints = computeLabelsCorners(image, labels);
-        ArrayList<Point2D>[] labelCornerPointsArray = computeLabelsCornersArray(image, labels);
-                
-        // Compute the oriented box of each set of corner points
-        Map<Integer, OrientedBox2D> labelBoxMap = new TreeMap<Integer, OrientedBox2D>();
-		IJ.showStatus("Compute oriented boxes");
-        for (int i = 0; i < nLabels; i++)
-        {
-        	IJ.showProgress(i, nLabels);
-        	int label = labels[i];
-        	labelBoxMap.put(label, computeBox(labelCornerPointsArray[i]));
-        }
-        
-        IJ.showProgress(1);
-        IJ.showStatus("");
-        return labelBoxMap;
+	/**
+	 * Copies an array of values into a column of a table that already
+	 * contains the required number of rows.
+	 */
+	private static final void setColumn(ResultsTable table, String heading, double[] values)
+	{
+		int column = table.getColumnIndex(heading);
+		if (column == ResultsTable.COLUMN_NOT_FOUND)
+		{
+			column = table.getFreeColumn(heading);
+		}
+		for (int row = 0; row < values.length; row++)
+		{
+			table.setValue(column, row, values[row]);
+		}
 	}
 
 	/**
-	 * Converts an array of oriented boxes to a ResultsTable containing
-	 * parameters of each oriented box.
+	 * Converts the oriented boxes computed for each plane of a stack to a
+	 * single ResultsTable. Each row contains the label and the position of
+	 * the plane within the stack, followed by the parameters of the box.
 	 * 
+	 * @param imagePlus
+	 *            the image containing the stack, used to convert plane
+	 *            indices into channel, slice and frame positions
+	 * @param planeBoxMaps
+	 *            the oriented boxes of each plane, as returned by the
+	 *            orientedBoxes method
 	 * @return a ResultsTable containing oriented box parameters
 	 */
-	public final static ResultsTable asTable(Map<Integer, OrientedBox2D> labelBoxMap)
+	public final static ResultsTable asTable(ImagePlus imagePlus, Map<Integer, OrientedBox2D>[] planeBoxMaps)
 	{
-		// Create data table
+		// count rows, and the largest number of labels within a plane
+		int nRows = 0;
+		int maxLabels = 0;
+		for (Map<Integer, OrientedBox2D> labelBoxMap : planeBoxMaps)
+		{
+			nRows += labelBoxMap.size();
+			maxLabels = Math.max(maxLabels, labelBoxMap.size());
+		}
+
+		// collect the values of each column, visiting each box once
+		int[] labels = new int[nRows];
+		double[] channels = new double[nRows];
+		double[] slices = new double[nRows];
+		double[] frames = new double[nRows];
+		double[] centerX = new double[nRows];
+		double[] centerY = new double[nRows];
+		double[] length = new double[nRows];
+		double[] width = new double[nRows];
+		double[] theta = new double[nRows];
+		int row = 0;
+		for (int i = 0; i < planeBoxMaps.length; i++)
+		{
+			int[] pos = imagePlus.convertIndexToPosition(i + 1);
+			for (Map.Entry<Integer, OrientedBox2D> entry : planeBoxMaps[i].entrySet())
+			{
+				int label = entry.getKey();
+				labels[row] = label;
+				channels[row] = pos[0];
+				slices[row] = pos[1];
+				frames[row] = pos[2];
+				OrientedBox2D box = entry.getValue();
+				centerX[row] = box.x0;
+				centerY[row] = box.y0;
+				length[row] = box.length;
+				width[row] = box.width;
+				theta[row] = box.theta;
+				row++;
+			}
+		}
+
+		// create rows, padding labels as in the table of a single plane
 		ResultsTable table = new ResultsTable();
+		addRows(table, labels, nRows, labelFormatter(maxLabels));
+		double[] labelValues = new double[nRows];
+		for (int i = 0; i < nRows; i++)
+		{
+			labelValues[i] = labels[i];
+		}
 
-		// compute ellipse parameters for each region
-		int nDigits = ((int) Math.log10(labelBoxMap.size())) + 1;
-		for (int label : labelBoxMap.keySet()) 
+		// position of the box within the stack
+		setColumn(table, "Label", labelValues);
+		if (imagePlus.getNChannels() > 1)
 		{
-			table.incrementCounter();
-			table.addLabel(String.format("lbl-%0" + nDigits +"d", label));
-			
-			// add new row containing parameters of oriented box
-			OrientedBox2D obox = labelBoxMap.get(label);
-			table.addValue("Box.Center.X", 	obox.x0);
-			table.addValue("Box.Center.Y",	obox.y0);
-			table.addValue("Box.Length", 	obox.length);
-			table.addValue("Box.Width", 	obox.width);
-			table.addValue("Box.Orientation", obox.theta);
+			setColumn(table, "Channel", channels);
 		}
+		setColumn(table, "Slice", slices);
+		setColumn(table, "Frame", frames);
+
+		// parameters of oriented boxes
+		setColumn(table, "Box.Center.X", centerX);
+		setColumn(table, "Box.Center.Y", centerY);
+		setColumn(table, "Box.Length", length);
+		setColumn(table, "Box.Width", width);
+		setColumn(table, "Box.Orientation", theta);
 
 		return table;
 	}
@@ -275,91 +1377,274 @@ public class OrientedBox2D
 	 */
 	public final static ArrayList<Point2D>[] computeLabelsCornersArray(ImageProcessor image, int[] labels)
 	{
-		int width = image.getWidth();
-		int height = image.getHeight();
-		
-		Map<Integer, Integer> labelIndicesMap = LabelImages.mapLabelIndices(labels);
-		
+		return computeLabelsCornersArray(image, labels, null);
+	}
+
+	/**
+	 * Returns a set of points located at the corners of each label, checking
+	 * the cancellation token after each row. When the token is cancelled,
+	 * the scan stops and the lists only contain the corners of the rows
+	 * scanned so far.
+	 * 
+	 * @param image
+	 *            a label image
+	 * @param labels
+	 *            the labels to consider
+	 * @param token
+	 *            a token for stopping the computation, or null
+	 * @return for each label, an array of points
+	 */
+	public final static ArrayList<Point2D>[] computeLabelsCornersArray(ImageProcessor image, int[] labels, CancellationToken token)
+	{
         // For each label, create a list of corner points
-		int nLabels = labels.length;
+		ArrayList<Point2D>[] labelCornerPoints = newPointLists(labels.length);
+        scanCorners(image, labels, labelCornerPoints, token);
+		return labelCornerPoints;
+	}
+
+	/**
+	 * Creates an array of empty point lists.
+	 */
+	private static final ArrayList<Point2D>[] newPointLists(int n)
+	{
         @SuppressWarnings("unchecked")
-		ArrayList<Point2D>[] labelCornerPoints =  (ArrayList<Point2D>[]) new ArrayList<?>[nLabels];
-        for (int i = 0; i < nLabels; i++)
+		ArrayList<Point2D>[] lists = (ArrayList<Point2D>[]) new ArrayList<?>[n];
+        for (int i = 0; i < n; i++)
         {
-        	labelCornerPoints[i] = new ArrayList<Point2D>();
+        	lists[i] = new ArrayList<Point2D>();
         }
-		
+        return lists;
+	}
+
+	/**
+	 * Adds the corners of the first and last pixel of each run to the list
+	 * of the label of the run, and returns the number of rows scanned before
+	 * the token was cancelled.
+	 * 
+	 * The upper corners of a run may already have been added as lower
+	 * corners of a run of the previous row. As the corners of the previous
+	 * row are the last ones of the list, only these are checked, so that
+	 * lists do not contain duplicate points.
+	 */
+	private static final int scanCorners(ImageProcessor image, int[] labels, ArrayList<Point2D>[] labelCornerPoints,
+			CancellationToken token)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		LabelIndexMap labelIndices = new LabelIndexMap();
+		for (int label : labels)
+		{
+			if (label != 0)
+			{
+				labelIndices.add(label);
+			}
+		}
+
 		// for each row, add corner point for first and last pixel of each run-length
 		for (int y = 0; y < height; y++)
 		{
+			if (CancellationToken.isCancelled(token))
+			{
+				return y;
+			}
+
 			// start from background
 			int currentLabel = 0;
-
-			// Identify transition inside and outside the each label
-			for (int x = 0; x < width; x++)
+			for (int x = 0; x <= width; x++)
 			{
-				int pixel = (int) image.getf(x, y);
-				
-				if (pixel > 0 && pixel != currentLabel)
+				int pixel = x < width ? (int) image.getf(x, y) : 0;
+				if (pixel == currentLabel)
 				{
-					// transition into a new region
-					
-					// if leave a region, add a new corner points for the end of the region
-					if (currentLabel > 0)
-					{
-						int labelIndex = labelIndicesMap.get(currentLabel);
-						ArrayList<Point2D> corners = labelCornerPoints[labelIndex];
-						Point2D p = new Point2D.Double(x, y);
-						if (!corners.contains(p))
-						{
-							corners.add(p);
-						}
-						corners.add(new Point2D.Double(x, y+1));
-					}
-					
-					// add a new corner points for the beginning of the new region
-					int labelIndex = labelIndicesMap.get(pixel);
-					ArrayList<Point2D> corners = labelCornerPoints[labelIndex];
-					Point2D p = new Point2D.Double(x, y);
-					if (!corners.contains(p))
-					{
-						corners.add(p);
-					}
-					corners.add(new Point2D.Double(x, y+1));
-					
-					// update current label
-					currentLabel = pixel;
-				} 
-				else if (pixel == 0 && currentLabel > 0)
+					continue;
+				}
+
+				// add corners at the end of the previous run and at the
+				// beginning of the new one
+				if (currentLabel != 0)
 				{
-					// transition from a label to the  background 
-					int labelIndex = labelIndicesMap.get(currentLabel);
-					ArrayList<Point2D> corners = labelCornerPoints[labelIndex];
-					Point2D p = new Point2D.Double(x, y);
-					if (!corners.contains(p))
-					{
-						corners.add(p);
-					}
-					corners.add(new Point2D.Double(x, y+1));
-					currentLabel = 0;
+					addRunCorners(labelCornerPoints, labelIndices.indexOf(currentLabel), x, y);
+				}
+				if (pixel != 0)
+				{
+					addRunCorners(labelCornerPoints, labelIndices.indexOf(pixel), x, y);
 				}
+				currentLabel = pixel;
 			}
-			
-			// if particle touches right border, add another point
-			if (currentLabel > 0)
+		}
+		return height;
+	}
+
+	/**
+	 * Adds the corners (x,y) and (x,y+1) to the list of the label with the
+	 * specified index, if the label was requested.
+	 */
+	private static final void addRunCorners(ArrayList<Point2D>[] labelCornerPoints, int labelIndex, int x, int y)
+	{
+		if (labelIndex < 0)
+		{
+			return;
+		}
+		ArrayList<Point2D> corners = labelCornerPoints[labelIndex];
+		if (!containsCorner(corners, x, y))
+		{
+			corners.add(new Point2D.Double(x, y));
+		}
+		corners.add(new Point2D.Double(x, y + 1));
+	}
+
+	/**
+	 * Checks if the corners added for the current row y or the previous one
+	 * contain the point (x,y).
+	 */
+	private static final boolean containsCorner(ArrayList<Point2D> corners, int x, int y)
+	{
+		for (int i = corners.size() - 1; i >= 0; i--)
+		{
+			Point2D p = corners.get(i);
+			if (p.getY() < y - 1)
 			{
-				int labelIndex = labelIndicesMap.get(currentLabel);
-				ArrayList<Point2D> corners = labelCornerPoints[labelIndex];
-				Point2D p = new Point2D.Double(width, y);
-				if (!corners.contains(p))
+				return false;
+			}
+			if (p.getY() == y && p.getX() == x)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the labels of an image, by increasing value, together with the
+	 * last row containing each label.
+	 * 
+	 * @return an array containing the labels and an array containing the
+	 *         index of the last row of each label
+	 */
+	private static final int[][] findLabelsAndLastRows(ImageProcessor image)
+	{
+		LabelIndexMap labelIndices = new LabelIndexMap();
+		int[] lastRows = new int[16];
+		for (int y = 0; y < image.getHeight(); y++)
+		{
+			int previous = 0;
+			for (int x = 0; x < image.getWidth(); x++)
+			{
+				int label = (int) image.getf(x, y);
+				if (label == 0 || label == previous)
 				{
-					corners.add(p);
+					continue;
 				}
-				corners.add(new Point2D.Double(width, y+1));
+				previous = label;
+				int index = labelIndices.add(label);
+				if (index == lastRows.length)
+				{
+					lastRows = Arrays.copyOf(lastRows, 2 * index);
+				}
+				lastRows[index] = y;
 			}
 		}
-		
-		return labelCornerPoints;
+
+		// sort labels, keeping the last row associated to each one
+		int nLabels = labelIndices.size();
+		long[] keys = new long[nLabels];
+		for (int i = 0; i < nLabels; i++)
+		{
+			keys[i] = ((long) labelIndices.getLabel(i) << 32) | i;
+		}
+		Arrays.sort(keys);
+		int[] labels = new int[nLabels];
+		int[] sortedLastRows = new int[nLabels];
+		for (int i = 0; i < nLabels; i++)
+		{
+			labels[i] = (int) (keys[i] >> 32);
+			sortedLastRows[i] = lastRows[(int) keys[i]];
+		}
+		return new int[][] { labels, sortedLastRows };
+	}
+
+	/**
+	 * Keeps the labels whose rows have all been scanned, together with their
+	 * corners, at the beginning of the arrays, and returns their number.
+	 */
+	private static final int keepScannedLabels(int[] labels, int[] lastRows, ArrayList<Point2D>[] corners, int nRows)
+	{
+		int n = 0;
+		for (int i = 0; i < labels.length; i++)
+		{
+			if (lastRows[i] < nRows)
+			{
+				labels[n] = labels[i];
+				corners[n] = corners[i];
+				n++;
+			}
+		}
+		return n;
+	}
+
+	// ====================================================
+	// Inner classes
+
+	/**
+	 * The result of an approximated oriented box computation.
+	 */
+	public static class Approximation
+	{
+		/** The approximated oriented box */
+		public OrientedBox2D box;
+
+		/**
+		 * Upper bound of the difference between the width of the box and the
+		 * minimum Feret diameter.
+		 */
+		public double widthErrorBound;
+
+		public Approximation(OrientedBox2D box, double widthErrorBound)
+		{
+			this.box = box;
+			this.widthErrorBound = widthErrorBound;
+		}
+	}
+
+	/**
+	 * Pre-computed table of cosines and sines for a fixed number of directions
+	 * regularly spaced between 0 and PI. Tables are shared between calls with
+	 * the same number of directions.
+	 */
+	static final class DirectionTable
+	{
+		private static final Map<Integer, DirectionTable> CACHE = new ConcurrentHashMap<Integer, DirectionTable>();
+
+		final double[] cos;
+		final double[] sin;
+
+		private DirectionTable(int nDirections)
+		{
+			this.cos = new double[nDirections];
+			this.sin = new double[nDirections];
+			for (int k = 0; k < nDirections; k++)
+			{
+				double angle = k * Math.PI / nDirections;
+				this.cos[k] = Math.cos(angle);
+				this.sin[k] = Math.sin(angle);
+			}
+		}
+
+		static DirectionTable get(int nDirections)
+		{
+			DirectionTable table = CACHE.get(nDirections);
+			if (table == null)
+			{
+				table = new DirectionTable(nDirections);
+				CACHE.put(nDirections, table);
+			}
+			return table;
+		}
+
+		double angle(int k)
+		{
+			return k * Math.PI / this.cos.length;
+		}
 	}
 
 	// ====================================================
@@ -438,27 +1723,36 @@ public class OrientedBox2D
 	 * @return an instance of PolygonRoi
 	 */
 	public PolygonRoi getRoi()
+	{
+		return createRoi(this.x0, this.y0, this.length, this.width, this.theta);
+	}
+
+	/**
+	 * Creates the PolygonRoi corresponding to the box with the specified
+	 * parameters.
+	 */
+	static final PolygonRoi createRoi(double x0, double y0, double length, double width, double theta)
 	{
 		// pre-compute angle functions
-		double thetaRadians = Math.toRadians(this.theta);
+		double thetaRadians = Math.toRadians(theta);
 		double cot = Math.cos(thetaRadians);
 		double sit = Math.sin(thetaRadians);
 
 		// use half-size to simplify computations
-		double l2 = this.length / 2;
-		double w2 = this.width / 2;
+		double l2 = length / 2;
+		double w2 = width / 2;
 		
 		// compute box vertex coordinates
 		float[] px = new float[4]; 
 		float[] py = new float[4]; 
-		px[0] = (float) ( l2 * cot - w2 * sit + this.x0);
-		py[0] = (float) ( l2 * sit + w2 * cot + this.y0);
-		px[1] = (float) ( l2 * cot + w2 * sit + this.x0);
-		py[1] = (float) ( l2 * sit - w2 * cot + this.y0);
-		px[2] = (float) (-l2 * cot + w2 * sit + this.x0);
-		py[2] = (float) (-l2 * sit - w2 * cot + this.y0);
-		px[3] = (float) (-l2 * cot - w2 * sit + this.x0);
-		py[3] = (float) (-l2 * sit + w2 * cot + this.y0);
+		px[0] = (float) ( l2 * cot - w2 * sit + x0);
+		py[0] = (float) ( l2 * sit + w2 * cot + y0);
+		px[1] = (float) ( l2 * cot + w2 * sit + x0);
+		py[1] = (float) ( l2 * sit - w2 * cot + y0);
+		px[2] = (float) (-l2 * cot + w2 * sit + x0);
+		py[2] = (float) (-l2 * sit - w2 * cot + y0);
+		px[3] = (float) (-l2 * cot - w2 * sit + x0);
+		py[3] = (float) (-l2 * sit + w2 * cot + y0);
 		
 		return new PolygonRoi(px, py, 4, Roi.POLYGON);
 	}
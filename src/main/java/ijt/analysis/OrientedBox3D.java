@@ -0,0 +1,794 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import ij.IJ;
+import ij.ImageStack;
+import ij.measure.ResultsTable;
+import ij.process.ImageProcessor;
+import inra.ijpb.label.LabelImages;
+
+/**
+ * Representation of 3D object-oriented boxes, with static methods for
+ * computing oriented boxes from 3D point sets or directly from 3D label
+ * images.
+ *
+ * The box is obtained from the convex hull of the voxel corners of each
+ * label. The initial orientation is given by the principal axes of the hull
+ * vertices, and is refined by considering the boxes with one face flush with
+ * a face of the hull, and by rotating the box around each of its axes. The
+ * result is a near-minimal box in terms of volume.
+ *
+ * @author dlegland
+ *
+ */
+public class OrientedBox3D
+{
+	// ====================================================
+	// Static methods
+
+	/**
+	 * Computes parameters of 3D oriented box for each label of the input 3D
+	 * label image.
+	 *
+	 * Slices are scanned in parallel. For each slice, the corners of the
+	 * pixels of each label are reduced to their planar convex hull, so that
+	 * the memory used depends on the size of the hulls rather than on the
+	 * number of voxels. Consecutive slices with the same hull contribute the
+	 * hull vertices only once at the bottom and once at the top, and the
+	 * points of each label are reduced to the vertices of their 3D convex
+	 * hull when their number grows. The boxes of the labels are then computed
+	 * in parallel.
+	 *
+	 * @param image
+	 *            a 3D label image (8, 16 or 32 bits)
+	 * @return the oriented box of each label
+	 */
+	public final static Map<Integer, OrientedBox3D> orientedBox(final ImageStack image)
+	{
+		// Check validity of parameters
+		if (image == null)
+			return null;
+
+		// For each slice, compute the planar hull of each label
+		IJ.showStatus("Find Label Corner Points");
+		int nSlices = image.getSize();
+		final SliceHulls[] sliceHulls = new SliceHulls[nSlices];
+		int[] sizes = new int[nSlices];
+		Arrays.fill(sizes, 1);
+		LabelTasks.forEach(sizes, new LabelTasks.Task()
+		{
+			@Override
+			public void process(int index)
+			{
+				sliceHulls[index] = computeSliceHulls(image.getProcessor(index + 1));
+			}
+		});
+
+		// identify labels
+		TreeSet<Integer> labelSet = new TreeSet<Integer>();
+		for (SliceHulls hulls : sliceHulls)
+		{
+			for (int label : hulls.labels)
+			{
+				labelSet.add(label);
+			}
+		}
+		int nLabels = labelSet.size();
+		int[] labels = new int[nLabels];
+		Map<Integer, Integer> labelIndicesMap = new TreeMap<Integer, Integer>();
+		int index = 0;
+		for (int label : labelSet)
+		{
+			labels[index] = label;
+			labelIndicesMap.put(label, index++);
+		}
+
+		// gather the vertices of the planar hulls of each label, at the
+		// bottom and the top of each run of slices with the same hull
+		final PointSet3D[] labelPoints = new PointSet3D[nLabels];
+		for (int i = 0; i < nLabels; i++)
+		{
+			labelPoints[i] = new PointSet3D();
+		}
+		for (int z = 0; z < nSlices; z++)
+		{
+			SliceHulls hulls = sliceHulls[z];
+			for (int i = 0; i < hulls.labels.length; i++)
+			{
+				labelPoints[labelIndicesMap.get(hulls.labels[i])].addSlice(hulls.coords[i], z);
+			}
+			sliceHulls[z] = null;
+		}
+		for (int i = 0; i < nLabels; i++)
+		{
+			labelPoints[i].flush();
+		}
+
+		// Compute the oriented box of each label
+		IJ.showStatus("Compute oriented boxes");
+		final OrientedBox3D[] boxes = new OrientedBox3D[nLabels];
+		int[] labelSizes = new int[nLabels];
+		for (int i = 0; i < nLabels; i++)
+		{
+			labelSizes[i] = labelPoints[i].size;
+		}
+		LabelTasks.forEach(labelSizes, new LabelTasks.Task()
+		{
+			@Override
+			public void process(int index)
+			{
+				PointSet3D points = labelPoints[index];
+				boxes[index] = computeBox(points.xCoords, points.yCoords, points.zCoords, points.size);
+				labelPoints[index] = null;
+			}
+		});
+
+		Map<Integer, OrientedBox3D> labelBoxMap = new TreeMap<Integer, OrientedBox3D>();
+		for (int i = 0; i < nLabels; i++)
+		{
+			labelBoxMap.put(labels[i], boxes[i]);
+		}
+
+		IJ.showStatus("");
+		return labelBoxMap;
+	}
+
+	/**
+	 * Computes the planar convex hull of the pixel corners of each label
+	 * within a slice.
+	 */
+	private static final SliceHulls computeSliceHulls(ImageProcessor image)
+	{
+		int[] labels = LabelImages.findAllLabels(image);
+		ArrayList<Point2D>[] corners = OrientedBox2D.computeLabelsCornersArray(image, labels);
+
+		double[][] coords = new double[labels.length][];
+		for (int i = 0; i < labels.length; i++)
+		{
+			ArrayList<Point2D> hull = FeretAlgorithms.convexHull(corners[i]);
+			corners[i] = null;
+			double[] hullCoords = new double[hull.size() * 2];
+			for (int k = 0; k < hull.size(); k++)
+			{
+				hullCoords[2 * k] = hull.get(k).getX();
+				hullCoords[2 * k + 1] = hull.get(k).getY();
+			}
+			coords[i] = hullCoords;
+		}
+		return new SliceHulls(labels, coords);
+	}
+
+	/**
+	 * Computes a near-minimal oriented box of a set of 3D points.
+	 *
+	 * The convex hull of the points is computed first. The box is then
+	 * chosen among the box aligned with the principal axes of the hull
+	 * vertices, and the boxes with a face flush with a face of the hull. The
+	 * best box is finally refined by rotating it around each of its axes,
+	 * keeping the orientation with the smallest cross-section area.
+	 *
+	 * @param xCoords
+	 *            the x-coordinates of the points
+	 * @param yCoords
+	 *            the y-coordinates of the points
+	 * @param zCoords
+	 *            the z-coordinates of the points
+	 * @param n
+	 *            the number of points to consider
+	 * @return the oriented box of the points
+	 */
+	public static final OrientedBox3D computeBox(double[] xCoords, double[] yCoords, double[] zCoords, int n)
+	{
+		ConvexHull3D hull = ConvexHull3D.compute(xCoords, yCoords, zCoords, n);
+		if (hull.isDegenerate())
+		{
+			return principalAxesBox(xCoords, yCoords, zCoords, n);
+		}
+
+		// extract coordinates of hull vertices
+		int[] vertices = hull.getVertices();
+		int nv = vertices.length;
+		double[] hx = new double[nv];
+		double[] hy = new double[nv];
+		double[] hz = new double[nv];
+		for (int i = 0; i < nv; i++)
+		{
+			hx[i] = xCoords[vertices[i]];
+			hy[i] = yCoords[vertices[i]];
+			hz[i] = zCoords[vertices[i]];
+		}
+
+		// initialize with principal axes of hull vertices
+		double[][] bestFrame = principalAxes(hx, hy, hz, nv);
+		double bestVolume = volume(hx, hy, hz, nv, bestFrame);
+
+		// consider boxes with a face flush with a face of the hull
+		HashSet<List<Long>> normals = new HashSet<List<Long>>();
+		double[] normal = new double[3];
+		for (int[] face : hull.getFaces())
+		{
+			faceNormal(xCoords, yCoords, zCoords, face, normal);
+			List<Long> key = Arrays.asList(Math.round(normal[0] * 1e9), Math.round(normal[1] * 1e9), Math.round(normal[2] * 1e9));
+			if (!normals.add(key))
+			{
+				continue;
+			}
+
+			double[][] frame = flushFrame(hx, hy, hz, nv, normal);
+			double vol = volume(hx, hy, hz, nv, frame);
+			if (vol < bestVolume)
+			{
+				bestVolume = vol;
+				bestFrame = frame;
+			}
+		}
+
+		// refine by rotating the box around each of its axes
+		for (int iter = 0; iter < 10; iter++)
+		{
+			boolean improved = false;
+			for (int k = 0; k < 3; k++)
+			{
+				double[][] frame = flushFrame(hx, hy, hz, nv, bestFrame[k]);
+				double vol = volume(hx, hy, hz, nv, frame);
+				if (vol < bestVolume * (1 - 1e-12))
+				{
+					bestVolume = vol;
+					bestFrame = frame;
+					improved = true;
+				}
+			}
+			if (!improved)
+			{
+				break;
+			}
+		}
+
+		return createBox(hx, hy, hz, nv, bestFrame);
+	}
+
+	/**
+	 * Computes the oriented box of a set of 3D points aligned with the
+	 * principal axes of the points.
+	 *
+	 * @param xCoords
+	 *            the x-coordinates of the points
+	 * @param yCoords
+	 *            the y-coordinates of the points
+	 * @param zCoords
+	 *            the z-coordinates of the points
+	 * @param n
+	 *            the number of points to consider
+	 * @return the oriented box of the points
+	 */
+	public static final OrientedBox3D principalAxesBox(double[] xCoords, double[] yCoords, double[] zCoords, int n)
+	{
+		double[][] frame = principalAxes(xCoords, yCoords, zCoords, n);
+		return createBox(xCoords, yCoords, zCoords, n, frame);
+	}
+
+	/**
+	 * Converts a map of oriented boxes to a ResultsTable containing
+	 * parameters of each oriented box. Orientation is given by the three
+	 * Euler angles of the box axes (in degrees).
+	 *
+	 * @param labelBoxMap
+	 *            the oriented box of each label
+	 * @return a ResultsTable containing oriented box parameters
+	 */
+	public final static ResultsTable asTable(Map<Integer, OrientedBox3D> labelBoxMap)
+	{
+		// Create data table
+		ResultsTable table = new ResultsTable();
+
+		LabelFormatter formatter = new LabelFormatter("lbl-", LabelFormatter.digitCount(labelBoxMap.size()));
+		for (int label : labelBoxMap.keySet())
+		{
+			table.incrementCounter();
+			table.addLabel(formatter.format(label));
+
+			// add new row containing parameters of oriented box
+			OrientedBox3D obox = labelBoxMap.get(label);
+			double[] angles = obox.eulerAngles();
+			table.addValue("Box.Center.X", 	obox.x0);
+			table.addValue("Box.Center.Y",	obox.y0);
+			table.addValue("Box.Center.Z",	obox.z0);
+			table.addValue("Box.Length", 	obox.length);
+			table.addValue("Box.Width", 	obox.width);
+			table.addValue("Box.Height", 	obox.height);
+			table.addValue("Box.Azimut", 	angles[0]);
+			table.addValue("Box.Elevation", angles[1]);
+			table.addValue("Box.Roll", 		angles[2]);
+		}
+
+		return table;
+	}
+
+	/**
+	 * Computes the frame whose first axis is the specified direction, and
+	 * whose two other axes correspond to the minimal area rectangle enclosing
+	 * the projection of the points onto the plane orthogonal to the direction.
+	 */
+	private static final double[][] flushFrame(double[] xCoords, double[] yCoords, double[] zCoords, int n, double[] axis)
+	{
+		// create an orthonormal basis of the plane orthogonal to the axis
+		double[] u = Math.abs(axis[0]) < 0.9 ? cross(axis, new double[] { 1, 0, 0 }) : cross(axis, new double[] { 0, 1, 0 });
+		normalize(u);
+		double[] v = cross(axis, u);
+		normalize(v);
+
+		// project points onto the plane, and compute planar oriented box
+		ArrayList<Point2D> points = new ArrayList<Point2D>(n);
+		for (int i = 0; i < n; i++)
+		{
+			double pu = xCoords[i] * u[0] + yCoords[i] * u[1] + zCoords[i] * u[2];
+			double pv = xCoords[i] * v[0] + yCoords[i] * v[1] + zCoords[i] * v[2];
+			points.add(new Point2D.Double(pu, pv));
+		}
+		ArrayList<Point2D> hull = Polygons2D.convexHull_monotoneChain(points);
+		OrientedBox2D box2d = RotatingCalipers.compute(hull, OrientedBox2D.Criterion.MIN_AREA).box;
+
+		// convert box orientation into directions in space
+		double cot = Math.cos(Math.toRadians(box2d.theta));
+		double sit = Math.sin(Math.toRadians(box2d.theta));
+		double[] e1 = new double[3];
+		double[] e2 = new double[3];
+		for (int k = 0; k < 3; k++)
+		{
+			e1[k] = cot * u[k] + sit * v[k];
+			e2[k] = -sit * u[k] + cot * v[k];
+		}
+		return new double[][] { axis.clone(), e1, e2 };
+	}
+
+	/**
+	 * Computes the volume of the box aligned with the specified frame that
+	 * encloses the points.
+	 */
+	private static final double volume(double[] xCoords, double[] yCoords, double[] zCoords, int n, double[][] frame)
+	{
+		double[] range = new double[2];
+		double vol = 1;
+		for (int k = 0; k < 3; k++)
+		{
+			projectionRange(xCoords, yCoords, zCoords, n, frame[k], range);
+			vol *= range[1] - range[0];
+		}
+		return vol;
+	}
+
+	/**
+	 * Creates the box aligned with the specified frame that encloses the
+	 * points. Axes are sorted by decreasing extent, and the resulting frame
+	 * is direct.
+	 */
+	private static final OrientedBox3D createBox(double[] xCoords, double[] yCoords, double[] zCoords, int n, double[][] frame)
+	{
+		double[] extents = new double[3];
+		double[] centers = new double[3];
+		double[] range = new double[2];
+		for (int k = 0; k < 3; k++)
+		{
+			projectionRange(xCoords, yCoords, zCoords, n, frame[k], range);
+			extents[k] = range[1] - range[0];
+			centers[k] = (range[0] + range[1]) / 2;
+		}
+
+		// center of the box
+		double[] center = new double[3];
+		for (int k = 0; k < 3; k++)
+		{
+			for (int d = 0; d < 3; d++)
+			{
+				center[d] += centers[k] * frame[k][d];
+			}
+		}
+
+		// sort axes by decreasing extent
+		Integer[] order = new Integer[] { 0, 1, 2 };
+		final double[] ext = extents;
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer i1, Integer i2)
+			{
+				return Double.compare(ext[i2], ext[i1]);
+			}
+		});
+		double[][] axes = new double[3][];
+		axes[0] = frame[order[0]].clone();
+		axes[1] = frame[order[1]].clone();
+		axes[2] = cross(axes[0], axes[1]);
+
+		return new OrientedBox3D(center[0], center[1], center[2],
+				extents[order[0]], extents[order[1]], extents[order[2]], axes);
+	}
+
+	/**
+	 * Computes the principal axes of a set of points, sorted by decreasing
+	 * variance.
+	 */
+	private static final double[][] principalAxes(double[] xCoords, double[] yCoords, double[] zCoords, int n)
+	{
+		// compute centroid
+		double cx = 0, cy = 0, cz = 0;
+		for (int i = 0; i < n; i++)
+		{
+			cx += xCoords[i];
+			cy += yCoords[i];
+			cz += zCoords[i];
+		}
+		cx /= n;
+		cy /= n;
+		cz /= n;
+
+		// compute covariance matrix
+		double[][] cov = new double[3][3];
+		for (int i = 0; i < n; i++)
+		{
+			double[] d = new double[] { xCoords[i] - cx, yCoords[i] - cy, zCoords[i] - cz };
+			for (int r = 0; r < 3; r++)
+			{
+				for (int c = 0; c < 3; c++)
+				{
+					cov[r][c] += d[r] * d[c];
+				}
+			}
+		}
+
+		return eigenVectors(cov);
+	}
+
+	/**
+	 * Computes the eigen vectors of a symmetric 3-by-3 matrix using Jacobi
+	 * rotations, sorted by decreasing eigen value. The input matrix is
+	 * modified.
+	 */
+	static final double[][] eigenVectors(double[][] mat)
+	{
+		double[][] vectors = new double[][] { { 1, 0, 0 }, { 0, 1, 0 }, { 0, 0, 1 } };
+		for (int sweep = 0; sweep < 50; sweep++)
+		{
+			double off = Math.abs(mat[0][1]) + Math.abs(mat[0][2]) + Math.abs(mat[1][2]);
+			if (off < 1e-15 * (Math.abs(mat[0][0]) + Math.abs(mat[1][1]) + Math.abs(mat[2][2])) || off == 0)
+			{
+				break;
+			}
+			for (int p = 0; p < 2; p++)
+			{
+				for (int q = p + 1; q < 3; q++)
+				{
+					if (mat[p][q] == 0)
+					{
+						continue;
+					}
+
+					// compute rotation that cancels the (p,q) element
+					double theta = (mat[q][q] - mat[p][p]) / (2 * mat[p][q]);
+					double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+					if (theta == 0)
+					{
+						t = 1;
+					}
+					double c = 1 / Math.sqrt(t * t + 1);
+					double s = t * c;
+
+					// apply rotation to the matrix (on both sides)
+					for (int k = 0; k < 3; k++)
+					{
+						double mkp = mat[k][p];
+						double mkq = mat[k][q];
+						mat[k][p] = c * mkp - s * mkq;
+						mat[k][q] = s * mkp + c * mkq;
+					}
+					for (int k = 0; k < 3; k++)
+					{
+						double mpk = mat[p][k];
+						double mqk = mat[q][k];
+						mat[p][k] = c * mpk - s * mqk;
+						mat[q][k] = s * mpk + c * mqk;
+					}
+
+					// accumulate rotation, eigen vectors being stored in rows
+					for (int k = 0; k < 3; k++)
+					{
+						double vpk = vectors[p][k];
+						double vqk = vectors[q][k];
+						vectors[p][k] = c * vpk - s * vqk;
+						vectors[q][k] = s * vpk + c * vqk;
+					}
+				}
+			}
+		}
+
+		// sort eigen vectors by decreasing eigen values
+		final double[] values = new double[] { mat[0][0], mat[1][1], mat[2][2] };
+		Integer[] order = new Integer[] { 0, 1, 2 };
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer i1, Integer i2)
+			{
+				return Double.compare(values[i2], values[i1]);
+			}
+		});
+		return new double[][] { vectors[order[0]], vectors[order[1]], vectors[order[2]] };
+	}
+
+	private static final void projectionRange(double[] xCoords, double[] yCoords, double[] zCoords, int n,
+			double[] axis, double[] range)
+	{
+		double pmin = Double.POSITIVE_INFINITY;
+		double pmax = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++)
+		{
+			double proj = xCoords[i] * axis[0] + yCoords[i] * axis[1] + zCoords[i] * axis[2];
+			pmin = Math.min(pmin, proj);
+			pmax = Math.max(pmax, proj);
+		}
+		range[0] = pmin;
+		range[1] = pmax;
+	}
+
+	private static final void faceNormal(double[] xCoords, double[] yCoords, double[] zCoords, int[] face, double[] normal)
+	{
+		double[] u = new double[] { xCoords[face[1]] - xCoords[face[0]], yCoords[face[1]] - yCoords[face[0]], zCoords[face[1]] - zCoords[face[0]] };
+		double[] v = new double[] { xCoords[face[2]] - xCoords[face[0]], yCoords[face[2]] - yCoords[face[0]], zCoords[face[2]] - zCoords[face[0]] };
+		double[] w = cross(u, v);
+		normalize(w);
+		System.arraycopy(w, 0, normal, 0, 3);
+	}
+
+	private static final double[] cross(double[] u, double[] v)
+	{
+		return new double[] {
+				u[1] * v[2] - u[2] * v[1],
+				u[2] * v[0] - u[0] * v[2],
+				u[0] * v[1] - u[1] * v[0] };
+	}
+
+	private static final void normalize(double[] v)
+	{
+		double norm = Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+		v[0] /= norm;
+		v[1] /= norm;
+		v[2] /= norm;
+	}
+
+
+	// ====================================================
+	// Class variables
+
+	/** The x-coordinate of the box center */
+	double x0;
+	/** The y-coordinate of the box center */
+	double y0;
+	/** The z-coordinate of the box center */
+	double z0;
+
+	/** The largest dimension of the box */
+	double length;
+	/** The intermediate dimension of the box */
+	double width;
+	/** The smallest dimension of the box */
+	double height;
+
+	/**
+	 * The unit vectors of the directions of length, width and height, forming
+	 * a direct frame.
+	 */
+	double[][] axes;
+
+
+	// ====================================================
+	// Constructor
+
+	/**
+	 * Creates a new oriented box.
+	 *
+	 * @param x0
+	 *            the x-coordinate of the box center
+	 * @param y0
+	 *            the y-coordinate of the box center
+	 * @param z0
+	 *            the z-coordinate of the box center
+	 * @param length
+	 *            the largest dimension of the box
+	 * @param width
+	 *            the intermediate dimension of the box
+	 * @param height
+	 *            the smallest dimension of the box
+	 * @param axes
+	 *            the unit vectors of the directions of length, width and
+	 *            height
+	 */
+	public OrientedBox3D(double x0, double y0, double z0, double length, double width, double height, double[][] axes)
+	{
+		this.x0 = x0;
+		this.y0 = y0;
+		this.z0 = z0;
+		this.length = length;
+		this.width = width;
+		this.height = height;
+		this.axes = axes;
+	}
+
+
+	// ====================================================
+	// Methods
+
+	/**
+	 * @return the volume of the box
+	 */
+	public double volume()
+	{
+		return this.length * this.width * this.height;
+	}
+
+	/**
+	 * Computes the Euler angles of the box orientation, using the same
+	 * convention as for ellipsoids: azimut around the Z axis, elevation
+	 * around the Y axis, and roll around the X axis.
+	 *
+	 * @return the azimut, elevation and roll angles, in degrees
+	 */
+	public double[] eulerAngles()
+	{
+		// rotation matrix, whose columns are the box axes
+		double m00 = axes[0][0], m10 = axes[0][1], m20 = axes[0][2];
+		double m21 = axes[1][2], m22 = axes[2][2];
+		double m11 = axes[1][1], m12 = axes[2][1];
+
+		double phi, theta, psi;
+		double tmp = Math.hypot(m00, m10);
+		if (tmp > 16 * Math.ulp(1.0))
+		{
+			phi = Math.atan2(m21, m22);
+			theta = Math.atan2(-m20, tmp);
+			psi = Math.atan2(m10, m00);
+		}
+		else
+		{
+			phi = Math.atan2(-m12, m11);
+			theta = Math.atan2(-m20, tmp);
+			psi = 0;
+		}
+		return new double[] { Math.toDegrees(psi), Math.toDegrees(theta), Math.toDegrees(phi) };
+	}
+
+
+	// ====================================================
+	// Inner classes
+
+	/**
+	 * The planar hulls of the labels present within a slice.
+	 */
+	private static final class SliceHulls
+	{
+		final int[] labels;
+		final double[][] coords;
+
+		SliceHulls(int[] labels, double[][] coords)
+		{
+			this.labels = labels;
+			this.coords = coords;
+		}
+	}
+
+	/**
+	 * A growable set of 3D points stored in coordinate arrays, built from the
+	 * planar hulls of a label within successive slices.
+	 */
+	private static final class PointSet3D
+	{
+		/** The minimum number of points before reducing to hull vertices */
+		static final int MIN_REDUCE_SIZE = 4096;
+
+		double[] xCoords = new double[16];
+		double[] yCoords = new double[16];
+		double[] zCoords = new double[16];
+		int size = 0;
+
+		/** The number of points that triggers the next reduction */
+		int reduceSize = MIN_REDUCE_SIZE;
+
+		/** The coordinates of the hull of the current run of slices, or null */
+		double[] runHull = null;
+
+		/** The first slice of the current run */
+		int runStart;
+
+		/** The slice following the last slice of the current run */
+		int runEnd;
+
+		/**
+		 * Adds the planar hull of the label within slice z. Slices must be
+		 * added by increasing z.
+		 */
+		void addSlice(double[] hullCoords, int z)
+		{
+			if (this.runHull != null && this.runEnd == z && Arrays.equals(this.runHull, hullCoords))
+			{
+				this.runEnd = z + 1;
+				return;
+			}
+			flush();
+			this.runHull = hullCoords;
+			this.runStart = z;
+			this.runEnd = z + 1;
+		}
+
+		/**
+		 * Adds the hull vertices of the current run of slices at the bottom
+		 * and at the top of the run.
+		 */
+		void flush()
+		{
+			if (this.runHull == null)
+			{
+				return;
+			}
+			double[] coords = this.runHull;
+			for (int k = 0; k < coords.length; k += 2)
+			{
+				add(coords[k], coords[k + 1], this.runStart);
+				add(coords[k], coords[k + 1], this.runEnd);
+			}
+			this.runHull = null;
+
+			if (this.size >= this.reduceSize)
+			{
+				reduce();
+			}
+		}
+
+		/**
+		 * Keeps only the vertices of the 3D convex hull of the points, and
+		 * doubles the size for the next reduction.
+		 */
+		private void reduce()
+		{
+			ConvexHull3D hull = ConvexHull3D.compute(this.xCoords, this.yCoords, this.zCoords, this.size);
+			if (!hull.isDegenerate())
+			{
+				int[] vertices = hull.getVertices();
+				for (int i = 0; i < vertices.length; i++)
+				{
+					// vertex indices are increasing, and not smaller than i
+					this.xCoords[i] = this.xCoords[vertices[i]];
+					this.yCoords[i] = this.yCoords[vertices[i]];
+					this.zCoords[i] = this.zCoords[vertices[i]];
+				}
+				this.size = vertices.length;
+			}
+			this.reduceSize = Math.max(MIN_REDUCE_SIZE, 2 * this.size);
+		}
+
+		void add(double x, double y, double z)
+		{
+			if (size == xCoords.length)
+			{
+				int newSize = size * 2;
+				xCoords = Arrays.copyOf(xCoords, newSize);
+				yCoords = Arrays.copyOf(yCoords, newSize);
+				zCoords = Arrays.copyOf(zCoords, newSize);
+			}
+			xCoords[size] = x;
+			yCoords[size] = y;
+			zCoords[size] = z;
+			size++;
+		}
+	}
+}
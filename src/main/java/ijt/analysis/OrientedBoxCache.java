@@ -0,0 +1,477 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.awt.geom.Point2D;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ij.IJ;
+import ij.process.ImageProcessor;
+import inra.ijpb.label.LabelImages;
+
+/**
+ * Persistent cache of oriented boxes and convex hulls, stored within a local
+ * directory and indexed by the content of the label image.
+ *
+ * The key of an image is a 64-bit hash computed in a single pass over the
+ * pixel buffer, combined with the image size and the box criterion. On a
+ * cache hit, results are read from a single binary file. When the total
+ * size of the cached files exceeds the maximum size, the least recently used
+ * files are deleted.
+ *
+ * Binary format (big endian): magic number, format version, image width and
+ * height, criterion index, hash, number of labels, then for each label: the
+ * label, the five box parameters as doubles, the number of hull vertices,
+ * and the integer coordinates of each hull vertex.
+ *
+ * @author dlegland
+ *
+ */
+public class OrientedBoxCache
+{
+	// ====================================================
+	// Static constants
+
+	/** The magic number at the beginning of each cache file ("OBX1") */
+	private static final int MAGIC = 0x4F425831;
+
+	/** The version of the binary format */
+	private static final int VERSION = 1;
+
+	/** The extension of cache files */
+	private static final String EXTENSION = ".obox";
+
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+
+
+	// ====================================================
+	// Class variables
+
+	/** The directory containing cache files */
+	File directory;
+
+	/** The maximum total size of cache files, in bytes */
+	long maxSize;
+
+
+	// ====================================================
+	// Constructor
+
+	/**
+	 * Creates a new cache using the specified directory, that is created if
+	 * necessary.
+	 *
+	 * @param directory
+	 *            the directory containing cache files
+	 * @param maxSize
+	 *            the maximum total size of cache files, in bytes
+	 */
+	public OrientedBoxCache(File directory, long maxSize)
+	{
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IllegalArgumentException("Could not create cache directory: " + directory);
+		}
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+
+	// ====================================================
+	// Methods
+
+	/**
+	 * Returns the oriented boxes and convex hulls of the labels within the
+	 * image, either from the cache or by computing and storing them.
+	 *
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @param criterion
+	 *            the quantity minimized by each box (width, area or perimeter)
+	 * @return the boxes and hulls of each label
+	 */
+	public Entry get(ImageProcessor image, OrientedBox2D.Criterion criterion)
+	{
+		long hash = hash(image);
+		File file = new File(this.directory, String.format("%016x-%d%s", hash, criterion.ordinal(), EXTENSION));
+
+		if (file.isFile())
+		{
+			try
+			{
+				Entry entry = read(file, image, criterion, hash);
+				if (entry != null)
+				{
+					// mark file as recently used
+					file.setLastModified(System.currentTimeMillis());
+					return entry;
+				}
+			}
+			catch (IOException ex)
+			{
+				IJ.log("Could not read oriented box cache file " + file + ": " + ex.getMessage());
+			}
+		}
+
+		Entry entry = compute(image, criterion);
+		try
+		{
+			write(file, image, criterion, hash, entry);
+			evict();
+		}
+		catch (IOException ex)
+		{
+			IJ.log("Could not write oriented box cache file " + file + ": " + ex.getMessage());
+		}
+		return entry;
+	}
+
+	/**
+	 * Removes all the cache files from the cache directory.
+	 */
+	public void clear()
+	{
+		for (File file : listCacheFiles())
+		{
+			file.delete();
+		}
+	}
+
+	/**
+	 * @return the total size of cache files, in bytes
+	 */
+	public long size()
+	{
+		long size = 0;
+		for (File file : listCacheFiles())
+		{
+			size += file.length();
+		}
+		return size;
+	}
+
+	/**
+	 * Computes the boxes and hulls of each label.
+	 */
+	private static final Entry compute(ImageProcessor image, final OrientedBox2D.Criterion criterion)
+	{
+		int[] labels = LabelImages.findAllLabels(image);
+		final ArrayList<Point2D>[] corners = OrientedBox2D.computeLabelsCornersArray(image, labels);
+
+		int nLabels = labels.length;
+		@SuppressWarnings("unchecked")
+		final ArrayList<Point2D>[] hulls = (ArrayList<Point2D>[]) new ArrayList<?>[nLabels];
+		final OrientedBox2D[] boxes = new OrientedBox2D[nLabels];
+		FeretAlgorithms.hullsAndBoxes(corners, criterion, hulls, boxes);
+
+		Entry entry = new Entry();
+		for (int i = 0; i < nLabels; i++)
+		{
+			entry.boxes.put(labels[i], boxes[i]);
+			entry.hulls.put(labels[i], hulls[i]);
+		}
+		return entry;
+	}
+
+	/**
+	 * Reads a cache file, and returns null if it does not correspond to the
+	 * image.
+	 */
+	private static final Entry read(File file, ImageProcessor image, OrientedBox2D.Criterion criterion, long hash) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				return null;
+			}
+			if (in.readInt() != image.getWidth() || in.readInt() != image.getHeight())
+			{
+				return null;
+			}
+			if (in.readInt() != criterion.ordinal() || in.readLong() != hash)
+			{
+				return null;
+			}
+
+			Entry entry = new Entry();
+			int nLabels = in.readInt();
+			for (int i = 0; i < nLabels; i++)
+			{
+				int label = in.readInt();
+				double x0 = in.readDouble();
+				double y0 = in.readDouble();
+				double length = in.readDouble();
+				double width = in.readDouble();
+				double theta = in.readDouble();
+				entry.boxes.put(label, new OrientedBox2D(x0, y0, length, width, theta));
+
+				int nVertices = in.readInt();
+				ArrayList<Point2D> hull = new ArrayList<Point2D>(nVertices);
+				for (int k = 0; k < nVertices; k++)
+				{
+					hull.add(new Point2D.Double(in.readInt(), in.readInt()));
+				}
+				entry.hulls.put(label, hull);
+			}
+			return entry;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes a cache file. The content is first written to a temporary file,
+	 * that is then renamed, so that concurrent processes never read
+	 * incomplete files.
+	 */
+	private static final void write(File file, ImageProcessor image, OrientedBox2D.Criterion criterion, long hash, Entry entry) throws IOException
+	{
+		File tmpFile = File.createTempFile("obox", ".tmp", file.getParentFile());
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(image.getWidth());
+			out.writeInt(image.getHeight());
+			out.writeInt(criterion.ordinal());
+			out.writeLong(hash);
+
+			out.writeInt(entry.boxes.size());
+			for (int label : entry.boxes.keySet())
+			{
+				OrientedBox2D box = entry.boxes.get(label);
+				out.writeInt(label);
+				out.writeDouble(box.x0);
+				out.writeDouble(box.y0);
+				out.writeDouble(box.length);
+				out.writeDouble(box.width);
+				out.writeDouble(box.theta);
+
+				// hull vertices are located at pixel corners
+				ArrayList<Point2D> hull = entry.hulls.get(label);
+				out.writeInt(hull.size());
+				for (Point2D p : hull)
+				{
+					out.writeInt((int) p.getX());
+					out.writeInt((int) p.getY());
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+
+		try
+		{
+			try
+			{
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException ex)
+			{
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch (IOException ex)
+		{
+			tmpFile.delete();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Deletes the least recently used files until the total size of the cache
+	 * is below the maximum size.
+	 */
+	private void evict()
+	{
+		File[] files = listCacheFiles();
+		long size = 0;
+		for (File file : files)
+		{
+			size += file.length();
+		}
+		if (size <= this.maxSize)
+		{
+			return;
+		}
+
+		// sort files by last access time
+		final long[] times = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++)
+		{
+			times[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer i1, Integer i2)
+			{
+				return Long.compare(times[i1], times[i2]);
+			}
+		});
+
+		for (int i = 0; i < files.length && size > this.maxSize; i++)
+		{
+			File file = files[order[i]];
+			long length = file.length();
+			if (file.delete())
+			{
+				size -= length;
+			}
+		}
+	}
+
+	private File[] listCacheFiles()
+	{
+		File[] files = this.directory.listFiles();
+		if (files == null)
+		{
+			return new File[0];
+		}
+		ArrayList<File> list = new ArrayList<File>(files.length);
+		for (File file : files)
+		{
+			if (file.getName().endsWith(EXTENSION))
+			{
+				list.add(file);
+			}
+		}
+		return list.toArray(new File[list.size()]);
+	}
+
+
+	// ====================================================
+	// Static methods
+
+	/**
+	 * Computes a 64-bit hash of the pixels of an image, in a single pass over
+	 * the pixel buffer.
+	 *
+	 * @param image
+	 *            an image (8, 16 or 32 bits)
+	 * @return the hash of the image content
+	 */
+	public static final long hash(ImageProcessor image)
+	{
+		long h = PRIME1 * (image.getWidth() * 31L + image.getHeight()) + image.getBitDepth();
+		Object pixels = image.getPixels();
+		if (pixels instanceof byte[])
+		{
+			// combine bytes eight by eight
+			byte[] array = (byte[]) pixels;
+			int n = array.length;
+			int i = 0;
+			for (; i + 8 <= n; i += 8)
+			{
+				long v = (array[i] & 0xFFL)
+						| (array[i + 1] & 0xFFL) << 8
+						| (array[i + 2] & 0xFFL) << 16
+						| (array[i + 3] & 0xFFL) << 24
+						| (array[i + 4] & 0xFFL) << 32
+						| (array[i + 5] & 0xFFL) << 40
+						| (array[i + 6] & 0xFFL) << 48
+						| (array[i + 7] & 0xFFL) << 56;
+				h = mix(h, v);
+			}
+			for (; i < n; i++)
+			{
+				h = mix(h, array[i] & 0xFF);
+			}
+		}
+		else if (pixels instanceof short[])
+		{
+			short[] array = (short[]) pixels;
+			int n = array.length;
+			int i = 0;
+			for (; i + 4 <= n; i += 4)
+			{
+				long v = (array[i] & 0xFFFFL)
+						| (array[i + 1] & 0xFFFFL) << 16
+						| (array[i + 2] & 0xFFFFL) << 32
+						| (array[i + 3] & 0xFFFFL) << 48;
+				h = mix(h, v);
+			}
+			for (; i < n; i++)
+			{
+				h = mix(h, array[i] & 0xFFFF);
+			}
+		}
+		else if (pixels instanceof float[])
+		{
+			float[] array = (float[]) pixels;
+			for (float v : array)
+			{
+				h = mix(h, Float.floatToIntBits(v));
+			}
+		}
+		else if (pixels instanceof int[])
+		{
+			int[] array = (int[]) pixels;
+			for (int v : array)
+			{
+				h = mix(h, v);
+			}
+		}
+		else
+		{
+			throw new IllegalArgumentException("Unsupported pixel type: " + pixels.getClass().getName());
+		}
+
+		// final avalanche
+		h ^= h >>> 33;
+		h *= PRIME2;
+		h ^= h >>> 29;
+		h *= PRIME1;
+		h ^= h >>> 32;
+		return h;
+	}
+
+	private static final long mix(long h, long v)
+	{
+		h ^= v * PRIME2;
+		h = Long.rotateLeft(h, 31) * PRIME1;
+		return h;
+	}
+
+
+	// ====================================================
+	// Inner class
+
+	/**
+	 * The result of oriented box computation for a label image.
+	 */
+	public static class Entry
+	{
+		/** The oriented box of each label */
+		public Map<Integer, OrientedBox2D> boxes = new TreeMap<Integer, OrientedBox2D>();
+
+		/** The convex hull of each label */
+		public Map<Integer, ArrayList<Point2D>> hulls = new TreeMap<Integer, ArrayList<Point2D>>();
+	}
+}
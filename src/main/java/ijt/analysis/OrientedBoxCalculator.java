@@ -0,0 +1,579 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ij.process.ImageProcessor;
+
+/**
+ * Computes the oriented boxes of label images, reusing its work buffers
+ * from one image to the next. This is intended for applications that
+ * process many images, where the temporary point lists created by
+ * OrientedBox2D.orientedBox() put pressure on the garbage collector.
+ *
+ * Instead of lists of corner points, the calculator stores the extent of
+ * each label within each row in primitive arrays. As the convex hull of the
+ * pixels of a label only depends on the left-most and right-most corners of
+ * each row, the hull is obtained by computing the left and right convex
+ * chains of these corners, already sorted by row. The oriented box is then
+ * computed with rotating calipers.
+ *
+ * The buffers used for scanning the image are reused by successive calls,
+ * and each thread processing labels owns its own buffers for the hull
+ * computation. All buffers grow as needed and are kept by the calculator,
+ * so that once they have reached the size required by the largest image,
+ * processing an image only allocates the resulting table. A calculator can
+ * be used by several threads at the same time.
+ *
+ * For images with a very large number of labels, the buffers describing the
+ * rows of each label can be stored in native memory instead of the Java
+ * heap, by choosing the OFF_HEAP storage. Native memory is released when the
+ * calculator is closed.
+ *
+ * @author dlegland
+ *
+ */
+public class OrientedBoxCalculator implements AutoCloseable
+{
+	// ====================================================
+	// Inner enumeration
+
+	/**
+	 * The memory used for storing the buffers of the calculator.
+	 */
+	public enum Storage
+	{
+		/** Buffers are stored within Java arrays */
+		HEAP("Heap"),
+		/** Buffers are stored in native memory, outside of the Java heap */
+		OFF_HEAP("Off-Heap");
+
+		private final String label;
+
+		private Storage(String label)
+		{
+			this.label = label;
+		}
+
+		@Override
+		public String toString()
+		{
+			return this.label;
+		}
+	}
+
+
+	// ====================================================
+	// Class variables
+
+	/** The criterion used for choosing box orientation */
+	final OrientedBox2D.Criterion criterion;
+
+	/** The memory used for storing the row buffers */
+	final Storage storage;
+
+	/** The scan buffers that are not currently used */
+	private final AtomicReference<ScanBuffers> idleScanBuffers = new AtomicReference<ScanBuffers>();
+
+	/** The buffers used by each thread for computing hulls and boxes */
+	private final ThreadLocal<HullBuffers> hullBuffers = new ThreadLocal<HullBuffers>()
+	{
+		@Override
+		protected HullBuffers initialValue()
+		{
+			return new HullBuffers();
+		}
+	};
+
+
+	// ====================================================
+	// Constructors
+
+	/**
+	 * Creates a new calculator for boxes that minimize the width.
+	 */
+	public OrientedBoxCalculator()
+	{
+		this(OrientedBox2D.Criterion.MIN_WIDTH);
+	}
+
+	/**
+	 * Creates a new calculator.
+	 *
+	 * @param criterion
+	 *            the quantity minimized by each box (width, area or perimeter)
+	 */
+	public OrientedBoxCalculator(OrientedBox2D.Criterion criterion)
+	{
+		this(criterion, Storage.HEAP);
+	}
+
+	/**
+	 * Creates a new calculator, using the specified memory for storing its
+	 * buffers.
+	 *
+	 * @param criterion
+	 *            the quantity minimized by each box (width, area or perimeter)
+	 * @param storage
+	 *            the memory used for storing the rows of each label
+	 */
+	public OrientedBoxCalculator(OrientedBox2D.Criterion criterion, Storage storage)
+	{
+		this.criterion = criterion;
+		this.storage = storage;
+	}
+
+
+	// ====================================================
+	// Computation methods
+
+	/**
+	 * Computes the oriented box of each label of a label image. Labels are
+	 * processed in parallel, using the number of threads specified by
+	 * LabelTasks.
+	 *
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @return a table containing the oriented box of each label
+	 */
+	public OrientedBoxTable compute(ImageProcessor image)
+	{
+		// use idle buffers, or create new ones if another computation is
+		// running
+		ScanBuffers scan = idleScanBuffers.getAndSet(null);
+		if (scan == null)
+		{
+			scan = new ScanBuffers(storage == Storage.OFF_HEAP);
+		}
+
+		try
+		{
+			scan.scan(image);
+			final OrientedBoxTable table = new OrientedBoxTable(scan.nLabels);
+			for (int i = 0; i < scan.nLabels; i++)
+			{
+				table.labels[i] = scan.labels.get(i);
+			}
+
+			final ScanBuffers rows = scan;
+			LabelTasks.forEachInOrder(scan.nLabels, new LabelTasks.Task()
+			{
+				@Override
+				public void process(int index)
+				{
+					hullBuffers.get().computeBox(rows, index, criterion, table);
+				}
+			});
+			return table;
+		}
+		finally
+		{
+			// keep the buffers for the next computation
+			ScanBuffers previous = idleScanBuffers.getAndSet(scan);
+			if (previous != null)
+			{
+				previous.free();
+			}
+		}
+	}
+
+	/**
+	 * Releases the buffers of this calculator. The calculator can still be
+	 * used after being closed, but will have to allocate new buffers.
+	 */
+	@Override
+	public void close()
+	{
+		ScanBuffers scan = idleScanBuffers.getAndSet(null);
+		if (scan != null)
+		{
+			scan.free();
+		}
+	}
+
+	/**
+	 * Returns an array with at least the specified size, either the input
+	 * array or a larger one.
+	 */
+	static final double[] ensureCapacity(double[] array, int size)
+	{
+		if (array.length >= size)
+		{
+			return array;
+		}
+		return new double[Math.max(size, array.length + (array.length >> 1))];
+	}
+
+
+	// ====================================================
+	// Inner classes
+
+	/**
+	 * The buffers describing the rows of each label. The rows of the label
+	 * with index i are stored between rowOffsets[i] and rowOffsets[i+1], by
+	 * increasing y.
+	 *
+	 * The image is read only once. The rows of the labels are first stored
+	 * in the order of the scan, together with a dense index assigned to each
+	 * label when it is encountered, and then grouped by label. Labels are
+	 * indexed with a hash table, so that memory usage depends on the number
+	 * of labels and rows, and not on the largest label value.
+	 */
+	static final class ScanBuffers
+	{
+		/** The largest float value that can be converted into an int label */
+		private static final float MAX_LABEL = 0x1p31f;
+
+		/** The number of labels found in the last image */
+		int nLabels;
+
+		/** The labels found in the image, by increasing value */
+		final IntStore labels;
+
+		/** The index of the first row of each label, and the total number */
+		final IntStore rowOffsets;
+
+		/** The y-coordinate of each row */
+		final IntStore rowY;
+
+		/** The x-coordinate of the left side of the first pixel of each row */
+		final IntStore rowMin;
+
+		/** The x-coordinate of the right side of the last pixel of each row */
+		final IntStore rowMax;
+
+		/** The number of pixels of each label */
+		final IntStore pixelCounts;
+
+		/** The index of each label, in the order labels are encountered */
+		private final LabelIndexMap indices = new LabelIndexMap();
+
+		/** For each label index, the number of rows containing the label */
+		private final IntStore labelRowCounts;
+
+		/** For each label index, the number of pixels of the label */
+		private final IntStore labelPixelCounts;
+
+		/** For each label index, the last scanned row containing the label */
+		private final IntStore labelLastRow;
+
+		/** For each label index, the index of the next row to write */
+		private final IntStore rowCursors;
+
+		/** The label index of each row, in the order of the scan */
+		private final IntStore scanIndex;
+
+		/** The y-coordinate of each row, in the order of the scan */
+		private final IntStore scanY;
+
+		/** The left side of each row, in the order of the scan */
+		private final IntStore scanMin;
+
+		/** The right side of each row, in the order of the scan */
+		private final IntStore scanMax;
+
+		/** The number of rows found by the scan */
+		private int nScanRows;
+
+		/** The labels packed with their index, for sorting them by value */
+		private long[] sortKeys = new long[0];
+
+		/**
+		 * Creates new empty buffers.
+		 *
+		 * @param direct
+		 *            true for storing buffers in native memory
+		 */
+		ScanBuffers(boolean direct)
+		{
+			this.labels = new IntStore(direct);
+			this.rowOffsets = new IntStore(direct);
+			this.rowY = new IntStore(direct);
+			this.rowMin = new IntStore(direct);
+			this.rowMax = new IntStore(direct);
+			this.pixelCounts = new IntStore(direct);
+			this.labelRowCounts = new IntStore(direct);
+			this.labelPixelCounts = new IntStore(direct);
+			this.labelLastRow = new IntStore(direct);
+			this.rowCursors = new IntStore(direct);
+			this.scanIndex = new IntStore(direct);
+			this.scanY = new IntStore(direct);
+			this.scanMin = new IntStore(direct);
+			this.scanMax = new IntStore(direct);
+		}
+
+		/**
+		 * Scans the image and stores the extent of each label within each
+		 * row.
+		 *
+		 * @throws IllegalArgumentException
+		 *             if the image contains a value too large for an integer
+		 *             label
+		 */
+		void scan(ImageProcessor image)
+		{
+			int width = image.getWidth();
+			int height = image.getHeight();
+
+			// store the runs of each row in the order of the scan
+			indices.clear();
+			nScanRows = 0;
+			for (int y = 0; y < height; y++)
+			{
+				float current = 0;
+				int runStart = 0;
+				for (int x = 0; x <= width; x++)
+				{
+					float value = x < width ? image.getf(x, y) : 0;
+					if (value == current)
+					{
+						continue;
+					}
+					if (current != 0)
+					{
+						addRun(current, runStart, x, y);
+					}
+					current = value;
+					runStart = x;
+				}
+			}
+
+			// sort labels by increasing value
+			nLabels = indices.size();
+			if (sortKeys.length < nLabels)
+			{
+				sortKeys = new long[nLabels];
+			}
+			for (int i = 0; i < nLabels; i++)
+			{
+				sortKeys[i] = ((long) indices.getLabel(i) << 32) | i;
+			}
+			Arrays.sort(sortKeys, 0, nLabels);
+
+			// compute the row offsets of each label, and initialize the row
+			// cursor of each label index
+			labels.ensureCapacity(nLabels);
+			pixelCounts.ensureCapacity(nLabels);
+			rowOffsets.ensureCapacity(nLabels + 1);
+			rowCursors.ensureCapacity(nLabels);
+			int nRows = 0;
+			for (int rank = 0; rank < nLabels; rank++)
+			{
+				int index = (int) sortKeys[rank];
+				labels.set(rank, (int) (sortKeys[rank] >>> 32));
+				pixelCounts.set(rank, labelPixelCounts.get(index));
+				rowOffsets.set(rank, nRows);
+				rowCursors.set(index, nRows);
+				nRows += labelRowCounts.get(index);
+			}
+			rowOffsets.set(nLabels, nRows);
+
+			// group the rows by label, keeping the order of the scan
+			rowY.ensureCapacity(nRows);
+			rowMin.ensureCapacity(nRows);
+			rowMax.ensureCapacity(nRows);
+			for (int i = 0; i < nScanRows; i++)
+			{
+				int index = scanIndex.get(i);
+				int row = rowCursors.get(index);
+				rowCursors.set(index, row + 1);
+				rowY.set(row, scanY.get(i));
+				rowMin.set(row, scanMin.get(i));
+				rowMax.set(row, scanMax.get(i));
+			}
+		}
+
+		/**
+		 * Adds a run of pixels with the same value, either as a new row of
+		 * the label, or by extending the last row of the label.
+		 */
+		private void addRun(float value, int x0, int x1, int y)
+		{
+			if (value >= MAX_LABEL)
+			{
+				throw new IllegalArgumentException("Label value is too large: " + value);
+			}
+			int label = (int) value;
+			if (label <= 0)
+			{
+				return;
+			}
+
+			int nIndices = indices.size();
+			int index = indices.add(label);
+			if (index == nIndices)
+			{
+				labelRowCounts.grow(nIndices + 1);
+				labelPixelCounts.grow(nIndices + 1);
+				labelLastRow.grow(nIndices + 1);
+				labelRowCounts.set(index, 0);
+				labelPixelCounts.set(index, 0);
+			}
+			labelPixelCounts.set(index, labelPixelCounts.get(index) + x1 - x0);
+
+			if (index < nIndices)
+			{
+				int last = labelLastRow.get(index);
+				if (scanY.get(last) == y)
+				{
+					scanMax.set(last, x1);
+					return;
+				}
+			}
+
+			int row = nScanRows++;
+			scanIndex.grow(nScanRows);
+			scanY.grow(nScanRows);
+			scanMin.grow(nScanRows);
+			scanMax.grow(nScanRows);
+			scanIndex.set(row, index);
+			scanY.set(row, y);
+			scanMin.set(row, x0);
+			scanMax.set(row, x1);
+			labelRowCounts.set(index, labelRowCounts.get(index) + 1);
+			labelLastRow.set(index, row);
+		}
+
+		/**
+		 * Releases the memory used by the buffers.
+		 */
+		void free()
+		{
+			labels.free();
+			rowOffsets.free();
+			rowY.free();
+			rowMin.free();
+			rowMax.free();
+			pixelCounts.free();
+			labelRowCounts.free();
+			labelPixelCounts.free();
+			labelLastRow.free();
+			rowCursors.free();
+			scanIndex.free();
+			scanY.free();
+			scanMin.free();
+			scanMax.free();
+		}
+	}
+
+	/**
+	 * The buffers used by a thread for computing the hull and the box of a
+	 * label.
+	 */
+	static final class HullBuffers
+	{
+		/** The vertices of the convex hull */
+		double[] hullX = new double[0];
+		double[] hullY = new double[0];
+
+		/** The vertices of the right chain, before being appended to the hull */
+		double[] chainX = new double[0];
+		double[] chainY = new double[0];
+
+		/** The work arrays of the rotating calipers */
+		double[] workX = new double[0];
+		double[] workY = new double[0];
+
+		/**
+		 * Computes the box of the label with the specified index, and stores
+		 * it within the table.
+		 */
+		void computeBox(ScanBuffers rows, int index, OrientedBox2D.Criterion criterion, OrientedBoxTable table)
+		{
+			int nh = computeHull(rows, rows.rowOffsets.get(index), rows.rowOffsets.get(index + 1));
+
+			workX = ensureCapacity(workX, nh);
+			workY = ensureCapacity(workY, nh);
+			OrientedBox2D box = RotatingCalipers.compute(hullX, hullY, nh, criterion, workX, workY).box;
+
+			table.centerX[index] = box.x0;
+			table.centerY[index] = box.y0;
+			table.length[index] = box.length;
+			table.width[index] = box.width;
+			table.theta[index] = box.theta;
+		}
+
+		/**
+		 * Computes the convex hull of the corners of the specified rows, and
+		 * returns the number of hull vertices.
+		 *
+		 * The left chain is obtained from the left corners of each row, and
+		 * the right chain from the right corners. Both chains are computed
+		 * with the monotone chain algorithm, using the y-coordinate as
+		 * primary sorting key. The right chain is then appended in reverse
+		 * order.
+		 */
+		int computeHull(ScanBuffers rows, int first, int last)
+		{
+			int nCorners = 2 * (last - first);
+			hullX = ensureCapacity(hullX, 2 * nCorners);
+			hullY = ensureCapacity(hullY, 2 * nCorners);
+			chainX = ensureCapacity(chainX, nCorners);
+			chainY = ensureCapacity(chainY, nCorners);
+
+			int nLeft = 0;
+			int nRight = 0;
+			for (int row = first; row < last; row++)
+			{
+				int y = rows.rowY.get(row);
+				int xmin = rows.rowMin.get(row);
+				int xmax = rows.rowMax.get(row);
+				nLeft = addToChain(hullX, hullY, nLeft, xmin, y, true);
+				nLeft = addToChain(hullX, hullY, nLeft, xmin, y + 1, true);
+				nRight = addToChain(chainX, chainY, nRight, xmax, y, false);
+				nRight = addToChain(chainX, chainY, nRight, xmax, y + 1, false);
+			}
+
+			// append the right chain in reverse order
+			int nh = nLeft;
+			for (int i = nRight - 1; i >= 0; i--)
+			{
+				hullX[nh] = chainX[i];
+				hullY[nh] = chainY[i];
+				nh++;
+			}
+			return nh;
+		}
+
+		/**
+		 * Adds a point to a left or right convex chain, removing the previous
+		 * points that are no more vertices of the chain, and returns the new
+		 * number of points.
+		 *
+		 * Points are added by increasing y. Two consecutive points may have
+		 * the same y-coordinate, when consecutive rows share a corner
+		 * ordinate; in that case the left chain keeps the smallest x, and the
+		 * right chain the largest x.
+		 */
+		private static final int addToChain(double[] xs, double[] ys, int n, double x, double y, boolean left)
+		{
+			if (n > 0 && ys[n - 1] == y)
+			{
+				if (left ? x >= xs[n - 1] : x <= xs[n - 1])
+				{
+					return n;
+				}
+				n--;
+			}
+
+			// the turn (p[n-2], p[n-1], p) must be strictly convex: using y
+			// as first coordinate, the left chain is the lower hull, and the
+			// right chain is the upper hull
+			while (n >= 2)
+			{
+				double cross = (ys[n - 1] - ys[n - 2]) * (x - xs[n - 2]) - (xs[n - 1] - xs[n - 2]) * (y - ys[n - 2]);
+				if (left ? cross > 0 : cross < 0)
+				{
+					break;
+				}
+				n--;
+			}
+			xs[n] = x;
+			ys[n] = y;
+			return n + 1;
+		}
+	}
+}
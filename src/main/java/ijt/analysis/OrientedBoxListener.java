@@ -0,0 +1,98 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+/**
+ * Receives the oriented box of each label as soon as it is computed, so that
+ * results can be written or processed without keeping all of them in
+ * memory.
+ *
+ * Boxes are emitted one at a time: the listener does not need to be
+ * thread-safe, even when boxes are computed by several threads.
+ *
+ * @see OrientedBox2D#orientedBox(ij.process.ImageProcessor,
+ *      OrientedBox2D.Criterion, OrientedBoxListener,
+ *      OrientedBoxListener.Order)
+ *
+ * @author dlegland
+ *
+ */
+public interface OrientedBoxListener
+{
+	// ====================================================
+	// Inner enumeration
+
+	/**
+	 * The order used for emitting the boxes.
+	 */
+	public enum Order
+	{
+		/** Boxes are emitted by increasing label */
+		LABEL("Label"),
+		/** Boxes are emitted as soon as they are computed */
+		COMPLETION("Completion");
+
+		private final String label;
+
+		private Order(String label)
+		{
+			this.label = label;
+		}
+
+		@Override
+		public String toString()
+		{
+			return this.label;
+		}
+
+		/**
+		 * Returns the list of labels for this enumeration.
+		 *
+		 * @return the list of labels for this enumeration.
+		 */
+		public static String[] getAllLabels()
+		{
+			Order[] values = Order.values();
+			String[] labels = new String[values.length];
+			for (int i = 0; i < values.length; i++)
+			{
+				labels[i] = values[i].label;
+			}
+			return labels;
+		}
+
+		/**
+		 * Determines the order from its label.
+		 *
+		 * @param label
+		 *            the label of the order
+		 * @return the order corresponding to the label
+		 * @throws IllegalArgumentException
+		 *             if label is not recognized.
+		 */
+		public static Order fromLabel(String label)
+		{
+			for (Order order : Order.values())
+			{
+				if (order.label.equalsIgnoreCase(label))
+					return order;
+			}
+			throw new IllegalArgumentException("Unable to parse Order with label: " + label);
+		}
+	}
+
+
+	// ====================================================
+	// Methods
+
+	/**
+	 * Called when the oriented box of a label has been computed.
+	 *
+	 * @param label
+	 *            the label of the region
+	 * @param box
+	 *            the oriented box of the region
+	 */
+	public void boxComputed(int label, OrientedBox2D box);
+}
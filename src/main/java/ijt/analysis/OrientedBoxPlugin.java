@@ -21,10 +21,12 @@
  */
 package ijt.analysis;
 
+import java.awt.GraphicsEnvironment;
 import java.util.Map;
 
 import ij.IJ;
 import ij.ImagePlus;
+import ij.ImageStack;
 import ij.WindowManager;
 import ij.gui.GenericDialog;
 import ij.gui.Overlay;
@@ -40,6 +42,13 @@ public class OrientedBoxPlugin implements PlugInFilter
 	// ====================================================
 	// Global Constants
 
+	/**
+	 * The list of methods for computing oriented boxes: hull-based boxes
+	 * using rotating calipers, or boxes aligned with principal axes of
+	 * inertia.
+	 */
+	private static final String[] methodNames = new String[] { "Rotating Calipers", "Moments (PCA)" };
+
 	// ====================================================
 	// Class variables
 
@@ -100,66 +109,281 @@ public class OrientedBoxPlugin implements PlugInFilter
 		// create the dialog
 		GenericDialog gd = new GenericDialog("Oriented Box");
 //		gd.addChoice("Label Image:", imageNames, selectedImageName);
+		gd.addChoice("Method:", methodNames, methodNames[0]);
+		gd.addChoice("Box Criterion:", OrientedBox2D.Criterion.getAllLabels(), OrientedBox2D.Criterion.MIN_WIDTH.toString());
 		gd.addCheckbox("Show Overlay Result", true);
 		gd.addChoice("Image to overlay:", imageNames, selectedImageName);
 		gd.addCheckbox("Export to ROI Manager", true);
+		gd.addNumericField("Number of Threads:", LabelTasks.getParallelism(), 0);
+		boolean isStack = imagePlus.getStackSize() > 1;
+		if (isStack)
+		{
+			gd.addCheckbox("Process All Slices", true);
+		}
 		gd.showDialog();
 		
 		if (gd.wasCanceled())
 			return;
 		
 		// parse current parameters
+		int methodIndex = gd.getNextChoiceIndex();
+		OrientedBox2D.Criterion criterion = OrientedBox2D.Criterion.fromLabel(gd.getNextChoice());
 		boolean showOverlay = gd.getNextBoolean();
 		int overlayImageIndex = gd.getNextChoiceIndex();
 		boolean exportToRoiManager = gd.getNextBoolean();
+		int nThreads = (int) gd.getNextNumber();
+		if (nThreads < 1)
+		{
+			IJ.error("Oriented Box", "Number of threads must be positive");
+			return;
+		}
+		LabelTasks.setParallelism(nThreads);
+		boolean processStack = isStack && gd.getNextBoolean();
+
+		// moments-based boxes are aligned with the inertia axes, and do not
+		// depend on the box criterion
+		if (methodIndex == 1 && criterion != OrientedBox2D.Criterion.MIN_WIDTH)
+		{
+			IJ.log("Oriented Box: box criterion \"" + criterion + "\" ignored by the " + methodNames[1] + " method");
+		}
+
+		ImagePlus overlayImage = WindowManager.getImage(indices[overlayImageIndex]);
+
+		// compute rotating calipers boxes in the background, and display them
+		// as they are computed, unless results are expected by a macro. The
+		// worker uses its own token, cancelled by its dialog or by Escape.
+		if (!processStack && methodIndex == 0 && !IJ.isMacro() && !GraphicsEnvironment.isHeadless())
+		{
+			String tableName = imagePlus.getShortTitle() + "-OBoxes";
+			new OrientedBoxWorker(imagePlus.getProcessor(), criterion, tableName, overlayImage, showOverlay,
+					exportToRoiManager).start();
+			return;
+		}
+
+		// the computation can be stopped with the Escape key
+		CancellationToken token = CancellationToken.forImageJ();
+		if (processStack)
+		{
+			runStack(methodIndex, criterion, showOverlay, overlayImage, exportToRoiManager, token);
+			return;
+		}
 
 		// Execute the plugin
 		IJ.showStatus("Compute Oriented Boxes");
-		Map<Integer, OrientedBox2D> labelBoxMap = OrientedBox2D.orientedBox(imagePlus.getProcessor());
-		int nBoxes = labelBoxMap.size(); 
+		OrientedBoxTable boxTable;
+		if (methodIndex == 0)
+		{
+			boxTable = OrientedBox2D.orientedBoxTable(imagePlus.getProcessor(), criterion, token);
+		}
+		else
+		{
+			boxTable = OrientedBoxTable.fromMap(OrientedBox2D.momentsOrientedBox(imagePlus.getProcessor()));
+		}
+		int nBoxes = boxTable.size(); 
+		if (!boxTable.isComplete())
+		{
+			IJ.log("Oriented Box: computation cancelled, " + nBoxes + " labels processed");
+		}
 
 		// Show results table
 		IJ.showStatus("Convert To Table");
 		String tableName = imagePlus.getShortTitle() + "-OBoxes";
-		ResultsTable table = OrientedBox2D.asTable(labelBoxMap);
+		ResultsTable table = OrientedBox2D.asTable(boxTable);
 		table.show(tableName);
 
 		// Optionally overlay on an image
-		ImagePlus overlayImage = WindowManager.getImage(indices[overlayImageIndex]);
+		if (showOverlay)
+		{
+			IJ.showStatus("Compute box overlay");
+			overlayImage.setOverlay(boxTable.createOverlay());
+		}
+		
+		// Export Oriented Boxed to ROI Manager
+		if (exportToRoiManager)
+		{
+			addToRoiManager(boxTable, overlayImage);
+		}
+		
+		IJ.showStatus("");
+	}
+
+	/**
+	 * Adds the boxes of a table to the ROI Manager, naming each ROI after its
+	 * label.
+	 * 
+	 * @param boxTable
+	 *            the oriented boxes
+	 * @param image
+	 *            the image associated to the ROIs
+	 */
+	static final void addToRoiManager(OrientedBoxTable boxTable, ImagePlus image)
+	{
+		int nBoxes = boxTable.size();
+		ProgressListener progress = new ThrottledProgressListener();
+		progress.start("Compute box ROI", nBoxes);
+		LabelFormatter formatter = OrientedBox2D.labelFormatter(nBoxes);
+		addToRoiManager(RoiManager.getRoiManager(), boxTable, image, 0, formatter, progress);
+		progress.finish();
+	}
+
+	/**
+	 * Adds the boxes computed for each plane of a stack to the ROI Manager.
+	 * Each ROI is associated to its plane, and is named after the plane and
+	 * the label.
+	 * 
+	 * @param planeBoxMaps
+	 *            the oriented boxes of each plane
+	 * @param image
+	 *            the image associated to the ROIs
+	 */
+	static final void addToRoiManager(Map<Integer, OrientedBox2D>[] planeBoxMaps, ImagePlus image)
+	{
+		int nPlanes = planeBoxMaps.length;
+		OrientedBoxTable[] planeTables = new OrientedBoxTable[nPlanes];
+		int nBoxes = 0;
+		int maxBoxes = 0;
+		for (int i = 0; i < nPlanes; i++)
+		{
+			planeTables[i] = OrientedBoxTable.fromMap(planeBoxMaps[i]);
+			nBoxes += planeTables[i].size();
+			maxBoxes = Math.max(maxBoxes, planeTables[i].size());
+		}
+
+		ProgressListener progress = new ThrottledProgressListener();
+		progress.start("Compute box ROI", nBoxes);
+		RoiManager manager = RoiManager.getRoiManager();
+		int nPlaneDigits = LabelFormatter.digitCount(nPlanes);
+		int nLabelDigits = LabelFormatter.digitCount(maxBoxes);
+		LabelFormatter planeFormatter = new LabelFormatter("s", nPlaneDigits);
+		for (int i = 0; i < nPlanes; i++)
+		{
+			String prefix = planeFormatter.format(i + 1) + "-lbl-";
+			LabelFormatter formatter = new LabelFormatter(prefix, nLabelDigits);
+			addToRoiManager(manager, planeTables[i], image, i + 1, formatter, progress);
+		}
+		progress.finish();
+	}
+
+	/**
+	 * Adds ROIs created by the createRois() method to the ROI Manager. ROIs
+	 * are associated to all the planes of the image.
+	 * 
+	 * @param rois
+	 *            the ROIs to add
+	 * @param image
+	 *            the image associated to the ROIs
+	 */
+	static final void addToRoiManager(Roi[] rois, ImagePlus image)
+	{
+		ProgressListener progress = new ThrottledProgressListener();
+		progress.start("Add box ROI", rois.length);
+		addToRoiManager(RoiManager.getRoiManager(), rois, image, 0, progress);
+		progress.finish();
+	}
+
+	/**
+	 * Creates the ROI of each box of a table, named after its label and
+	 * associated to a position within the image, or to all planes if
+	 * position is 0. The ROI Manager is not accessed, so that ROIs can be
+	 * created by any thread.
+	 * 
+	 * @param boxTable
+	 *            the oriented boxes
+	 * @param position
+	 *            the position of the ROIs within the image, or 0
+	 * @param formatter
+	 *            the formatter used for naming the ROIs
+	 * @return the ROI of each box
+	 */
+	static final Roi[] createRois(OrientedBoxTable boxTable, int position, LabelFormatter formatter)
+	{
+		int nBoxes = boxTable.size();
+		Roi[] rois = new Roi[nBoxes];
+		for (int index = 0; index < nBoxes; index++)
+		{
+			Roi roi = boxTable.getRoi(index);
+			roi.setName(formatter.format(boxTable.getLabel(index)));
+			roi.setPosition(position);
+			rois[index] = roi;
+		}
+		return rois;
+	}
+
+	/**
+	 * Adds the boxes of a table to the ROI Manager, associating each ROI to a
+	 * position within the image, or to all planes if position is 0.
+	 */
+	private static final void addToRoiManager(RoiManager manager, OrientedBoxTable boxTable, ImagePlus image,
+			int position, LabelFormatter formatter, ProgressListener progress)
+	{
+		addToRoiManager(manager, createRois(boxTable, position, formatter), image, position, progress);
+	}
+
+	private static final void addToRoiManager(RoiManager manager, Roi[] rois, ImagePlus image, int position,
+			ProgressListener progress)
+	{
+		for (Roi roi : rois)
+		{
+			manager.add(image, roi, position);
+			// enforce the name of the ROI
+			manager.rename(manager.getCount() - 1, roi.getName());
+			progress.progress(1);
+		}
+	}
+
+	/**
+	 * Computes the oriented boxes within each plane of the stack, and displays
+	 * all the results in a single table.
+	 */
+	private void runStack(int methodIndex, OrientedBox2D.Criterion criterion, boolean showOverlay,
+			ImagePlus overlayImage, boolean exportToRoiManager, CancellationToken token)
+	{
+		// Execute the plugin
+		IJ.showStatus("Compute Oriented Boxes");
+		ImageStack stack = imagePlus.getStack();
+		Map<Integer, OrientedBox2D>[] planeBoxMaps;
+		if (methodIndex == 0)
+		{
+			planeBoxMaps = OrientedBox2D.orientedBoxes(stack, criterion, token);
+			if (token.isCancelled())
+			{
+				IJ.log("Oriented Box: computation cancelled, results are incomplete");
+			}
+		}
+		else
+		{
+			planeBoxMaps = OrientedBox2D.momentsOrientedBoxes(stack);
+		}
+
+		// Show results table
+		IJ.showStatus("Convert To Table");
+		String tableName = imagePlus.getShortTitle() + "-OBoxes";
+		ResultsTable table = OrientedBox2D.asTable(imagePlus, planeBoxMaps);
+		table.show(tableName);
+
+		// Optionally overlay on an image, associating each box to its plane
 		if (showOverlay)
 		{
 			IJ.showStatus("Compute box overlay");
 			Overlay overlay = new Overlay();
-			int count = 0;
-			for (OrientedBox2D box : labelBoxMap.values())
+			for (int i = 0; i < planeBoxMaps.length; i++)
 			{
-				IJ.showProgress(count++, nBoxes);
-				overlay.add(box.getRoi());
+				IJ.showProgress(i, planeBoxMaps.length);
+				for (OrientedBox2D box : planeBoxMaps[i].values())
+				{
+					Roi roi = box.getRoi();
+					roi.setPosition(i + 1);
+					overlay.add(roi);
+				}
 			}
 			overlayImage.setOverlay(overlay);
-			
 			IJ.showProgress(1);
 		}
 		
 		// Export Oriented Boxed to ROI Manager
 		if (exportToRoiManager)
 		{
-			IJ.showStatus("Compute box ROI");
-			// get instance of ROI Manager
-			RoiManager manager = RoiManager.getRoiManager();
-			int index = 0;
-			int nDigits = ((int) Math.log10(nBoxes)) + 1;
-			for (int label : labelBoxMap.keySet())
-			{
-				IJ.showProgress(index, nBoxes);
-				Roi roi = labelBoxMap.get(label).getRoi();
-				roi.setName(String.format("lbl-%0" + nDigits +"d", label));
-				manager.add(overlayImage, roi, 0);
-				// enforce the name of the ROI
-				manager.rename(index, roi.getName());
-				index++;
-			}
-			IJ.showProgress(1);
+			addToRoiManager(planeBoxMaps, overlayImage);
 		}
 		
 		IJ.showStatus("");
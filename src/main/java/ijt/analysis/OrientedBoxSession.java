@@ -0,0 +1,348 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import ij.process.ImageProcessor;
+import inra.ijpb.label.LabelImages;
+
+/**
+ * Keeps the convex hull and the oriented box of each label of a label
+ * image, and updates them after the image has been edited.
+ *
+ * The edited area is specified either as a rectangle, or as a set of labels
+ * that were modified (for example by merging, splitting, or erasing
+ * labels). Only the bounding boxes of the affected labels are scanned again,
+ * so that the update time depends on the size of the edit rather than on the
+ * size of the image.
+ *
+ * @author dlegland
+ *
+ */
+public class OrientedBoxSession
+{
+	// ====================================================
+	// Class variables
+
+	/** The label image, that may be edited between updates */
+	ImageProcessor image;
+
+	/** The criterion used for choosing box orientation */
+	OrientedBox2D.Criterion criterion;
+
+	/** The convex hull of each label */
+	Map<Integer, ArrayList<Point2D>> hulls = new HashMap<Integer, ArrayList<Point2D>>();
+
+	/** The bounding box of each label, in pixel coordinates */
+	Map<Integer, Rectangle> bounds = new HashMap<Integer, Rectangle>();
+
+	/** The oriented box of each label, sorted by label */
+	TreeMap<Integer, OrientedBox2D> boxes = new TreeMap<Integer, OrientedBox2D>();
+
+
+	// ====================================================
+	// Constructors
+
+	/**
+	 * Creates a new session, and computes the oriented box of each label
+	 * that minimizes the width.
+	 *
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 */
+	public OrientedBoxSession(ImageProcessor image)
+	{
+		this(image, OrientedBox2D.Criterion.MIN_WIDTH);
+	}
+
+	/**
+	 * Creates a new session, and computes the oriented box of each label.
+	 *
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @param criterion
+	 *            the quantity minimized by each box (width, area or perimeter)
+	 */
+	public OrientedBoxSession(ImageProcessor image, OrientedBox2D.Criterion criterion)
+	{
+		this.image = image;
+		this.criterion = criterion;
+
+		int[] labels = LabelImages.findAllLabels(image);
+		ArrayList<Point2D>[] corners = OrientedBox2D.computeLabelsCornersArray(image, labels);
+		updateEntries(labels, corners);
+	}
+
+
+	// ====================================================
+	// Accessors
+
+	/**
+	 * @return the oriented box of each label, as a read-only map sorted by
+	 *         label
+	 */
+	public Map<Integer, OrientedBox2D> getBoxes()
+	{
+		return Collections.unmodifiableMap(this.boxes);
+	}
+
+	/**
+	 * @param label
+	 *            a label
+	 * @return the oriented box of the label, or null if the label is not
+	 *         present in the image
+	 */
+	public OrientedBox2D getBox(int label)
+	{
+		return this.boxes.get(label);
+	}
+
+	/**
+	 * @param label
+	 *            a label
+	 * @return the convex hull of the label, or null if the label is not
+	 *         present in the image
+	 */
+	public ArrayList<Point2D> getConvexHull(int label)
+	{
+		return this.hulls.get(label);
+	}
+
+	/**
+	 * @param label
+	 *            a label
+	 * @return the bounding box of the label, or null if the label is not
+	 *         present in the image
+	 */
+	public Rectangle getBounds(int label)
+	{
+		Rectangle rect = this.bounds.get(label);
+		return rect == null ? null : new Rectangle(rect);
+	}
+
+
+	// ====================================================
+	// Update methods
+
+	/**
+	 * Updates the boxes after pixels within a rectangle have been modified.
+	 * The labels present within the rectangle, before or after the edit, are
+	 * computed again.
+	 *
+	 * @param rect
+	 *            the rectangle containing all the modified pixels
+	 * @return the labels whose box was updated or removed
+	 */
+	public int[] updateRegion(Rectangle rect)
+	{
+		rect = rect.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+		if (rect.isEmpty())
+		{
+			return new int[0];
+		}
+
+		// labels present before the edit
+		TreeSet<Integer> dirty = new TreeSet<Integer>();
+		for (Map.Entry<Integer, Rectangle> entry : this.bounds.entrySet())
+		{
+			if (entry.getValue().intersects(rect))
+			{
+				dirty.add(entry.getKey());
+			}
+		}
+
+		// labels present after the edit
+		findLabels(rect, dirty);
+
+		// the pixels of the modified labels are either within the rectangle,
+		// or within their bounding box before the edit
+		Rectangle scanRect = new Rectangle(rect);
+		for (int label : dirty)
+		{
+			Rectangle labelRect = this.bounds.get(label);
+			if (labelRect != null)
+			{
+				scanRect = scanRect.union(labelRect);
+			}
+		}
+
+		return update(scanRect, dirty);
+	}
+
+	/**
+	 * Updates the boxes of the specified labels after they have been
+	 * modified. The modified pixels are assumed to be located within the
+	 * union of the bounding boxes of these labels before the edit, as is the
+	 * case when labels are merged, split or erased. New labels appearing
+	 * within this area are also computed.
+	 *
+	 * @param labels
+	 *            the labels that were modified
+	 * @return the labels whose box was updated or removed
+	 */
+	public int[] updateLabels(int... labels)
+	{
+		TreeSet<Integer> dirty = new TreeSet<Integer>();
+		Rectangle scanRect = null;
+		for (int label : labels)
+		{
+			dirty.add(label);
+			Rectangle labelRect = this.bounds.get(label);
+			if (labelRect != null)
+			{
+				scanRect = scanRect == null ? new Rectangle(labelRect) : scanRect.union(labelRect);
+			}
+		}
+		if (scanRect == null)
+		{
+			// only unknown labels: remove them from the session, if needed
+			return update(new Rectangle(0, 0, 0, 0), dirty);
+		}
+
+		// add labels created within the area
+		TreeSet<Integer> present = new TreeSet<Integer>();
+		findLabels(scanRect, present);
+		for (int label : present)
+		{
+			if (!this.boxes.containsKey(label))
+			{
+				dirty.add(label);
+			}
+		}
+
+		return update(scanRect, dirty);
+	}
+
+	/**
+	 * Collects the corners of the dirty labels within the scanned rectangle,
+	 * and recomputes their hull and box.
+	 */
+	private int[] update(Rectangle scanRect, Set<Integer> dirty)
+	{
+		// remove previous results
+		for (int label : dirty)
+		{
+			this.hulls.remove(label);
+			this.bounds.remove(label);
+			this.boxes.remove(label);
+		}
+
+		// collect the corners of each run of the dirty labels
+		Map<Integer, ArrayList<Point2D>> cornersMap = new TreeMap<Integer, ArrayList<Point2D>>();
+		for (int y = scanRect.y; y < scanRect.y + scanRect.height; y++)
+		{
+			int currentLabel = 0;
+			int runStart = scanRect.x;
+			for (int x = scanRect.x; x <= scanRect.x + scanRect.width; x++)
+			{
+				int pixel = x < scanRect.x + scanRect.width ? (int) image.getf(x, y) : 0;
+				if (pixel != currentLabel)
+				{
+					if (currentLabel > 0 && dirty.contains(currentLabel))
+					{
+						ArrayList<Point2D> corners = cornersMap.get(currentLabel);
+						if (corners == null)
+						{
+							corners = new ArrayList<Point2D>();
+							cornersMap.put(currentLabel, corners);
+						}
+						corners.add(new Point2D.Double(runStart, y));
+						corners.add(new Point2D.Double(runStart, y + 1));
+						corners.add(new Point2D.Double(x, y));
+						corners.add(new Point2D.Double(x, y + 1));
+					}
+					currentLabel = pixel;
+					runStart = x;
+				}
+			}
+		}
+
+		// compute the new hull and box of each label still present
+		int nLabels = cornersMap.size();
+		int[] labels = new int[nLabels];
+		@SuppressWarnings("unchecked")
+		ArrayList<Point2D>[] corners = (ArrayList<Point2D>[]) new ArrayList<?>[nLabels];
+		int index = 0;
+		for (Map.Entry<Integer, ArrayList<Point2D>> entry : cornersMap.entrySet())
+		{
+			labels[index] = entry.getKey();
+			corners[index++] = entry.getValue();
+		}
+		updateEntries(labels, corners);
+
+		int[] updated = new int[dirty.size()];
+		index = 0;
+		for (int label : dirty)
+		{
+			updated[index++] = label;
+		}
+		return updated;
+	}
+
+	/**
+	 * Computes hull, bounds and box of each label from its corner points.
+	 */
+	private void updateEntries(int[] labels, final ArrayList<Point2D>[] corners)
+	{
+		int nLabels = labels.length;
+		@SuppressWarnings("unchecked")
+		final ArrayList<Point2D>[] labelHulls = (ArrayList<Point2D>[]) new ArrayList<?>[nLabels];
+		final OrientedBox2D[] labelBoxes = new OrientedBox2D[nLabels];
+		FeretAlgorithms.hullsAndBoxes(corners, criterion, labelHulls, labelBoxes);
+
+		for (int i = 0; i < nLabels; i++)
+		{
+			this.hulls.put(labels[i], labelHulls[i]);
+			this.bounds.put(labels[i], hullBounds(labelHulls[i]));
+			this.boxes.put(labels[i], labelBoxes[i]);
+		}
+	}
+
+	/**
+	 * Identifies the labels present within a rectangle.
+	 */
+	private void findLabels(Rectangle rect, Set<Integer> labels)
+	{
+		for (int y = rect.y; y < rect.y + rect.height; y++)
+		{
+			for (int x = rect.x; x < rect.x + rect.width; x++)
+			{
+				int label = (int) image.getf(x, y);
+				if (label > 0)
+				{
+					labels.add(label);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the bounding box of the pixels of a label from the convex hull
+	 * of their corners.
+	 */
+	private static final Rectangle hullBounds(ArrayList<Point2D> hull)
+	{
+		double xmin = Double.POSITIVE_INFINITY;
+		double xmax = Double.NEGATIVE_INFINITY;
+		double ymin = Double.POSITIVE_INFINITY;
+		double ymax = Double.NEGATIVE_INFINITY;
+		for (Point2D p : hull)
+		{
+			xmin = Math.min(xmin, p.getX());
+			xmax = Math.max(xmax, p.getX());
+			ymin = Math.min(ymin, p.getY());
+			ymax = Math.max(ymax, p.getY());
+		}
+		return new Rectangle((int) xmin, (int) ymin, (int) (xmax - xmin), (int) (ymax - ymin));
+	}
+}
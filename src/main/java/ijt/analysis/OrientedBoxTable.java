@@ -0,0 +1,479 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ij.gui.Overlay;
+import ij.gui.PolygonRoi;
+
+/**
+ * Stores the oriented boxes of a set of labels within primitive arrays, one
+ * array for each box parameter.
+ *
+ * Labels are sorted by increasing value, so that the box of a label is
+ * retrieved by binary search. Columns are exposed as read-only buffers that
+ * share the content of the arrays, and can be used for exporting results or
+ * for creating overlays without creating one object for each label. The
+ * asMap() method provides a read-only map view for code expecting the
+ * results of the OrientedBox2D.orientedBox() methods.
+ *
+ * @see OrientedBox2D#orientedBoxTable(ij.process.ImageProcessor,
+ *      OrientedBox2D.Criterion)
+ *
+ * @author dlegland
+ *
+ */
+public class OrientedBoxTable
+{
+	// ====================================================
+	// Class variables
+
+	/** The labels, sorted by increasing value */
+	final int[] labels;
+
+	/** The x-coordinate of the center of each box */
+	final double[] centerX;
+
+	/** The y-coordinate of the center of each box */
+	final double[] centerY;
+
+	/** The length of each box */
+	final double[] length;
+
+	/** The width of each box */
+	final double[] width;
+
+	/** The orientation of each box, in degrees */
+	final double[] theta;
+
+	/** False if the computation was stopped before all labels were processed */
+	boolean complete = true;
+
+
+	// ====================================================
+	// Static factories
+
+	/**
+	 * Creates a new table from the boxes of a set of labels.
+	 *
+	 * @param labels
+	 *            the labels, sorted by increasing value
+	 * @param boxes
+	 *            the box of each label
+	 * @return a new table containing the parameters of the boxes
+	 */
+	public static final OrientedBoxTable fromBoxes(int[] labels, OrientedBox2D[] boxes)
+	{
+		int n = labels.length;
+		if (boxes.length != n)
+		{
+			throw new IllegalArgumentException("Labels and boxes arrays must have the same size");
+		}
+
+		OrientedBoxTable table = new OrientedBoxTable(n);
+		for (int i = 0; i < n; i++)
+		{
+			table.set(i, labels[i], boxes[i]);
+		}
+		table.checkLabelOrder();
+		return table;
+	}
+
+	/**
+	 * Creates a new table from the boxes computed for a subset of a set of
+	 * labels. Labels without box are ignored, and the table is marked as
+	 * incomplete if at least one box is missing.
+	 *
+	 * @param labels
+	 *            the labels, sorted by increasing value
+	 * @param boxes
+	 *            the box of each label, or null for labels that were not
+	 *            processed
+	 * @return a new table containing the parameters of the computed boxes
+	 */
+	static final OrientedBoxTable fromPartialBoxes(int[] labels, OrientedBox2D[] boxes)
+	{
+		int n = 0;
+		for (OrientedBox2D box : boxes)
+		{
+			if (box != null)
+			{
+				n++;
+			}
+		}
+		if (n == labels.length)
+		{
+			return fromBoxes(labels, boxes);
+		}
+
+		OrientedBoxTable table = new OrientedBoxTable(n);
+		int index = 0;
+		for (int i = 0; i < labels.length; i++)
+		{
+			if (boxes[i] != null)
+			{
+				table.set(index++, labels[i], boxes[i]);
+			}
+		}
+		table.complete = false;
+		return table;
+	}
+
+	/**
+	 * Creates a new table from a map between labels and boxes. If the map is
+	 * the map view of another table, the table is returned.
+	 *
+	 * @param labelBoxMap
+	 *            the box of each label
+	 * @return a table containing the parameters of the boxes
+	 */
+	public static final OrientedBoxTable fromMap(Map<Integer, OrientedBox2D> labelBoxMap)
+	{
+		if (labelBoxMap instanceof MapView)
+		{
+			return ((MapView) labelBoxMap).table;
+		}
+
+		int n = labelBoxMap.size();
+		int[] labels = new int[n];
+		int index = 0;
+		for (int label : labelBoxMap.keySet())
+		{
+			labels[index++] = label;
+		}
+		Arrays.sort(labels);
+
+		OrientedBoxTable table = new OrientedBoxTable(n);
+		for (int i = 0; i < n; i++)
+		{
+			table.set(i, labels[i], labelBoxMap.get(labels[i]));
+		}
+		return table;
+	}
+
+
+	// ====================================================
+	// Constructors
+
+	/**
+	 * Creates a new table from the columns of box parameters. The arrays are
+	 * used directly, without being copied.
+	 *
+	 * @param labels
+	 *            the labels, sorted by increasing value
+	 * @param centerX
+	 *            the x-coordinate of the center of each box
+	 * @param centerY
+	 *            the y-coordinate of the center of each box
+	 * @param length
+	 *            the length of each box
+	 * @param width
+	 *            the width of each box
+	 * @param theta
+	 *            the orientation of each box, in degrees
+	 */
+	public OrientedBoxTable(int[] labels, double[] centerX, double[] centerY, double[] length, double[] width, double[] theta)
+	{
+		int n = labels.length;
+		if (centerX.length != n || centerY.length != n || length.length != n || width.length != n || theta.length != n)
+		{
+			throw new IllegalArgumentException("All columns must have the same size");
+		}
+
+		this.labels = labels;
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.length = length;
+		this.width = width;
+		this.theta = theta;
+		checkLabelOrder();
+	}
+
+	/**
+	 * Creates an empty table with the specified number of rows.
+	 */
+	OrientedBoxTable(int n)
+	{
+		this.labels = new int[n];
+		this.centerX = new double[n];
+		this.centerY = new double[n];
+		this.length = new double[n];
+		this.width = new double[n];
+		this.theta = new double[n];
+	}
+
+	private void set(int index, int label, OrientedBox2D box)
+	{
+		this.labels[index] = label;
+		this.centerX[index] = box.x0;
+		this.centerY[index] = box.y0;
+		this.length[index] = box.length;
+		this.width[index] = box.width;
+		this.theta[index] = box.theta;
+	}
+
+	private void checkLabelOrder()
+	{
+		for (int i = 1; i < this.labels.length; i++)
+		{
+			if (this.labels[i] <= this.labels[i - 1])
+			{
+				throw new IllegalArgumentException("Labels must be sorted by increasing value");
+			}
+		}
+	}
+
+
+	// ====================================================
+	// Accessors
+
+	/**
+	 * @return the number of boxes within this table
+	 */
+	public int size()
+	{
+		return this.labels.length;
+	}
+
+	/**
+	 * @return false if the computation was stopped before all the labels of
+	 *         the image were processed
+	 */
+	public boolean isComplete()
+	{
+		return this.complete;
+	}
+
+	/**
+	 * Returns the index of a label within this table.
+	 *
+	 * @param label
+	 *            a label
+	 * @return the index of the label, or a negative value if the label is not
+	 *         present in the table
+	 */
+	public int indexOf(int label)
+	{
+		int index = Arrays.binarySearch(this.labels, label);
+		return index < 0 ? -1 : index;
+	}
+
+	/**
+	 * @param index
+	 *            the index of a row
+	 * @return the label of the row
+	 */
+	public int getLabel(int index)
+	{
+		return this.labels[index];
+	}
+
+	/**
+	 * Creates the box stored at the specified index.
+	 *
+	 * @param index
+	 *            the index of a row
+	 * @return a new oriented box
+	 */
+	public OrientedBox2D getBox(int index)
+	{
+		return new OrientedBox2D(centerX[index], centerY[index], length[index], width[index], theta[index]);
+	}
+
+	/**
+	 * Creates the box associated to a label.
+	 *
+	 * @param label
+	 *            a label
+	 * @return a new oriented box, or null if the label is not present in the
+	 *         table
+	 */
+	public OrientedBox2D getLabelBox(int label)
+	{
+		int index = indexOf(label);
+		return index < 0 ? null : getBox(index);
+	}
+
+	/**
+	 * @return a read-only view on the labels, sorted by increasing value
+	 */
+	public IntBuffer getLabels()
+	{
+		return IntBuffer.wrap(this.labels).asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return a read-only view on the x-coordinates of box centers
+	 */
+	public DoubleBuffer getCenterX()
+	{
+		return DoubleBuffer.wrap(this.centerX).asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return a read-only view on the y-coordinates of box centers
+	 */
+	public DoubleBuffer getCenterY()
+	{
+		return DoubleBuffer.wrap(this.centerY).asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return a read-only view on the box lengths
+	 */
+	public DoubleBuffer getLength()
+	{
+		return DoubleBuffer.wrap(this.length).asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return a read-only view on the box widths
+	 */
+	public DoubleBuffer getWidth()
+	{
+		return DoubleBuffer.wrap(this.width).asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return a read-only view on the box orientations, in degrees
+	 */
+	public DoubleBuffer getTheta()
+	{
+		return DoubleBuffer.wrap(this.theta).asReadOnlyBuffer();
+	}
+
+
+	// ====================================================
+	// Conversion methods
+
+	/**
+	 * Converts the box stored at the specified index into a PolygonRoi,
+	 * without creating the intermediate box.
+	 *
+	 * @param index
+	 *            the index of a row
+	 * @return an instance of PolygonRoi
+	 */
+	public PolygonRoi getRoi(int index)
+	{
+		return OrientedBox2D.createRoi(centerX[index], centerY[index], length[index], width[index], theta[index]);
+	}
+
+	/**
+	 * Creates an overlay containing the boxes of this table.
+	 *
+	 * @return a new overlay containing one polygon for each box
+	 */
+	public Overlay createOverlay()
+	{
+		Overlay overlay = new Overlay();
+		for (int i = 0; i < this.labels.length; i++)
+		{
+			overlay.add(getRoi(i));
+		}
+		return overlay;
+	}
+
+	/**
+	 * Returns a read-only map view of this table, that iterates over labels
+	 * by increasing value. Boxes are created when they are accessed.
+	 *
+	 * @return a map between labels and boxes, backed by this table
+	 */
+	public Map<Integer, OrientedBox2D> asMap()
+	{
+		return new MapView(this);
+	}
+
+
+	// ====================================================
+	// Inner class
+
+	/**
+	 * A read-only map backed by a table.
+	 */
+	private static final class MapView extends AbstractMap<Integer, OrientedBox2D>
+	{
+		final OrientedBoxTable table;
+
+		MapView(OrientedBoxTable table)
+		{
+			this.table = table;
+		}
+
+		@Override
+		public int size()
+		{
+			return table.size();
+		}
+
+		@Override
+		public boolean containsKey(Object key)
+		{
+			return key instanceof Integer && table.indexOf((Integer) key) >= 0;
+		}
+
+		@Override
+		public OrientedBox2D get(Object key)
+		{
+			return key instanceof Integer ? table.getLabelBox((Integer) key) : null;
+		}
+
+		@Override
+		public Set<Map.Entry<Integer, OrientedBox2D>> entrySet()
+		{
+			return new AbstractSet<Map.Entry<Integer, OrientedBox2D>>()
+			{
+				@Override
+				public int size()
+				{
+					return table.size();
+				}
+
+				@Override
+				public Iterator<Map.Entry<Integer, OrientedBox2D>> iterator()
+				{
+					return new Iterator<Map.Entry<Integer, OrientedBox2D>>()
+					{
+						int index = 0;
+
+						@Override
+						public boolean hasNext()
+						{
+							return index < table.size();
+						}
+
+						@Override
+						public Map.Entry<Integer, OrientedBox2D> next()
+						{
+							if (index >= table.size())
+							{
+								throw new NoSuchElementException();
+							}
+							Map.Entry<Integer, OrientedBox2D> entry = new AbstractMap.SimpleImmutableEntry<Integer, OrientedBox2D>(
+									table.labels[index], table.getBox(index));
+							index++;
+							return entry;
+						}
+
+						@Override
+						public void remove()
+						{
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,410 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.awt.BorderLayout;
+import java.awt.Button;
+import java.awt.Dialog;
+import java.awt.EventQueue;
+import java.awt.Label;
+import java.awt.Window;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.WindowManager;
+import ij.gui.Overlay;
+import ij.gui.Roi;
+import ij.measure.ResultsTable;
+import ij.process.ImageProcessor;
+import ij.text.TextPanel;
+import ij.text.TextWindow;
+import inra.ijpb.label.LabelImages;
+
+/**
+ * Computes the oriented boxes of a label image in the background, and
+ * displays the results while they are computed.
+ *
+ * Boxes are received by increasing label, so that the results table is
+ * built row by row within the computing threads, and is already sorted
+ * when the computation finishes. The rows and the shapes computed since the
+ * previous update are sent to the event dispatch thread in batches, at most
+ * once per update interval, and are appended to the displayed table and
+ * overlay. A small dialog allows to cancel the computation. When the
+ * computation finishes, the complete table is displayed, and boxes are
+ * optionally exported to the ROI Manager.
+ *
+ * Computations are run one at a time by a daemon thread, and each of them
+ * uses the threads of LabelTasks for processing labels in parallel. The
+ * event dispatch thread only displays objects created by the computation.
+ *
+ * @author dlegland
+ *
+ */
+final class OrientedBoxWorker implements Runnable, OrientedBoxListener
+{
+	// ====================================================
+	// Static variables
+
+	/** The minimum time between two updates of the display, in milliseconds */
+	static final long UPDATE_INTERVAL_MILLIS = 500;
+
+	/** The executor running the computations */
+	private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "Oriented Box");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+
+	// ====================================================
+	// Class variables
+
+	/** The label image */
+	private final ImageProcessor image;
+
+	/** The quantity minimized by each box */
+	private final OrientedBox2D.Criterion criterion;
+
+	/** The name of the results table */
+	private final String tableName;
+
+	/** The image associated to the boxes */
+	private final ImagePlus overlayImage;
+
+	/** Specifies whether boxes are displayed as an overlay */
+	private final boolean showOverlay;
+
+	/** Specifies whether boxes are exported to the ROI Manager */
+	private final boolean exportToRoiManager;
+
+	/** The token cancelled by the dialog or by the Escape key */
+	private final CancellationToken token = new CancellationToken(0, null, true);
+
+	/** The formatter of row and ROI names, created once the labels are known */
+	private LabelFormatter formatter;
+
+	/** The boxes computed so far, by label */
+	private final Map<Integer, OrientedBox2D> boxes = new TreeMap<Integer, OrientedBox2D>();
+
+	/** The table containing the boxes computed so far, by increasing label */
+	private final ResultsTable table = new ResultsTable();
+
+	/** The number of rows of the table already sent for display */
+	private int nDisplayedRows = 0;
+
+	/** The shapes of the boxes computed since the last update */
+	private ArrayList<Roi> pendingRois = new ArrayList<Roi>();
+
+	/** The time of the next update, as given by System.nanoTime() */
+	private long nextUpdate;
+
+	/** The panel displaying the table, used within the event dispatch thread */
+	private TextPanel textPanel = null;
+
+	/** The number of rows displayed so far, used within the event dispatch thread */
+	private int nShownRows = 0;
+
+	/** The overlay displaying the boxes received so far, used within the event dispatch thread */
+	private final Overlay overlay = new Overlay();
+
+	/** The dialog showing the cancel button, used within the event dispatch thread */
+	private Dialog dialog = null;
+
+
+	// ====================================================
+	// Constructor
+
+	/**
+	 * Creates a new worker.
+	 *
+	 * @param image
+	 *            a label image (8, 16 or 32 bits)
+	 * @param criterion
+	 *            the quantity minimized by each box
+	 * @param tableName
+	 *            the name of the results table
+	 * @param overlayImage
+	 *            the image associated to the boxes
+	 * @param showOverlay
+	 *            true for displaying the boxes as an overlay of the image
+	 * @param exportToRoiManager
+	 *            true for exporting the boxes to the ROI Manager at the end of
+	 *            the computation
+	 */
+	OrientedBoxWorker(ImageProcessor image, OrientedBox2D.Criterion criterion, String tableName,
+			ImagePlus overlayImage, boolean showOverlay, boolean exportToRoiManager)
+	{
+		this.image = image;
+		this.criterion = criterion;
+		this.tableName = tableName;
+		this.overlayImage = overlayImage;
+		this.showOverlay = showOverlay;
+		this.exportToRoiManager = exportToRoiManager;
+	}
+
+
+	// ====================================================
+	// Methods
+
+	/**
+	 * Shows the cancel dialog and starts the computation in the background.
+	 */
+	void start()
+	{
+		IJ.resetEscape();
+		EventQueue.invokeLater(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				showDialog();
+			}
+		});
+		EXECUTOR.execute(this);
+	}
+
+	/**
+	 * Cancels the computation. The boxes computed so far are displayed.
+	 */
+	void cancel()
+	{
+		this.token.cancel();
+	}
+
+	@Override
+	public void run()
+	{
+		boolean complete = false;
+		boolean failed = false;
+		try
+		{
+			// names are padded according to the number of labels, as in the
+			// tables created by OrientedBox2D.asTable()
+			int nLabels = LabelImages.findAllLabels(this.image).length;
+			this.formatter = OrientedBox2D.labelFormatter(nLabels);
+
+			// labels are emitted by increasing value, so that the table is
+			// built already sorted
+			this.nextUpdate = System.nanoTime() + UPDATE_INTERVAL_MILLIS * 1000000L;
+			complete = OrientedBox2D.orientedBox(this.image, this.criterion, this, Order.LABEL, this.token);
+		}
+		catch (RuntimeException ex)
+		{
+			failed = true;
+			IJ.handleException(ex);
+		}
+
+		// create the last rows and shapes, and the ROIs of all the boxes,
+		// within the current thread
+		final ArrayList<String> lastRows = newRows();
+		final ArrayList<Roi> lastRois = this.pendingRois;
+		this.pendingRois = new ArrayList<Roi>();
+		Roi[] rois = null;
+		if (this.exportToRoiManager && this.formatter != null)
+		{
+			rois = OrientedBoxPlugin.createRois(OrientedBoxTable.fromMap(this.boxes), 0, this.formatter);
+		}
+
+		final Roi[] managerRois = rois;
+		final boolean cancelled = !complete && !failed;
+		final boolean computationFailed = failed;
+		EventQueue.invokeLater(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				appendBoxes(lastRows, lastRois);
+				finish(cancelled, computationFailed, managerRois);
+			}
+		});
+	}
+
+	/**
+	 * Adds the computed box to the table, and sends the rows and shapes
+	 * computed since the previous update once the update interval has
+	 * elapsed. Called by one computing thread at a time.
+	 */
+	@Override
+	public void boxComputed(int label, OrientedBox2D box)
+	{
+		this.boxes.put(label, box);
+		this.table.incrementCounter();
+		this.table.addLabel(this.formatter.format(label));
+		this.table.addValue("Box.Center.X", box.x0);
+		this.table.addValue("Box.Center.Y", box.y0);
+		this.table.addValue("Box.Length", box.length);
+		this.table.addValue("Box.Width", box.width);
+		this.table.addValue("Box.Orientation", box.theta);
+		if (this.showOverlay)
+		{
+			this.pendingRois.add(box.getRoi());
+		}
+
+		long now = System.nanoTime();
+		if (now - this.nextUpdate >= 0)
+		{
+			this.nextUpdate = now + UPDATE_INTERVAL_MILLIS * 1000000L;
+			final ArrayList<String> rows = newRows();
+			final ArrayList<Roi> rois = this.pendingRois;
+			this.pendingRois = new ArrayList<Roi>();
+			EventQueue.invokeLater(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					appendBoxes(rows, rois);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns the text of the rows added to the table since the previous
+	 * update. The first batch also contains the column headings.
+	 */
+	private ArrayList<String> newRows()
+	{
+		int nRows = this.table.size();
+		ArrayList<String> rows = new ArrayList<String>(nRows - this.nDisplayedRows + 1);
+		if (this.nDisplayedRows == 0 && nRows > 0)
+		{
+			rows.add(this.table.getColumnHeadings());
+		}
+		for (int row = this.nDisplayedRows; row < nRows; row++)
+		{
+			rows.add(this.table.getRowAsString(row));
+		}
+		this.nDisplayedRows = nRows;
+		return rows;
+	}
+
+
+	// ====================================================
+	// Methods called within the event dispatch thread
+
+	private void showDialog()
+	{
+		this.dialog = new Dialog(IJ.getInstance(), "Oriented Box", false);
+		this.dialog.setLayout(new BorderLayout(10, 10));
+		this.dialog.add(new Label("Computing oriented boxes..."), BorderLayout.CENTER);
+		Button button = new Button("Cancel");
+		button.addActionListener(new ActionListener()
+		{
+			@Override
+			public void actionPerformed(ActionEvent evt)
+			{
+				cancel();
+			}
+		});
+		this.dialog.add(button, BorderLayout.SOUTH);
+		this.dialog.addWindowListener(new WindowAdapter()
+		{
+			@Override
+			public void windowClosing(WindowEvent evt)
+			{
+				cancel();
+			}
+		});
+		this.dialog.pack();
+		this.dialog.setLocationRelativeTo(IJ.getInstance());
+		this.dialog.setVisible(true);
+	}
+
+	/**
+	 * Appends a batch of rows and shapes to the displayed table and overlay.
+	 * Only the new rows are added to the text window, instead of displaying
+	 * the whole table again.
+	 */
+	private void appendBoxes(ArrayList<String> rows, ArrayList<Roi> rois)
+	{
+		if (!rows.isEmpty())
+		{
+			if (this.textPanel == null)
+			{
+				// the first batch starts with the column headings, and the
+				// window of a previous computation is reused
+				String headings = rows.remove(0);
+				Window window = WindowManager.getWindow(this.tableName);
+				if (window instanceof TextWindow)
+				{
+					this.textPanel = ((TextWindow) window).getTextPanel();
+					this.textPanel.setColumnHeadings(headings);
+					this.textPanel.append(rows);
+				}
+				else
+				{
+					this.textPanel = new TextWindow(this.tableName, headings, rows, 600, 400).getTextPanel();
+				}
+			}
+			else
+			{
+				this.textPanel.append(rows);
+			}
+			this.nShownRows += rows.size();
+		}
+
+		if (this.showOverlay && !rois.isEmpty())
+		{
+			for (Roi roi : rois)
+			{
+				this.overlay.add(roi);
+			}
+			this.overlayImage.setOverlay(this.overlay);
+		}
+		IJ.showStatus("Oriented Box: " + this.nShownRows + " labels processed");
+	}
+
+	/**
+	 * Displays the complete table, and exports the boxes to the ROI Manager.
+	 */
+	private void finish(boolean cancelled, boolean failed, Roi[] rois)
+	{
+		if (this.dialog != null)
+		{
+			this.dialog.dispose();
+			this.dialog = null;
+		}
+
+		// the computation is over, and the table is not modified anymore
+		if (failed)
+		{
+			IJ.log("Oriented Box: computation failed, " + this.table.size() + " labels processed");
+		}
+		else if (cancelled)
+		{
+			IJ.log("Oriented Box: computation cancelled, " + this.table.size() + " labels processed");
+		}
+
+		// the window already displays all the rows: associate the table to
+		// it, so that it can be saved or sorted
+		if (this.textPanel != null)
+		{
+			this.textPanel.setResultsTable(this.table);
+		}
+		else
+		{
+			this.table.show(this.tableName);
+		}
+		if (rois != null)
+		{
+			OrientedBoxPlugin.addToRoiManager(rois, this.overlayImage);
+		}
+		IJ.showStatus("");
+	}
+}
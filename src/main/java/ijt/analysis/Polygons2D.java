@@ -6,6 +6,8 @@ package ijt.analysis;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 
 import ij.gui.PolygonRoi;
 import ij.gui.Roi;
@@ -64,6 +66,89 @@ public class Polygons2D
 		return new Point2D.Double(sumX / sumC, sumY / sumC);
 	}
 	
+	/**
+	 * Copies the coordinates of a list of points into the destination
+	 * arrays, that must have at least the size of the list.
+	 */
+	static final void getCoordinates(ArrayList<? extends Point2D> points, double[] xCoords, double[] yCoords)
+	{
+		int n = points.size();
+		for (int i = 0; i < n; i++)
+		{
+			Point2D p = points.get(i);
+			xCoords[i] = p.getX();
+			yCoords[i] = p.getY();
+		}
+	}
+
+	/**
+	 * Copies the vertices of a polygon into the destination arrays, removing
+	 * consecutive duplicate vertices, and translating coordinates by the
+	 * opposite of the given origin.
+	 * 
+	 * @return the number of vertices copied into the destination arrays
+	 */
+	static final int copyVertices(double[] xCoords, double[] yCoords, int n,
+			double x0, double y0, double[] px, double[] py)
+	{
+		int nv = 0;
+		for (int i = 0; i < n; i++)
+		{
+			double x = xCoords[i] - x0;
+			double y = yCoords[i] - y0;
+			if (nv > 0 && x == px[nv - 1] && y == py[nv - 1])
+			{
+				continue;
+			}
+			px[nv] = x;
+			py[nv] = y;
+			nv++;
+		}
+		while (nv > 1 && px[nv - 1] == px[0] && py[nv - 1] == py[0])
+		{
+			nv--;
+		}
+		return nv;
+	}
+
+	/**
+	 * Reverses the order of the polygon vertices if needed, such that the
+	 * polygon has a positive signed area.
+	 * 
+	 * @return false if the polygon has a null area, true otherwise
+	 */
+	static final boolean ensureCounterClockwise(double[] px, double[] py, int n)
+	{
+		// compute signed area to identify polygon orientation
+		double area2 = 0;
+		for (int i = 0; i < n; i++)
+		{
+			int i2 = (i + 1) % n;
+			area2 += px[i] * py[i2] - px[i2] * py[i];
+		}
+		
+		if (area2 == 0)
+		{
+			return false;
+		}
+		if (area2 < 0)
+		{
+			reverse(px, n);
+			reverse(py, n);
+		}
+		return true;
+	}
+
+	private static final void reverse(double[] array, int n)
+	{
+		for (int i = 0, i2 = n - 1; i < i2; i++, i2--)
+		{
+			double tmp = array[i];
+			array[i] = array[i2];
+			array[i2] = tmp;
+		}
+	}
+
 	/**
 	 * Uses the gift wrap algorithm with floating point values to find the
 	 * convex hull and returns it as a list of points.
@@ -79,12 +164,7 @@ public class Polygons2D
 		double[] xCoordinates = new double[n];
 		double[] yCoordinates = new double[n];
 		
-		for (int i = 0; i < n; i++)
-		{
-			Point2D vertex = vertices.get(i);
-			xCoordinates[i] = vertex.getX();
-			yCoordinates[i] = vertex.getY();
-		}
+		getCoordinates(vertices, xCoordinates, yCoordinates);
 		
 		// convex hull coordinates
 		ArrayList<Point2D> hull = new ArrayList<Point2D>();
@@ -137,7 +217,7 @@ public class Polygons2D
 				double y3 = yCoordinates[p3];
 				
 				// if V1-V2-V3 is oriented CW, use V3 as next wrapping candidate
-				double det = x1 * (y2 - y3) - y1 * (x2 - x3) + (y3 * x2 - y2 * x3);
+				double det = Geometry2D.orientation(x1, y1, x2, y2, x3, y3);
 				if (det < 0)
 				{
 					x2 = x3;
@@ -154,6 +234,86 @@ public class Polygons2D
 		return hull;
 	}
 
+	/**
+	 * Uses Andrew's monotone chain algorithm to find the convex hull of a set
+	 * of points, and returns it as a list of points oriented
+	 * counter-clockwise. Collinear vertices are removed.
+	 * 
+	 * The complexity is O(n*log(n)) for n points, independently of the number
+	 * of hull vertices, making this algorithm preferable to the gift wrap
+	 * algorithm for large point sets.
+	 * 
+	 * @param points
+	 *            a list of points (not necessarily ordered)
+	 * @return the convex hull of the points
+	 */
+	public static final ArrayList<Point2D> convexHull_monotoneChain(ArrayList<? extends Point2D> points)
+	{
+		// Get polygon info
+		int n = points.size();
+		final double[] xCoords = new double[n];
+		final double[] yCoords = new double[n];
+		getCoordinates(points, xCoords, yCoords);
+		
+		// sort point indices by x-coordinate, then by y-coordinate
+		Integer[] indices = new Integer[n];
+		for (int i = 0; i < n; i++)
+		{
+			indices[i] = i;
+		}
+		Arrays.sort(indices, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer i1, Integer i2)
+			{
+				int res = Double.compare(xCoords[i1], xCoords[i2]);
+				return res != 0 ? res : Double.compare(yCoords[i1], yCoords[i2]);
+			}
+		});
+		
+		// indices of hull vertices, lower hull followed by upper hull
+		int[] hull = new int[2 * n + 1];
+		int k = 0;
+		
+		// build lower hull
+		for (int i = 0; i < n; i++)
+		{
+			int p = indices[i];
+			while (k >= 2 && isNotLeftTurn(xCoords, yCoords, hull[k - 2], hull[k - 1], p))
+			{
+				k--;
+			}
+			hull[k++] = p;
+		}
+		
+		// build upper hull
+		int lowerSize = k + 1;
+		for (int i = n - 2; i >= 0; i--)
+		{
+			int p = indices[i];
+			while (k >= lowerSize && isNotLeftTurn(xCoords, yCoords, hull[k - 2], hull[k - 1], p))
+			{
+				k--;
+			}
+			hull[k++] = p;
+		}
+		
+		// last vertex is the same as the first one
+		int nHull = Math.max(k - 1, Math.min(n, 1));
+		ArrayList<Point2D> result = new ArrayList<Point2D>(nHull);
+		for (int i = 0; i < nHull; i++)
+		{
+			int p = hull[i];
+			result.add(new Point2D.Double(xCoords[p], yCoords[p]));
+		}
+		return result;
+	}
+	
+	private static final boolean isNotLeftTurn(double[] xCoords, double[] yCoords, int i1, int i2, int i3)
+	{
+		return Geometry2D.orientation(xCoords[i1], yCoords[i1], xCoords[i2], yCoords[i2], xCoords[i3], yCoords[i3]) <= 0;
+	}
+
 	/**
 	 * Uses the gift wrap algorithm with integer values to find the convex hull
 	 * of a list of vertices, and returns it as an ordered list of points.
@@ -0,0 +1,74 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+/**
+ * Receives the progress of a computation that processes a known number of
+ * items, such as the labels of an image.
+ *
+ * The progress() method may be called concurrently by several worker
+ * threads, and is expected to be cheap, as it is called once for each item.
+ * The start() and finish() methods are called by the thread that runs the
+ * computation.
+ *
+ * @see ThrottledProgressListener
+ *
+ * @author dlegland
+ *
+ */
+public interface ProgressListener
+{
+	// ====================================================
+	// Constants
+
+	/**
+	 * A listener that ignores progress, for batch or headless processing.
+	 */
+	public static final ProgressListener NONE = new ProgressListener()
+	{
+		@Override
+		public void start(String status, long total)
+		{
+		}
+
+		@Override
+		public void progress(long count)
+		{
+		}
+
+		@Override
+		public void finish()
+		{
+		}
+	};
+
+
+	// ====================================================
+	// Methods
+
+	/**
+	 * Called before the computation starts processing items.
+	 *
+	 * @param status
+	 *            a short description of the computation
+	 * @param total
+	 *            the number of items to process
+	 */
+	public void start(String status, long total);
+
+	/**
+	 * Called when items have been processed. Can be called by several
+	 * threads at the same time.
+	 *
+	 * @param count
+	 *            the number of items processed since the previous call from
+	 *            the same thread
+	 */
+	public void progress(long count);
+
+	/**
+	 * Called when the computation is finished or has been cancelled.
+	 */
+	public void finish();
+}
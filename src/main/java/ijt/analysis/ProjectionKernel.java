@@ -0,0 +1,79 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+/**
+ * Dense projection and reduction operations over point coordinates stored as
+ * two separate arrays (one for x-coordinates, one for y-coordinates).
+ * 
+ * Implementations are obtained with the ProjectionKernels.getDefault()
+ * method, that selects a vectorized implementation when available, and a
+ * scalar implementation otherwise.
+ * 
+ * @see ProjectionKernels
+ * 
+ * @author dlegland
+ *
+ */
+public interface ProjectionKernel
+{
+	/**
+	 * Computes the range of the projections of a set of points onto a
+	 * direction vector, i.e. the smallest and largest values of the dot
+	 * product of each point with the vector (ux,uy).
+	 * 
+	 * @param xCoords
+	 *            the x-coordinates of the points
+	 * @param yCoords
+	 *            the y-coordinates of the points
+	 * @param n
+	 *            the number of points to consider
+	 * @param ux
+	 *            the x-coordinate of the direction vector
+	 * @param uy
+	 *            the y-coordinate of the direction vector
+	 * @param range
+	 *            an array with at least two elements, used to store the
+	 *            minimum and the maximum projection
+	 */
+	public void projectionRange(double[] xCoords, double[] yCoords, int n, double ux, double uy, double[] range);
+
+	/**
+	 * Computes the largest absolute value of the cross product between the
+	 * vector (dx,dy) and the vectors from (x0,y0) to each point. Multiplied by
+	 * the inverse norm of (dx,dy), the result is the largest distance between
+	 * the points and the line through (x0,y0) with direction (dx,dy).
+	 * 
+	 * @param xCoords
+	 *            the x-coordinates of the points
+	 * @param yCoords
+	 *            the y-coordinates of the points
+	 * @param n
+	 *            the number of points to consider
+	 * @return the largest absolute cross product
+	 */
+	public double maxAbsCross(double[] xCoords, double[] yCoords, int n, double x0, double y0, double dx, double dy);
+
+	/**
+	 * Computes the largest squared distance between the point (x0,y0) and the
+	 * points with indices between start (inclusive) and n (exclusive), and
+	 * the index of the point that reaches it.
+	 * 
+	 * @param xCoords
+	 *            the x-coordinates of the points
+	 * @param yCoords
+	 *            the y-coordinates of the points
+	 * @param start
+	 *            the index of the first point to consider
+	 * @param n
+	 *            the index after the last point to consider
+	 * @param index
+	 *            an array with at least one element, used to store the
+	 *            smallest index of the points at the largest distance, or -1
+	 *            if the index range is empty
+	 * @return the largest squared distance, or zero if the index range is
+	 *         empty
+	 */
+	public double maxDistanceSq(double[] xCoords, double[] yCoords, int start, int n, double x0, double y0, int[] index);
+}
@@ -0,0 +1,73 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+/**
+ * Provides the projection kernel used by Feret diameter and oriented box
+ * computations.
+ * 
+ * When the project is compiled with a JDK providing the Java Vector API
+ * (profile "vector-api"), and the JVM is started with the option
+ * "--add-modules jdk.incubator.vector", the vectorized implementation is
+ * used. Otherwise, or if the system property "ijt.analysis.vector" is set to
+ * false, the scalar implementation is used.
+ * 
+ * @author dlegland
+ *
+ */
+public class ProjectionKernels
+{
+	/**
+	 * The name of the class implementing vectorized kernels.
+	 */
+	private static final String VECTOR_KERNEL_CLASS = "ijt.analysis.VectorProjectionKernel";
+
+	/**
+	 * The kernel used by default, determined at class initialization.
+	 */
+	private static final ProjectionKernel DEFAULT = createDefault();
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private ProjectionKernels()
+	{
+	}
+
+	/**
+	 * @return the kernel used by default for projection computations
+	 */
+	public static final ProjectionKernel getDefault()
+	{
+		return DEFAULT;
+	}
+
+	/**
+	 * @return true if the default kernel uses the Java Vector API
+	 */
+	public static final boolean isVectorized()
+	{
+		return !(DEFAULT instanceof ScalarProjectionKernel);
+	}
+
+	private static final ProjectionKernel createDefault()
+	{
+		if (!Boolean.parseBoolean(System.getProperty("ijt.analysis.vector", "true")))
+		{
+			return new ScalarProjectionKernel();
+		}
+
+		try
+		{
+			Class<?> kernelClass = Class.forName(VECTOR_KERNEL_CLASS);
+			return (ProjectionKernel) kernelClass.getDeclaredConstructor().newInstance();
+		}
+		catch (Throwable ex)
+		{
+			// class not compiled, incompatible class version, or missing
+			// jdk.incubator.vector module
+			return new ScalarProjectionKernel();
+		}
+	}
+}
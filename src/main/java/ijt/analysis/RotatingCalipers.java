@@ -0,0 +1,421 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+
+/**
+ * Rotating calipers algorithm for convex polygons. A single sweep over the
+ * edges of the convex hull computes minimum and maximum Feret diameters
+ * together with the oriented box, in linear time with respect to the number
+ * of hull vertices.
+ *
+ * For each edge of the polygon, three "calipers" are maintained: the vertex
+ * the most distant from the edge, and the two vertices with extreme
+ * projections along the edge direction. As the edge index increases, each
+ * caliper only moves forward, so the total number of caliper moves is
+ * proportional to the number of vertices.
+ *
+ * @author dlegland
+ *
+ */
+public class RotatingCalipers
+{
+	// ====================================================
+	// Static methods
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private RotatingCalipers()
+	{
+	}
+
+	/**
+	 * Computes Feret diameters and oriented box of a convex polygon.
+	 *
+	 * @param convexHull
+	 *            the ordered list of vertices of a convex polygon, oriented
+	 *            either clockwise or counter-clockwise
+	 * @return the set of descriptors computed by the rotating calipers
+	 */
+	public static final Descriptors compute(ArrayList<? extends Point2D> convexHull)
+	{
+		return compute(convexHull, OrientedBox2D.Criterion.MIN_WIDTH);
+	}
+
+	/**
+	 * Computes Feret diameters and oriented box of a convex polygon, using
+	 * the specified criterion for choosing the box orientation.
+	 *
+	 * @param convexHull
+	 *            the ordered list of vertices of a convex polygon, oriented
+	 *            either clockwise or counter-clockwise
+	 * @param criterion
+	 *            the quantity minimized by the oriented box
+	 * @return the set of descriptors computed by the rotating calipers
+	 */
+	public static final Descriptors compute(ArrayList<? extends Point2D> convexHull, OrientedBox2D.Criterion criterion)
+	{
+		int n = convexHull.size();
+		double[] xCoords = new double[n];
+		double[] yCoords = new double[n];
+		Polygons2D.getCoordinates(convexHull, xCoords, yCoords);
+		return compute(xCoords, yCoords, n, criterion);
+	}
+
+	/**
+	 * Computes Feret diameters and oriented box of a convex polygon given by
+	 * the coordinates of its vertices. The input arrays are not modified.
+	 *
+	 * @param xCoords
+	 *            the x-coordinates of the polygon vertices
+	 * @param yCoords
+	 *            the y-coordinates of the polygon vertices
+	 * @param n
+	 *            the number of vertices to consider
+	 * @return the set of descriptors computed by the rotating calipers
+	 */
+	public static final Descriptors compute(double[] xCoords, double[] yCoords, int n)
+	{
+		return compute(xCoords, yCoords, n, OrientedBox2D.Criterion.MIN_WIDTH);
+	}
+
+	/**
+	 * Computes Feret diameters and oriented box of a convex polygon given by
+	 * the coordinates of its vertices, using the specified criterion for
+	 * choosing the box orientation. The input arrays are not modified.
+	 *
+	 * As the optimal enclosing rectangle for width, area and perimeter always
+	 * has one side collinear with an edge of the convex polygon, the box is
+	 * found by evaluating the criterion for the rectangle associated to each
+	 * edge during the sweep.
+	 *
+	 * @param xCoords
+	 *            the x-coordinates of the polygon vertices
+	 * @param yCoords
+	 *            the y-coordinates of the polygon vertices
+	 * @param n
+	 *            the number of vertices to consider
+	 * @param criterion
+	 *            the quantity minimized by the oriented box
+	 * @return the set of descriptors computed by the rotating calipers
+	 */
+	public static final Descriptors compute(double[] xCoords, double[] yCoords, int n, OrientedBox2D.Criterion criterion)
+	{
+		return compute(xCoords, yCoords, n, criterion, new double[n], new double[n]);
+	}
+
+	/**
+	 * Computes Feret diameters and oriented box of a convex polygon, using
+	 * the specified arrays for storing the centered copy of the vertices.
+	 * This avoids allocating temporary arrays when processing many polygons.
+	 *
+	 * @param xCoords
+	 *            the x-coordinates of the polygon vertices
+	 * @param yCoords
+	 *            the y-coordinates of the polygon vertices
+	 * @param n
+	 *            the number of vertices to consider
+	 * @param criterion
+	 *            the quantity minimized by the oriented box
+	 * @param px
+	 *            a work array with at least n elements
+	 * @param py
+	 *            a work array with at least n elements
+	 * @return the set of descriptors computed by the rotating calipers
+	 */
+	static final Descriptors compute(double[] xCoords, double[] yCoords, int n, OrientedBox2D.Criterion criterion,
+			double[] px, double[] py)
+	{
+		// copy vertices, removing consecutive duplicates, and using the first
+		// vertex as origin to limit round-off errors
+		double x0 = n > 0 ? xCoords[0] : 0;
+		double y0 = n > 0 ? yCoords[0] : 0;
+		int nv = Polygons2D.copyVertices(xCoords, yCoords, n, x0, y0, px, py);
+
+		// process degenerate cases
+		if (nv == 0)
+		{
+			return new Descriptors(0, 0, 0, 0, 0, new OrientedBox2D(x0, y0, 0, 0, 0));
+		}
+
+		// ensure counter-clockwise orientation, so that polygon interior is on
+		// the left side of each edge
+		if (nv < 3 || !Polygons2D.ensureCounterClockwise(px, py, nv))
+		{
+			return segmentDescriptors(px, py, nv, x0, y0);
+		}
+
+		// initialize results
+		double minWidth = Double.POSITIVE_INFINITY;
+		int minWidthEdge = 0;
+		double minLength = 0;
+		double bestValue = Double.POSITIVE_INFINITY;
+		int bestEdge = 0;
+		double bestWidth = 0, bestLo = 0, bestHi = 0;
+		double maxDiam2 = 0;
+		int maxDiamInd1 = 0, maxDiamInd2 = 0;
+
+		// indices of calipers: vertex with largest projection along edge,
+		// vertex most distant from edge, and vertex with smallest projection
+		// along edge. Indices are not taken modulo n to keep track of the
+		// number of moves.
+		int k = 1, j = 1, m = 1;
+		boolean init = true;
+
+		for (int i = 0; i < nv; i++)
+		{
+			int i2 = (i + 1) % nv;
+
+			// normalized direction vector of current edge
+			double ux = px[i2] - px[i];
+			double uy = py[i2] - py[i];
+			double norm = Math.hypot(ux, uy);
+			ux /= norm;
+			uy /= norm;
+
+			// the normal vector points toward the polygon interior
+			double nx = -uy;
+			double ny = ux;
+
+			double xi = px[i];
+			double yi = py[i];
+			if (init)
+			{
+				k = i + 1;
+			}
+
+			// advance caliper with maximal projection along edge
+			while (dot(px, py, k + 1, nv, xi, yi, ux, uy) > dot(px, py, k, nv, xi, yi, ux, uy))
+			{
+				k++;
+			}
+			if (init)
+			{
+				j = k;
+			}
+
+			// advance antipodal caliper, checking antipodal pairs for the
+			// maximum diameter
+			while (dot(px, py, j + 1, nv, xi, yi, nx, ny) > dot(px, py, j, nv, xi, yi, nx, ny))
+			{
+				j++;
+			}
+			// also check the next vertex, that is antipodal as well when
+			// the opposite edge is parallel to the current edge
+			for (int jj = j; jj <= j + 1; jj++)
+			{
+				int jm = jj % nv;
+				double d2 = dist2(px, py, i, jm);
+				if (d2 > maxDiam2)
+				{
+					maxDiam2 = d2;
+					maxDiamInd1 = i;
+					maxDiamInd2 = jm;
+				}
+				d2 = dist2(px, py, i2, jm);
+				if (d2 > maxDiam2)
+				{
+					maxDiam2 = d2;
+					maxDiamInd1 = i2;
+					maxDiamInd2 = jm;
+				}
+			}
+			if (init)
+			{
+				m = j;
+				init = false;
+			}
+
+			// advance caliper with minimal projection along edge
+			while (dot(px, py, m + 1, nv, xi, yi, ux, uy) < dot(px, py, m, nv, xi, yi, ux, uy))
+			{
+				m++;
+			}
+
+			// extent of polygon in the normal and edge directions
+			double width = dot(px, py, j, nv, xi, yi, nx, ny);
+			double hi = dot(px, py, k, nv, xi, yi, ux, uy);
+			double lo = dot(px, py, m, nv, xi, yi, ux, uy);
+
+			if (width < minWidth)
+			{
+				minWidth = width;
+				minWidthEdge = i;
+				minLength = hi - lo;
+			}
+
+			// evaluate the box criterion for the rectangle flush with edge
+			double value = criterion.evaluate(hi - lo, width);
+			if (value < bestValue)
+			{
+				bestValue = value;
+				bestEdge = i;
+				bestWidth = width;
+				bestLo = lo;
+				bestHi = hi;
+			}
+		}
+
+		// direction of edge with minimal width
+		int i = minWidthEdge;
+		int i2 = (i + 1) % nv;
+		double minWidthAngle = Math.atan2(py[i2] - py[i], px[i2] - px[i]);
+
+		// direction of edge of the best box
+		i = bestEdge;
+		i2 = (i + 1) % nv;
+		double edgeAngle = Math.atan2(py[i2] - py[i], px[i2] - px[i]);
+		double cot = Math.cos(edgeAngle);
+		double sit = Math.sin(edgeAngle);
+
+		// center of the box, expressed from the extents along edge and normal
+		double dl = (bestLo + bestHi) / 2;
+		double dw = bestWidth / 2;
+		double cx = x0 + px[i] + dl * cot - dw * sit;
+		double cy = y0 + py[i] + dl * sit + dw * cot;
+
+		// store angle in degrees, between 0 and 180, ensuring the length is
+		// the larger dimension
+		double boxLength = bestHi - bestLo;
+		double boxWidth = bestWidth;
+		double theta = Math.toDegrees(edgeAngle);
+		if (boxLength < boxWidth)
+		{
+			boxLength = bestWidth;
+			boxWidth = bestHi - bestLo;
+			theta += 90;
+		}
+		theta = (theta + 360) % 180;
+		OrientedBox2D box = new OrientedBox2D(cx, cy, boxLength, boxWidth, theta);
+
+		// direction of maximal diameter
+		double maxAngle = Math.atan2(py[maxDiamInd2] - py[maxDiamInd1], px[maxDiamInd2] - px[maxDiamInd1]);
+
+		return new Descriptors(minWidth, minWidthAngle - Math.PI / 2, Math.sqrt(maxDiam2), maxAngle, minLength, box);
+	}
+
+	/**
+	 * Computes the descriptors of a set of collinear points.
+	 */
+	private static final Descriptors segmentDescriptors(double[] px, double[] py, int n, double x0, double y0)
+	{
+		// find the two extremities by searching twice the most distant point
+		int ind1 = 0;
+		double d2Max = 0;
+		for (int i = 0; i < n; i++)
+		{
+			double d2 = dist2(px, py, 0, i);
+			if (d2 > d2Max)
+			{
+				d2Max = d2;
+				ind1 = i;
+			}
+		}
+		int ind2 = ind1;
+		d2Max = 0;
+		for (int i = 0; i < n; i++)
+		{
+			double d2 = dist2(px, py, ind1, i);
+			if (d2 > d2Max)
+			{
+				d2Max = d2;
+				ind2 = i;
+			}
+		}
+
+		double length = Math.sqrt(d2Max);
+		double angle = Math.atan2(py[ind2] - py[ind1], px[ind2] - px[ind1]);
+		double cx = x0 + (px[ind1] + px[ind2]) / 2;
+		double cy = y0 + (py[ind1] + py[ind2]) / 2;
+		double theta = (Math.toDegrees(angle) + 360) % 180;
+		OrientedBox2D box = new OrientedBox2D(cx, cy, length, 0, theta);
+		return new Descriptors(0, angle - Math.PI / 2, length, angle, length, box);
+	}
+
+	/**
+	 * Computes the dot product of the vector from (x0,y0) to the vertex with
+	 * index i (taken modulo n) with the vector (vx,vy).
+	 */
+	private static final double dot(double[] px, double[] py, int i, int n,
+			double x0, double y0, double vx, double vy)
+	{
+		i = i % n;
+		return Geometry2D.dot(px[i] - x0, py[i] - y0, vx, vy);
+	}
+
+	private static final double dist2(double[] px, double[] py, int i1, int i2)
+	{
+		return Geometry2D.distanceSq(px[i1], py[i1], px[i2], py[i2]);
+	}
+
+	// ====================================================
+	// Inner class
+
+	/**
+	 * Data structure containing the results of the rotating calipers
+	 * algorithm.
+	 *
+	 * @author dlegland
+	 *
+	 */
+	public static class Descriptors
+	{
+		/** The minimum Feret diameter */
+		public double minFeret;
+
+		/**
+		 * The direction of the minimum Feret diameter, in radians. The
+		 * diameter is measured along this direction.
+		 */
+		public double minFeretAngle;
+
+		/** The maximum Feret diameter */
+		public double maxFeret;
+
+		/**
+		 * The direction of the maximum Feret diameter, in radians, given by
+		 * the line joining the two most distant vertices.
+		 */
+		public double maxFeretAngle;
+
+		/**
+		 * The Feret diameter measured in the direction perpendicular to the
+		 * minimum Feret diameter.
+		 */
+		public double perpendicularFeret;
+
+		/** The oriented box that minimizes the chosen criterion */
+		public OrientedBox2D box;
+
+		public Descriptors(double minFeret, double minFeretAngle, double maxFeret, double maxFeretAngle,
+				double perpendicularFeret, OrientedBox2D box)
+		{
+			this.minFeret = minFeret;
+			this.minFeretAngle = minFeretAngle;
+			this.maxFeret = maxFeret;
+			this.maxFeretAngle = maxFeretAngle;
+			this.perpendicularFeret = perpendicularFeret;
+			this.box = box;
+		}
+
+		/**
+		 * @return the minimum Feret diameter together with its direction
+		 */
+		public FeretDiameters.AngleDiameterPair minFeretDiameter()
+		{
+			return new FeretDiameters.AngleDiameterPair(minFeretAngle, minFeret);
+		}
+
+		/**
+		 * @return the maximum Feret diameter together with its direction
+		 */
+		public FeretDiameters.AngleDiameterPair maxFeretDiameter()
+		{
+			return new FeretDiameters.AngleDiameterPair(maxFeretAngle, maxFeret);
+		}
+	}
+}
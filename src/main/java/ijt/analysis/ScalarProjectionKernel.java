@@ -0,0 +1,53 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+/**
+ * Scalar implementation of projection kernels, used when the Java Vector API
+ * is not available.
+ * 
+ * @author dlegland
+ *
+ */
+public class ScalarProjectionKernel implements ProjectionKernel
+{
+	@Override
+	public void projectionRange(double[] xCoords, double[] yCoords, int n, double ux, double uy, double[] range)
+	{
+		double pmin = Double.POSITIVE_INFINITY;
+		double pmax = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++)
+		{
+			double proj = xCoords[i] * ux + yCoords[i] * uy;
+			pmin = Math.min(pmin, proj);
+			pmax = Math.max(pmax, proj);
+		}
+		range[0] = pmin;
+		range[1] = pmax;
+	}
+
+	@Override
+	public double maxAbsCross(double[] xCoords, double[] yCoords, int n, double x0, double y0, double dx, double dy)
+	{
+		return Geometry2D.maxLineDistance(xCoords, yCoords, n, x0, y0, dx, dy, 1.0);
+	}
+
+	@Override
+	public double maxDistanceSq(double[] xCoords, double[] yCoords, int start, int n, double x0, double y0, int[] index)
+	{
+		double dist2Max = 0;
+		int indMax = -1;
+		for (int i = start; i < n; i++)
+		{
+			double dist2 = Geometry2D.distanceSq(x0, y0, xCoords[i], yCoords[i]);
+			if (dist2 > dist2Max || indMax < 0)
+			{
+				dist2Max = dist2;
+				indMax = i;
+			}
+		}
+		index[0] = indMax;
+		return dist2Max;
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Selects an algorithm among a set of registered implementations depending
+ * on the size of the input. Each implementation is associated to a minimal
+ * input size, and the implementation with the largest minimal size not
+ * exceeding the input size is selected.
+ *
+ * Registration is synchronized, whereas selection reads an immutable snapshot
+ * and can be called concurrently without locking.
+ *
+ * @param <T>
+ *            the type of algorithm
+ *
+ * @author dlegland
+ *
+ */
+public class SizeSelector<T>
+{
+	// ====================================================
+	// Class variables
+
+	/** The name of the computation stage, used for display */
+	private final String name;
+
+	/** The registered entries, sorted by increasing minimal size */
+	private volatile Entry<?>[] entries = new Entry<?>[0];
+
+
+	// ====================================================
+	// Constructor
+
+	/**
+	 * Creates a new selector without any registered algorithm.
+	 *
+	 * @param name
+	 *            the name of the computation stage
+	 */
+	public SizeSelector(String name)
+	{
+		this.name = name;
+	}
+
+
+	// ====================================================
+	// Methods
+
+	/**
+	 * Registers an algorithm for inputs with size greater than or equal to
+	 * the specified size. If the algorithm was already registered, its
+	 * minimal size is updated. If another algorithm was registered with the
+	 * same minimal size, it is replaced.
+	 *
+	 * @param minSize
+	 *            the minimal input size for using this algorithm
+	 * @param algorithm
+	 *            the algorithm to register
+	 */
+	public synchronized void register(int minSize, T algorithm)
+	{
+		ArrayList<Entry<?>> list = new ArrayList<Entry<?>>(this.entries.length + 1);
+		for (Entry<?> entry : this.entries)
+		{
+			if (entry.algorithm != algorithm && entry.minSize != minSize)
+			{
+				list.add(entry);
+			}
+		}
+		list.add(new Entry<T>(minSize, algorithm));
+
+		Entry<?>[] array = list.toArray(new Entry<?>[list.size()]);
+		Arrays.sort(array);
+		this.entries = array;
+	}
+
+	/**
+	 * Selects the algorithm to use for the specified input size. If the size
+	 * is smaller than every registered minimal size, the algorithm with the
+	 * smallest minimal size is returned.
+	 *
+	 * @param size
+	 *            the size of the input
+	 * @return the algorithm registered for this size
+	 * @throws IllegalStateException
+	 *             if no algorithm has been registered
+	 */
+	@SuppressWarnings("unchecked")
+	public T select(int size)
+	{
+		Entry<?>[] entries = this.entries;
+		if (entries.length == 0)
+		{
+			throw new IllegalStateException("No algorithm registered for stage: " + name);
+		}
+
+		Entry<?> selected = entries[0];
+		for (int i = 1; i < entries.length && entries[i].minSize <= size; i++)
+		{
+			selected = entries[i];
+		}
+		return (T) selected.algorithm;
+	}
+
+	/**
+	 * Returns the minimal input size associated to an algorithm.
+	 *
+	 * @param algorithm
+	 *            a registered algorithm
+	 * @return the minimal input size for this algorithm, or -1 if the
+	 *         algorithm is not registered
+	 */
+	public int getMinSize(T algorithm)
+	{
+		for (Entry<?> entry : this.entries)
+		{
+			if (entry.algorithm == algorithm)
+			{
+				return entry.minSize;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the name of the computation stage
+	 */
+	public String getName()
+	{
+		return this.name;
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.name + Arrays.toString(this.entries);
+	}
+
+
+	// ====================================================
+	// Inner class
+
+	private static final class Entry<T> implements Comparable<Entry<?>>
+	{
+		final int minSize;
+		final T algorithm;
+
+		Entry(int minSize, T algorithm)
+		{
+			this.minSize = minSize;
+			this.algorithm = algorithm;
+		}
+
+		@Override
+		public int compareTo(Entry<?> that)
+		{
+			return Integer.compare(this.minSize, that.minSize);
+		}
+
+		@Override
+		public String toString()
+		{
+			return this.minSize + ":" + this.algorithm;
+		}
+	}
+}
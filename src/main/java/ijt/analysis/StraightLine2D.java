@@ -9,12 +9,16 @@ public class StraightLine2D
 	double dx;
 	double dy;
 	
+	/** inverse of the norm of the direction vector, or NaN if too small */
+	double invNorm;
+	
 	public StraightLine2D(Point2D origin, Vector2D direction)
 	{
 		this.x0 = origin.getX();
 		this.y0 = origin.getY();
 		this.dx = direction.getX();
 		this.dy = direction.getY();
+		this.invNorm = Geometry2D.inverseNorm(this.dx, this.dy);
 	}
 
 	public StraightLine2D(Point2D source, Point2D target)
@@ -23,6 +27,7 @@ public class StraightLine2D
 		this.y0 = source.getY();
 		this.dx = target.getX() - this.x0;
 		this.dy = target.getY() - this.y0;
+		this.invNorm = Geometry2D.inverseNorm(this.dx, this.dy);
 	}
 	
 	
@@ -39,23 +44,12 @@ public class StraightLine2D
 
 	public double distance(Point2D point)
 	{
-		// squared norm of direction, to check of validity
-		double delta = (this.dx * this.dx + this.dy * this.dy);
-		if (delta < 1e-12)
+		// check validity of direction vector
+		if (Double.isNaN(this.invNorm))
 		{
 			throw new RuntimeException("Direction vector of line is too small");
 		}
 
-		// difference of coordinates between point and line origin 
-		double xDiff  = point.getX() - this.x0;
-		double yDiff  = point.getY() - this.y0;
-
-		// compute position of points projected on the supporting line, by using
-		// normalised dot product
-		double pos = (xDiff * this.dx + yDiff * this.dy) / delta;
-
-		// compute distance between point and its projection on the edge
-		double dist = Math.hypot(pos * this.dx - xDiff, pos * this.dy - yDiff);
-		return dist;
+		return Geometry2D.lineDistance(this.x0, this.y0, this.dx, this.dy, this.invNorm, point.getX(), point.getY());
 	}
 }
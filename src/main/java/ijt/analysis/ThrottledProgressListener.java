@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import ij.IJ;
+
+/**
+ * A progress listener that reports progress at most once per time interval.
+ *
+ * Processed items are counted with a LongAdder, so that worker threads do
+ * not contend on a single counter. When the interval has elapsed, the first
+ * thread that notices it sums the counts and reports the progress, while
+ * the other threads go on with their computation.
+ *
+ * By default, progress is displayed in the status bar of ImageJ. Subclasses
+ * can override the report() method for displaying progress elsewhere.
+ *
+ * @author dlegland
+ *
+ */
+public class ThrottledProgressListener implements ProgressListener
+{
+	// ====================================================
+	// Class variables
+
+	/** The minimum time between two reports, in nanoseconds */
+	private final long intervalNanos;
+
+	/** The number of processed items */
+	private final LongAdder done = new LongAdder();
+
+	/** The time of the next report, as given by System.nanoTime() */
+	private final AtomicLong nextReport = new AtomicLong();
+
+	/** The description of the current computation */
+	private volatile String status = "";
+
+	/** The number of items to process */
+	private volatile long total = 0;
+
+
+	// ====================================================
+	// Constructors
+
+	/**
+	 * Creates a new listener that reports progress at most every 100
+	 * milliseconds.
+	 */
+	public ThrottledProgressListener()
+	{
+		this(100);
+	}
+
+	/**
+	 * Creates a new listener that reports progress at most once per time
+	 * interval.
+	 *
+	 * @param intervalMillis
+	 *            the minimum time between two reports, in milliseconds
+	 */
+	public ThrottledProgressListener(long intervalMillis)
+	{
+		if (intervalMillis < 0)
+		{
+			throw new IllegalArgumentException("Interval must be positive, not " + intervalMillis);
+		}
+		this.intervalNanos = intervalMillis * 1000000L;
+	}
+
+
+	// ====================================================
+	// Implementation of the ProgressListener interface
+
+	@Override
+	public void start(String status, long total)
+	{
+		this.status = status;
+		this.total = total;
+		this.done.reset();
+		this.nextReport.set(System.nanoTime() + this.intervalNanos);
+		report(status, 0, total);
+	}
+
+	@Override
+	public void progress(long count)
+	{
+		this.done.add(count);
+
+		long next = this.nextReport.get();
+		long now = System.nanoTime();
+		if (now - next >= 0 && this.nextReport.compareAndSet(next, now + this.intervalNanos))
+		{
+			report(this.status, this.done.sum(), this.total);
+		}
+	}
+
+	@Override
+	public void finish()
+	{
+		report(this.status, this.done.sum(), this.total);
+	}
+
+
+	// ====================================================
+	// Methods
+
+	/**
+	 * @return the number of items processed since the computation started
+	 */
+	public long getDone()
+	{
+		return this.done.sum();
+	}
+
+	/**
+	 * Displays the progress of the computation. Called at most once per time
+	 * interval, and when the computation starts and finishes.
+	 *
+	 * @param status
+	 *            the description of the computation
+	 * @param done
+	 *            the number of processed items
+	 * @param total
+	 *            the number of items to process
+	 */
+	protected void report(String status, long done, long total)
+	{
+		if (done == 0)
+		{
+			IJ.showStatus(status);
+		}
+		IJ.showProgress(total > 0 ? (double) done / total : 1.0);
+	}
+}
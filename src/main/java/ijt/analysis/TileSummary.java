@@ -0,0 +1,511 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ij.process.ImageProcessor;
+
+/**
+ * Summary of the labels found within a tile of a large label image, that
+ * can be merged with the summaries of other tiles to obtain the oriented
+ * boxes of the whole image.
+ *
+ * For each label, the summary contains the convex hull of the pixel corners
+ * of the label within the tile, the number of pixels, and the bounding box,
+ * all expressed in the coordinates of the whole image. As the convex hull of
+ * a union of point sets is the convex hull of their hulls, and as hull
+ * vertices are located at integer coordinates, merging summaries gives
+ * exactly the same result as processing the whole image at once, whatever
+ * the order of merging.
+ *
+ * Summaries can be written to and read from a compact binary format, so that
+ * tiles can be processed by separate processes.
+ *
+ * Binary format (big endian): magic number, format version, number of
+ * labels, then for each label: the label, the number of pixels as a long,
+ * the bounding box as four integers (x, y, width, height), the number of
+ * hull vertices, and the integer coordinates of each hull vertex.
+ *
+ * @author dlegland
+ *
+ */
+public class TileSummary
+{
+	// ====================================================
+	// Static constants
+
+	/** The magic number at the beginning of each summary ("OBT1") */
+	private static final int MAGIC = 0x4F425431;
+
+	/** The version of the binary format */
+	private static final int VERSION = 1;
+
+
+	// ====================================================
+	// Class variables
+
+	/** The summary of each label, sorted by label */
+	final TreeMap<Integer, LabelSummary> labelSummaries;
+
+
+	// ====================================================
+	// Static factories
+
+	/**
+	 * Computes the summary of the labels within a tile.
+	 *
+	 * @param tile
+	 *            a label image (8, 16 or 32 bits) corresponding to a tile of
+	 *            a larger image
+	 * @param x0
+	 *            the x-coordinate of the tile within the whole image
+	 * @param y0
+	 *            the y-coordinate of the tile within the whole image
+	 * @return the summary of the labels within the tile
+	 */
+	public static final TileSummary compute(ImageProcessor tile, int x0, int y0)
+	{
+		// scan the tile once, to obtain the pixel count and the extent of
+		// each label within each row
+		OrientedBoxCalculator.ScanBuffers scan = new OrientedBoxCalculator.ScanBuffers(false);
+		scan.scan(tile);
+		int nLabels = scan.nLabels;
+
+		// compute the bounds of each label, and the corners of the first
+		// and last pixel of each row, that are enough for computing the hull
+		Rectangle[] bounds = new Rectangle[nLabels];
+		@SuppressWarnings("unchecked")
+		ArrayList<Point2D>[] corners = (ArrayList<Point2D>[]) new ArrayList<?>[nLabels];
+		for (int i = 0; i < nLabels; i++)
+		{
+			int first = scan.rowOffsets.get(i);
+			int last = scan.rowOffsets.get(i + 1);
+			int xmin = Integer.MAX_VALUE;
+			int xmax = Integer.MIN_VALUE;
+			corners[i] = new ArrayList<Point2D>(4 * (last - first));
+			for (int row = first; row < last; row++)
+			{
+				int y = scan.rowY.get(row);
+				int rowMin = scan.rowMin.get(row);
+				int rowMax = scan.rowMax.get(row);
+				xmin = Math.min(xmin, rowMin);
+				xmax = Math.max(xmax, rowMax);
+				corners[i].add(new Point2D.Double(rowMin, y));
+				corners[i].add(new Point2D.Double(rowMin, y + 1));
+				corners[i].add(new Point2D.Double(rowMax, y));
+				corners[i].add(new Point2D.Double(rowMax, y + 1));
+			}
+			int ymin = scan.rowY.get(first);
+			int ymax = scan.rowY.get(last - 1);
+			bounds[i] = new Rectangle(xmin + x0, ymin + y0, xmax - xmin, ymax - ymin + 1);
+		}
+
+		// compute the hull of the corners of each label
+		@SuppressWarnings("unchecked")
+		ArrayList<Point2D>[] hulls = (ArrayList<Point2D>[]) new ArrayList<?>[nLabels];
+		FeretAlgorithms.hullsAndBoxes(corners, null, hulls, null);
+
+		TreeMap<Integer, LabelSummary> summaries = new TreeMap<Integer, LabelSummary>();
+		for (int i = 0; i < nLabels; i++)
+		{
+			summaries.put(scan.labels.get(i), new LabelSummary(integerHull(hulls[i], x0, y0),
+					scan.pixelCounts.get(i), bounds[i]));
+		}
+		return new TileSummary(summaries);
+	}
+
+	/**
+	 * Reads a summary from its binary representation.
+	 *
+	 * @param stream
+	 *            the stream to read from
+	 * @return the summary read from the stream
+	 * @throws IOException
+	 *             if the stream could not be read, or does not contain a
+	 *             summary
+	 */
+	public static final TileSummary read(InputStream stream) throws IOException
+	{
+		DataInputStream in = new DataInputStream(stream);
+		if (in.readInt() != MAGIC)
+		{
+			throw new IOException("Stream does not contain a tile summary");
+		}
+		int version = in.readInt();
+		if (version != VERSION)
+		{
+			throw new IOException("Unsupported tile summary version: " + version);
+		}
+
+		TreeMap<Integer, LabelSummary> summaries = new TreeMap<Integer, LabelSummary>();
+		int nLabels = in.readInt();
+		for (int i = 0; i < nLabels; i++)
+		{
+			int label = in.readInt();
+			long pixelCount = in.readLong();
+			Rectangle bounds = new Rectangle(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+			int nVertices = in.readInt();
+			int[] hullX = new int[nVertices];
+			int[] hullY = new int[nVertices];
+			for (int k = 0; k < nVertices; k++)
+			{
+				hullX[k] = in.readInt();
+				hullY[k] = in.readInt();
+			}
+			summaries.put(label, new LabelSummary(hullX, hullY, pixelCount, bounds));
+		}
+		return new TileSummary(summaries);
+	}
+
+	/**
+	 * Creates a summary from its binary representation.
+	 *
+	 * @param bytes
+	 *            the binary representation of a summary
+	 * @return the summary
+	 * @throws IOException
+	 *             if the array does not contain a summary
+	 */
+	public static final TileSummary fromByteArray(byte[] bytes) throws IOException
+	{
+		return read(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * Computes the convex hull of a set of integer points, using the monotone
+	 * chain algorithm with exact integer arithmetic. The hull starts from the
+	 * point with the smallest coordinates, does not contain collinear
+	 * vertices, and is oriented counter-clockwise in a y-up coordinate
+	 * system. The same set of points therefore always gives the same
+	 * sequence of vertices.
+	 */
+	static final int[][] convexHull(int[] xs, int[] ys, int n)
+	{
+		// sort points by x, then by y, using keys that preserve the order of
+		// signed coordinates
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++)
+		{
+			keys[i] = ((long) xs[i] << 32) | ((long) ys[i] - Integer.MIN_VALUE);
+		}
+		Arrays.sort(keys);
+
+		int[] px = new int[n];
+		int[] py = new int[n];
+		int np = 0;
+		for (int i = 0; i < n; i++)
+		{
+			if (i > 0 && keys[i] == keys[i - 1])
+			{
+				continue;
+			}
+			px[np] = (int) (keys[i] >> 32);
+			py[np] = (int) ((keys[i] & 0xFFFFFFFFL) + Integer.MIN_VALUE);
+			np++;
+		}
+		if (np < 3)
+		{
+			return new int[][] { Arrays.copyOf(px, np), Arrays.copyOf(py, np) };
+		}
+
+		// lower hull, then upper hull
+		int[] hx = new int[2 * np];
+		int[] hy = new int[2 * np];
+		int nh = 0;
+		for (int i = 0; i < np; i++)
+		{
+			while (nh >= 2 && cross(hx[nh - 2], hy[nh - 2], hx[nh - 1], hy[nh - 1], px[i], py[i]) <= 0)
+			{
+				nh--;
+			}
+			hx[nh] = px[i];
+			hy[nh] = py[i];
+			nh++;
+		}
+		int lower = nh + 1;
+		for (int i = np - 2; i >= 0; i--)
+		{
+			while (nh >= lower && cross(hx[nh - 2], hy[nh - 2], hx[nh - 1], hy[nh - 1], px[i], py[i]) <= 0)
+			{
+				nh--;
+			}
+			hx[nh] = px[i];
+			hy[nh] = py[i];
+			nh++;
+		}
+
+		// the last point is the same as the first one
+		nh--;
+		return new int[][] { Arrays.copyOf(hx, nh), Arrays.copyOf(hy, nh) };
+	}
+
+	/**
+	 * Converts the vertices of a hull with integer coordinates into the
+	 * coordinates of the whole image, and into the canonical vertex sequence
+	 * given by the integer hull algorithm.
+	 */
+	private static final int[][] integerHull(ArrayList<Point2D> hull, int x0, int y0)
+	{
+		int n = hull.size();
+		int[] xs = new int[n];
+		int[] ys = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			xs[i] = (int) hull.get(i).getX() + x0;
+			ys[i] = (int) hull.get(i).getY() + y0;
+		}
+		return convexHull(xs, ys, n);
+	}
+
+	private static final long cross(int x0, int y0, int x1, int y1, int x2, int y2)
+	{
+		return ((long) x1 - x0) * ((long) y2 - y0) - ((long) y1 - y0) * ((long) x2 - x0);
+	}
+
+
+	// ====================================================
+	// Constructor
+
+	private TileSummary(TreeMap<Integer, LabelSummary> labelSummaries)
+	{
+		this.labelSummaries = labelSummaries;
+	}
+
+
+	// ====================================================
+	// Accessors
+
+	/**
+	 * @return the labels present within the summary, by increasing value
+	 */
+	public int[] getLabels()
+	{
+		int[] labels = new int[this.labelSummaries.size()];
+		int index = 0;
+		for (int label : this.labelSummaries.keySet())
+		{
+			labels[index++] = label;
+		}
+		return labels;
+	}
+
+	/**
+	 * @param label
+	 *            a label
+	 * @return the number of pixels of the label, or 0 if the label is not
+	 *         present
+	 */
+	public long getPixelCount(int label)
+	{
+		LabelSummary summary = this.labelSummaries.get(label);
+		return summary == null ? 0 : summary.pixelCount;
+	}
+
+	/**
+	 * @param label
+	 *            a label
+	 * @return the bounding box of the pixels of the label, or null if the
+	 *         label is not present
+	 */
+	public Rectangle getBounds(int label)
+	{
+		LabelSummary summary = this.labelSummaries.get(label);
+		return summary == null ? null : new Rectangle(summary.bounds);
+	}
+
+	/**
+	 * @param label
+	 *            a label
+	 * @return the convex hull of the pixel corners of the label, or null if
+	 *         the label is not present
+	 */
+	public ArrayList<Point2D> getConvexHull(int label)
+	{
+		LabelSummary summary = this.labelSummaries.get(label);
+		return summary == null ? null : summary.hull();
+	}
+
+
+	// ====================================================
+	// Methods
+
+	/**
+	 * Merges this summary with the summary of another tile. Tiles are
+	 * expected not to overlap. This summary and the other one are not
+	 * modified.
+	 *
+	 * @param other
+	 *            the summary of another tile
+	 * @return the summary of the union of the two tiles
+	 */
+	public TileSummary merge(TileSummary other)
+	{
+		TreeMap<Integer, LabelSummary> merged = new TreeMap<Integer, LabelSummary>(this.labelSummaries);
+		for (Map.Entry<Integer, LabelSummary> entry : other.labelSummaries.entrySet())
+		{
+			LabelSummary summary = merged.get(entry.getKey());
+			merged.put(entry.getKey(), summary == null ? entry.getValue() : summary.merge(entry.getValue()));
+		}
+		return new TileSummary(merged);
+	}
+
+	/**
+	 * Computes the oriented box of each label from its convex hull.
+	 *
+	 * @param criterion
+	 *            the quantity minimized by each box (width, area or perimeter)
+	 * @return the table of oriented boxes
+	 */
+	public OrientedBoxTable toBoxes(final OrientedBox2D.Criterion criterion)
+	{
+		int nLabels = this.labelSummaries.size();
+		final int[] labels = getLabels();
+		final LabelSummary[] summaries = this.labelSummaries.values().toArray(new LabelSummary[nLabels]);
+		final OrientedBox2D[] boxes = new OrientedBox2D[nLabels];
+
+		int[] sizes = new int[nLabels];
+		for (int i = 0; i < nLabels; i++)
+		{
+			sizes[i] = summaries[i].hullX.length;
+		}
+		LabelTasks.forEach(sizes, new LabelTasks.Task()
+		{
+			@Override
+			public void process(int index)
+			{
+				boxes[index] = FeretAlgorithms.box(summaries[index].hull(), criterion);
+			}
+		});
+
+		return OrientedBoxTable.fromBoxes(labels, boxes);
+	}
+
+	/**
+	 * Writes the binary representation of this summary.
+	 *
+	 * @param stream
+	 *            the stream to write to
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void write(OutputStream stream) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(stream);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(this.labelSummaries.size());
+		for (Map.Entry<Integer, LabelSummary> entry : this.labelSummaries.entrySet())
+		{
+			LabelSummary summary = entry.getValue();
+			out.writeInt(entry.getKey());
+			out.writeLong(summary.pixelCount);
+			out.writeInt(summary.bounds.x);
+			out.writeInt(summary.bounds.y);
+			out.writeInt(summary.bounds.width);
+			out.writeInt(summary.bounds.height);
+			out.writeInt(summary.hullX.length);
+			for (int k = 0; k < summary.hullX.length; k++)
+			{
+				out.writeInt(summary.hullX[k]);
+				out.writeInt(summary.hullY[k]);
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * @return the binary representation of this summary
+	 */
+	public byte[] toByteArray()
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try
+		{
+			write(bytes);
+		}
+		catch (IOException ex)
+		{
+			// can not occur with byte array streams
+			throw new RuntimeException(ex);
+		}
+		return bytes.toByteArray();
+	}
+
+
+	// ====================================================
+	// Inner class
+
+	/**
+	 * The summary of a single label within a tile. Instances are not
+	 * modified once created, and can be shared by several tile summaries.
+	 */
+	static final class LabelSummary
+	{
+		/** The coordinates of the hull vertices */
+		final int[] hullX;
+		final int[] hullY;
+
+		/** The number of pixels */
+		final long pixelCount;
+
+		/** The bounding box of the pixels */
+		final Rectangle bounds;
+
+		LabelSummary(int[][] hull, long pixelCount, Rectangle bounds)
+		{
+			this(hull[0], hull[1], pixelCount, bounds);
+		}
+
+		LabelSummary(int[] hullX, int[] hullY, long pixelCount, Rectangle bounds)
+		{
+			this.hullX = hullX;
+			this.hullY = hullY;
+			this.pixelCount = pixelCount;
+			this.bounds = bounds;
+		}
+
+		/**
+		 * Merges the summaries of the same label within two tiles.
+		 */
+		LabelSummary merge(LabelSummary other)
+		{
+			int n1 = this.hullX.length;
+			int n2 = other.hullX.length;
+			int[] xs = Arrays.copyOf(this.hullX, n1 + n2);
+			int[] ys = Arrays.copyOf(this.hullY, n1 + n2);
+			System.arraycopy(other.hullX, 0, xs, n1, n2);
+			System.arraycopy(other.hullY, 0, ys, n1, n2);
+			int[][] hull = convexHull(xs, ys, n1 + n2);
+
+			return new LabelSummary(hull[0], hull[1], this.pixelCount + other.pixelCount,
+					this.bounds.union(other.bounds));
+		}
+
+		/**
+		 * Converts the hull vertices into a list of points.
+		 */
+		ArrayList<Point2D> hull()
+		{
+			ArrayList<Point2D> hull = new ArrayList<Point2D>(this.hullX.length);
+			for (int k = 0; k < this.hullX.length; k++)
+			{
+				hull.add(new Point2D.Double(this.hullX[k], this.hullY[k]));
+			}
+			return hull;
+		}
+	}
+}
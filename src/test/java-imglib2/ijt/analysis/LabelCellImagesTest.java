@@ -0,0 +1,92 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.integer.IntType;
+
+/**
+ * @author dlegland
+ *
+ */
+public class LabelCellImagesTest
+{
+	@Test
+	public void testOrientedBoxTable_smallCells()
+	{
+		// labels span several cells of 8x8 pixels, and the image size is not
+		// a multiple of the cell size
+		int width = 45;
+		int height = 37;
+		ImageProcessor image = new FloatProcessor(width, height);
+		CellImg<IntType, ?> cellImage = new CellImgFactory<IntType>(8).create(new long[] { width, height }, new IntType());
+		RandomAccess<IntType> access = cellImage.randomAccess();
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				int label = 0;
+				double dx = x - 15.3;
+				double dy = y - 12.8;
+				if (dx * dx / 150 + dy * dy / 40 + dx * dy / 120 <= 1)
+				{
+					label = 3;
+				}
+				else if (x >= 28 && x < 42 && y >= 4 + x / 3 && y < 14 + x / 3)
+				{
+					label = 12;
+				}
+				else if (y >= 27 && y < 35 && x >= 2 && x < 24 && (x + y) % 7 != 0)
+				{
+					// several runs within each row, across cells
+					label = 250;
+				}
+				image.setf(x, y, label);
+				access.setPosition(new long[] { x, y });
+				access.get().set(label);
+			}
+		}
+
+		for (OrientedBox2D.Criterion criterion : OrientedBox2D.Criterion.values())
+		{
+			OrientedBoxTable expected = OrientedBox2D.orientedBoxTable(image, criterion);
+			assertEquals(3, expected.size());
+
+			// process twice, to check that tile buffers are correctly reused
+			for (int run = 0; run < 2; run++)
+			{
+				OrientedBoxTable table = LabelCellImages.orientedBoxTable(cellImage, criterion);
+				assertArrayEquals(expected.labels, table.labels);
+				for (int i = 0; i < expected.size(); i++)
+				{
+					assertEquals(criterion.evaluate(expected.length[i], expected.width[i]),
+							criterion.evaluate(table.length[i], table.width[i]), 1e-8);
+				}
+			}
+		}
+
+		// pixel counts
+		TileSummary summary = LabelCellImages.summarize(cellImage);
+		int[] counts = new int[251];
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				counts[(int) image.getf(x, y)]++;
+			}
+		}
+		for (int label : summary.getLabels())
+		{
+			assertEquals(counts[label], summary.getPixelCount(label));
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * @author dlegland
+ *
+ */
+public class CancellationTokenTest
+{
+	@Test
+	public void testCancel()
+	{
+		CancellationToken token = new CancellationToken();
+		assertFalse(token.isCancelled());
+
+		token.cancel();
+		assertTrue(token.isCancelled());
+	}
+
+	@Test
+	public void testIsCancelled_deadline() throws InterruptedException
+	{
+		CancellationToken token = new CancellationToken(10);
+		Thread.sleep(50);
+		assertTrue(token.isCancelled());
+	}
+
+	@Test
+	public void testIsCancelled_noDeadline()
+	{
+		CancellationToken token = new CancellationToken(60000);
+		assertFalse(token.isCancelled());
+	}
+
+	@Test
+	public void testIsCancelled_threadInterrupted()
+	{
+		Thread thread = new Thread();
+		CancellationToken token = new CancellationToken(0, thread, false);
+		assertFalse(token.isCancelled());
+
+		thread.interrupt();
+		assertTrue(token.isCancelled());
+	}
+
+	@Test
+	public void testIsCancelled_nullToken()
+	{
+		assertFalse(CancellationToken.isCancelled(null));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_negativeTimeout()
+	{
+		new CancellationToken(-1);
+	}
+
+	@Test
+	public void testOrientedBoxTable_cancelled()
+	{
+		ImageProcessor image = createImage();
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+
+		OrientedBoxTable table = OrientedBox2D.orientedBoxTable(image, OrientedBox2D.Criterion.MIN_WIDTH, token);
+		assertFalse(table.isComplete());
+		assertEquals(0, table.size());
+	}
+
+	@Test
+	public void testOrientedBoxTable_notCancelled()
+	{
+		ImageProcessor image = createImage();
+		CancellationToken token = new CancellationToken();
+
+		OrientedBoxTable table = OrientedBox2D.orientedBoxTable(image, OrientedBox2D.Criterion.MIN_WIDTH, token);
+		assertTrue(table.isComplete());
+		assertEquals(2, table.size());
+	}
+
+	private static final ImageProcessor createImage()
+	{
+		ImageProcessor image = new ByteProcessor(20, 20);
+		for (int y = 2; y < 8; y++)
+		{
+			for (int x = 2; x < 12; x++)
+			{
+				image.set(x, y, 3);
+			}
+		}
+		for (int y = 10; y < 18; y++)
+		{
+			for (int x = 5; x < 9; x++)
+			{
+				image.set(x, y, 7);
+			}
+		}
+		return image;
+	}
+}
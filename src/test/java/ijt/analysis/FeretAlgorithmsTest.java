@@ -0,0 +1,88 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import ijt.analysis.FeretDiameters.AngleDiameterPair;
+
+/**
+ * @author dlegland
+ *
+ */
+public class FeretAlgorithmsTest
+{
+	@Test
+	public void testSizeSelector_select()
+	{
+		SizeSelector<String> selector = new SizeSelector<String>("Test");
+		selector.register(0, "small");
+		selector.register(10, "large");
+		
+		assertEquals("small", selector.select(0));
+		assertEquals("small", selector.select(9));
+		assertEquals("large", selector.select(10));
+		assertEquals("large", selector.select(1000));
+	}
+
+	@Test
+	public void testSizeSelector_registerAgain()
+	{
+		SizeSelector<String> selector = new SizeSelector<String>("Test");
+		selector.register(0, "small");
+		selector.register(10, "large");
+		selector.register(20, "large");
+		
+		assertEquals(20, selector.getMinSize("large"));
+		assertEquals("small", selector.select(15));
+		assertEquals("large", selector.select(25));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSizeSelector_empty()
+	{
+		SizeSelector<String> selector = new SizeSelector<String>("Test");
+		selector.select(10);
+	}
+
+	/**
+	 * Compares brute force and rotating calipers algorithms on polygons with
+	 * various number of vertices.
+	 */
+	@Test
+	public void testBuiltInAlgorithms_sameResults()
+	{
+		for (int n = 3; n < 40; n++)
+		{
+			ArrayList<Point2D> points = new ArrayList<Point2D>(n);
+			for (int i = 0; i < n; i++)
+			{
+				double t = 2 * Math.PI * i / n + 0.1;
+				points.add(new Point2D.Double(50 + 30 * Math.cos(t), 40 + 20 * Math.sin(t)));
+			}
+			ArrayList<Point2D> hull = FeretAlgorithms.MONOTONE_CHAIN.convexHull(points);
+			assertEquals(n, hull.size());
+			
+			AngleDiameterPair min1 = FeretAlgorithms.MIN_WIDTH_BRUTE_FORCE.minWidth(hull);
+			AngleDiameterPair min2 = FeretAlgorithms.MIN_WIDTH_CALIPERS.minWidth(hull);
+			assertEquals(min1.diameter, min2.diameter, 1e-8);
+			
+			AngleDiameterPair max1 = FeretAlgorithms.MAX_DIAMETER_BRUTE_FORCE.maxDiameter(hull);
+			AngleDiameterPair max2 = FeretAlgorithms.MAX_DIAMETER_CALIPERS.maxDiameter(hull);
+			assertEquals(max1.diameter, max2.diameter, 1e-8);
+			
+			for (OrientedBox2D.Criterion criterion : OrientedBox2D.Criterion.values())
+			{
+				OrientedBox2D box1 = FeretAlgorithms.BOX_BRUTE_FORCE.box(hull, criterion);
+				OrientedBox2D box2 = FeretAlgorithms.BOX_CALIPERS.box(hull, criterion);
+				assertEquals(criterion.evaluate(box1.length, box1.width), criterion.evaluate(box2.length, box2.width), 1e-8);
+			}
+		}
+	}
+}
@@ -5,6 +5,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import java.awt.Point;
+import java.awt.geom.Point2D;
 import java.util.ArrayList;
 
 import org.junit.Test;
@@ -46,6 +47,34 @@ public class FeretDiametersTest
 	}
 
 
+	@Test
+	public void minFeretDiameterRotatingCaliper_circles()
+	{
+		String fileName = getClass().getResource("/files/circles.tif").getFile();
+		ImagePlus imagePlus = IJ.openImage(fileName);
+		assertNotNull(imagePlus);
+		
+		ImageProcessor image = imagePlus.getProcessor();
+		ArrayList<Point2D> points = FeretDiameters.binaryParticleCorners(image);
+		double diameter = FeretDiameters.minFeretDiameterRotatingCaliper(points).diameter;
+		
+		assertEquals(108.86, diameter, .01);
+	}
+
+	@Test
+	public void maxFeretDiameter_Points_rect1()
+	{
+		ArrayList<Point> points = new ArrayList<Point>();
+		points.add(new Point(20, 30));
+		points.add(new Point(20, 80));
+		points.add(new Point(50, 30));
+		points.add(new Point(50, 80));
+		
+		FeretDiameters.AngleDiameterPair pair = FeretDiameters.maxFeretDiameter(points);
+		assertEquals(Math.hypot(30, 50), pair.diameter, .01);
+		assertEquals(Math.abs(Math.atan2(50, 30)), Math.abs(pair.angle), .01);
+	}
+
 	@Test
 	public void minFeretDiameter_Points_rect1()
 	{
@@ -66,4 +95,24 @@ public class FeretDiametersTest
 		assertEquals(20, minDiam, .01);
 	}
 
+	@Test
+	public void labelFeretDiameters_grains()
+	{
+		String fileName = getClass().getResource("/files/grains-WTH-areaOpen-lbl2.tif").getFile();
+		ImagePlus imagePlus = IJ.openImage(fileName);
+		assertNotNull(imagePlus);
+		
+		ImageProcessor image = imagePlus.getProcessor();
+		FeretDiameters.LabelDiameters diameters = FeretDiameters.labelFeretDiameters(image);
+		
+		// compare with the diameters computed for each label
+		int[] labels = diameters.labels;
+		ArrayList<Point2D>[] corners = OrientedBox2D.computeLabelsCornersArray(image, labels);
+		for (int i = 0; i < labels.length; i++)
+		{
+			assertEquals(FeretDiameters.minFeretDiameterNaive(corners[i]).diameter, diameters.minFeret[i], 1e-8);
+			assertEquals(FeretDiameters.maxFeretDiameter(corners[i]).diameter, diameters.maxFeret[i], 1e-8);
+		}
+	}
+
 }
@@ -0,0 +1,107 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * @author dlegland
+ *
+ */
+public class FeretProfilesTest
+{
+	@Test
+	public void testFeretProfile_rectangle()
+	{
+		ArrayList<Point2D> vertices = new ArrayList<Point2D>(4);
+		vertices.add(new Point2D.Double(10, 20));
+		vertices.add(new Point2D.Double(10+30, 20));
+		vertices.add(new Point2D.Double(10+30, 20+40));
+		vertices.add(new Point2D.Double(10, 20+40));
+
+		int nAngles = 12;
+		double[] profile = FeretProfiles.feretProfile(vertices, nAngles);
+
+		assertEquals(nAngles, profile.length);
+		for (int k = 0; k < nAngles; k++)
+		{
+			double angle = k * Math.PI / nAngles;
+			double exp = 30 * Math.abs(Math.cos(angle)) + 40 * Math.abs(Math.sin(angle));
+			assertEquals(exp, profile[k], 1e-8);
+		}
+	}
+
+	/**
+	 * Compares the profile with the projection of each vertex, for a convex
+	 * polygon with more vertices than sampling angles.
+	 */
+	@Test
+	public void testFeretProfile_polygon()
+	{
+		ArrayList<Point2D> vertices = new ArrayList<Point2D>();
+		int nv = 25;
+		for (int i = 0; i < nv; i++)
+		{
+			double t = 2 * Math.PI * i / nv;
+			vertices.add(new Point2D.Double(50 + 30 * Math.cos(t), 40 - 15 * Math.sin(t)));
+		}
+
+		int nAngles = 7;
+		double[] profile = FeretProfiles.feretProfile(vertices, nAngles);
+
+		for (int k = 0; k < nAngles; k++)
+		{
+			double angle = k * Math.PI / nAngles;
+			double ux = Math.cos(angle);
+			double uy = Math.sin(angle);
+			double pmin = Double.POSITIVE_INFINITY;
+			double pmax = Double.NEGATIVE_INFINITY;
+			for (Point2D p : vertices)
+			{
+				double proj = p.getX() * ux + p.getY() * uy;
+				pmin = Math.min(pmin, proj);
+				pmax = Math.max(pmax, proj);
+			}
+			assertEquals(pmax - pmin, profile[k], 1e-8);
+		}
+	}
+
+	@Test
+	public void testFeretProfiles_labelImage()
+	{
+		ImageProcessor image = new ByteProcessor(20, 20);
+		// a 6x3 rectangle with label 2
+		for (int y = 2; y < 5; y++)
+		{
+			for (int x = 2; x < 8; x++)
+			{
+				image.set(x, y, 2);
+			}
+		}
+		// a 2x5 rectangle with label 5
+		for (int y = 10; y < 15; y++)
+		{
+			for (int x = 12; x < 14; x++)
+			{
+				image.set(x, y, 5);
+			}
+		}
+
+		double[][] profiles = FeretProfiles.feretProfiles(image, new int[] { 2, 5 }, 4);
+
+		assertEquals(2, profiles.length);
+		assertEquals(6, profiles[0][0], 1e-8);
+		assertEquals(3, profiles[0][2], 1e-8);
+		assertEquals(2, profiles[1][0], 1e-8);
+		assertEquals(5, profiles[1][2], 1e-8);
+	}
+}
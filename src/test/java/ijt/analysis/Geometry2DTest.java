@@ -0,0 +1,66 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author dlegland
+ *
+ */
+public class Geometry2DTest
+{
+	@Test
+	public void testPseudoAngle_monotonic()
+	{
+		double previous = -1;
+		for (int i = 0; i < 360; i++)
+		{
+			double angle = Math.toRadians(i);
+			double pseudoAngle = Geometry2D.pseudoAngle(Math.cos(angle), Math.sin(angle));
+			assertTrue(pseudoAngle > previous);
+			assertTrue(pseudoAngle < 4);
+			previous = pseudoAngle;
+		}
+	}
+
+	@Test
+	public void testPseudoAngle_quadrants()
+	{
+		assertEquals(0, Geometry2D.pseudoAngle(3, 0), 1e-12);
+		assertEquals(1, Geometry2D.pseudoAngle(0, 3), 1e-12);
+		assertEquals(2, Geometry2D.pseudoAngle(-3, 0), 1e-12);
+		assertEquals(3, Geometry2D.pseudoAngle(0, -3), 1e-12);
+		
+		// rotation from (0,1) to (-1,0) is a quarter turn
+		assertEquals(1, Geometry2D.pseudoAngle(0, 1, -1, 0), 1e-12);
+	}
+
+	@Test
+	public void testLineDistance()
+	{
+		double invNorm = Geometry2D.inverseNorm(3, 3);
+		assertEquals(0, Geometry2D.lineDistance(20, 20, 3, 3, invNorm, 10, 10), 1e-8);
+		assertEquals(10 * Math.sqrt(2), Geometry2D.lineDistance(20, 20, 3, 3, invNorm, 20, 0), 1e-8);
+	}
+
+	@Test
+	public void testMaxLineDistance()
+	{
+		double[] xCoords = new double[] { 0, 10, 10, 0 };
+		double[] yCoords = new double[] { 0, 0, 20, 20 };
+		double invNorm = Geometry2D.inverseNorm(0, 5);
+		double dist = Geometry2D.maxLineDistance(xCoords, yCoords, 4, 0, 0, 0, 5, invNorm);
+		assertEquals(10, dist, 1e-8);
+	}
+
+	@Test
+	public void testInverseNorm_degenerate()
+	{
+		assertTrue(Double.isNaN(Geometry2D.inverseNorm(0, 0)));
+	}
+}
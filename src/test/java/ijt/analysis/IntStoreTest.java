@@ -0,0 +1,72 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author dlegland
+ *
+ */
+public class IntStoreTest
+{
+	@Test
+	public void testSetGet_direct()
+	{
+		IntStore store = new IntStore(true);
+		store.ensureCapacity(100);
+		assertTrue(store.capacity() >= 100);
+		for (int i = 0; i < 100; i++)
+		{
+			store.set(i, i * i - 50);
+		}
+		for (int i = 0; i < 100; i++)
+		{
+			assertEquals(i * i - 50, store.get(i));
+		}
+		
+		store.free();
+		assertEquals(0, store.capacity());
+	}
+
+	@Test
+	public void testEnsureCapacity_heap()
+	{
+		IntStore store = new IntStore(false);
+		store.ensureCapacity(10);
+		store.set(9, 3);
+		assertEquals(3, store.get(9));
+		
+		// no reallocation if capacity is sufficient
+		store.ensureCapacity(5);
+		assertEquals(3, store.get(9));
+		
+		store.ensureCapacity(1000);
+		assertTrue(store.capacity() >= 1000);
+	}
+
+	@Test
+	public void testGrow_keepsValues()
+	{
+		for (boolean direct : new boolean[] {false, true})
+		{
+			IntStore store = new IntStore(direct);
+			store.grow(4);
+			for (int i = 0; i < 4; i++)
+			{
+				store.set(i, 10 + i);
+			}
+			
+			store.grow(100);
+			assertTrue(store.capacity() >= 100);
+			for (int i = 0; i < 4; i++)
+			{
+				assertEquals(10 + i, store.get(i));
+			}
+			store.free();
+		}
+	}
+}
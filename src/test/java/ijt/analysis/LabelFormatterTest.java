@@ -0,0 +1,37 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author dlegland
+ *
+ */
+public class LabelFormatterTest
+{
+	@Test
+	public void testFormat_sameAsStringFormat()
+	{
+		LabelFormatter formatter = new LabelFormatter("lbl-", 4);
+		int[] labels = new int[] { 0, 1, 9, 10, 255, 1000, 9999, 10000, 123456789, Integer.MAX_VALUE, -12 };
+		for (int label : labels)
+		{
+			assertEquals(String.format("lbl-%04d", label), formatter.format(label));
+		}
+	}
+
+	@Test
+	public void testDigitCount()
+	{
+		assertEquals(1, LabelFormatter.digitCount(0));
+		assertEquals(1, LabelFormatter.digitCount(9));
+		assertEquals(2, LabelFormatter.digitCount(10));
+		assertEquals(3, LabelFormatter.digitCount(999));
+		assertEquals(4, LabelFormatter.digitCount(1000));
+		assertEquals(10, LabelFormatter.digitCount(Integer.MAX_VALUE));
+	}
+}
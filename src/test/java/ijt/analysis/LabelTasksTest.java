@@ -0,0 +1,342 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+/**
+ * @author dlegland
+ *
+ */
+public class LabelTasksTest
+{
+	@Test
+	public void testSortBySizeDescending()
+	{
+		int[] sizes = new int[] { 5, 20, 1, 12 };
+		int[] order = LabelTasks.sortBySizeDescending(sizes);
+		
+		assertArrayEquals(new int[] { 1, 3, 0, 2 }, order);
+	}
+
+	@Test
+	public void testSortBySizeDescending_tiesInIndexOrder()
+	{
+		int[] sizes = new int[] { 4, 0, 7, 4, 7, 0 };
+		int[] order = LabelTasks.sortBySizeDescending(sizes);
+		
+		assertArrayEquals(new int[] { 2, 4, 0, 3, 1, 5 }, order);
+	}
+
+	@Test
+	public void testForEach_processEachIndexOnce()
+	{
+		int n = 1000;
+		int[] sizes = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			sizes[i] = (i * 37) % 101;
+		}
+		
+		final AtomicIntegerArray counts = new AtomicIntegerArray(n);
+		int parallelism = LabelTasks.getParallelism();
+		try
+		{
+			LabelTasks.setParallelism(4);
+			LabelTasks.forEach(sizes, new LabelTasks.Task()
+			{
+				@Override
+				public void process(int index)
+				{
+					counts.incrementAndGet(index);
+				}
+			});
+		}
+		finally
+		{
+			LabelTasks.setParallelism(parallelism);
+		}
+		
+		for (int i = 0; i < n; i++)
+		{
+			assertEquals(1, counts.get(i));
+		}
+	}
+
+	@Test
+	public void testSetParallelism_duringComputation()
+	{
+		final int n = 200;
+		final AtomicIntegerArray counts = new AtomicIntegerArray(n);
+		int parallelism = LabelTasks.getParallelism();
+		try
+		{
+			LabelTasks.setParallelism(4);
+			LabelTasks.forEachInOrder(n, new LabelTasks.Task()
+			{
+				@Override
+				public void process(int index)
+				{
+					// the running computation keeps its pool, including for
+					// the loops it starts after the change
+					if (index == 10)
+					{
+						LabelTasks.setParallelism(2);
+					}
+					LabelTasks.forEach(new int[] { 3, 1, 2 }, new LabelTasks.Task()
+					{
+						@Override
+						public void process(int index)
+						{
+						}
+					});
+					counts.incrementAndGet(index);
+				}
+			});
+			
+			// new computations use the new pool
+			LabelTasks.forEachInOrder(n, new LabelTasks.Task()
+			{
+				@Override
+				public void process(int index)
+				{
+					counts.incrementAndGet(index);
+				}
+			});
+		}
+		finally
+		{
+			LabelTasks.setParallelism(parallelism);
+		}
+		
+		for (int i = 0; i < n; i++)
+		{
+			assertEquals(2, counts.get(i));
+		}
+	}
+
+	@Test
+	public void testForEachInOrder_processEachIndexOnce()
+	{
+		int n = 1000;
+		final AtomicIntegerArray counts = new AtomicIntegerArray(n);
+		int parallelism = LabelTasks.getParallelism();
+		try
+		{
+			LabelTasks.setParallelism(4);
+			LabelTasks.forEachInOrder(n, new LabelTasks.Task()
+			{
+				@Override
+				public void process(int index)
+				{
+					counts.incrementAndGet(index);
+				}
+			});
+		}
+		finally
+		{
+			LabelTasks.setParallelism(parallelism);
+		}
+		
+		for (int i = 0; i < n; i++)
+		{
+			assertEquals(1, counts.get(i));
+		}
+	}
+
+	@Test
+	public void testForEachInOrder_sequential()
+	{
+		final ArrayList<Integer> indices = new ArrayList<Integer>();
+		int parallelism = LabelTasks.getParallelism();
+		try
+		{
+			LabelTasks.setParallelism(1);
+			LabelTasks.forEachInOrder(5, new LabelTasks.Task()
+			{
+				@Override
+				public void process(int index)
+				{
+					indices.add(index);
+				}
+			});
+		}
+		finally
+		{
+			LabelTasks.setParallelism(parallelism);
+		}
+		
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4), indices);
+	}
+
+	@Test
+	public void testRunWith_processEachIndexOnce()
+	{
+		final int n = 1000;
+		final int[] sizes = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			sizes[i] = (i * 37) % 101;
+		}
+		
+		final AtomicIntegerArray counts = new AtomicIntegerArray(n);
+		final ArrayList<String> threadNames = new ArrayList<String>();
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try
+		{
+			LabelTasks.runWith(executor, 4, new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					LabelTasks.forEach(sizes, new LabelTasks.Task()
+					{
+						@Override
+						public void process(int index)
+						{
+							counts.incrementAndGet(index);
+							synchronized (threadNames)
+							{
+								threadNames.add(Thread.currentThread().getName());
+							}
+						}
+					});
+				}
+			});
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		
+		for (int i = 0; i < n; i++)
+		{
+			assertEquals(1, counts.get(i));
+		}
+		// the shared pool is not used
+		for (String name : threadNames)
+		{
+			assertFalse(name.startsWith("ForkJoinPool"));
+		}
+	}
+
+	@Test
+	public void testRunWith_nestedLoops()
+	{
+		final int n = 20;
+		final AtomicIntegerArray counts = new AtomicIntegerArray(n * n);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try
+		{
+			LabelTasks.runWith(executor, 3, new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					LabelTasks.forEachInOrder(n, new LabelTasks.Task()
+					{
+						@Override
+						public void process(final int i)
+						{
+							final String threadName = Thread.currentThread().getName();
+							LabelTasks.forEachInOrder(n, new LabelTasks.Task()
+							{
+								@Override
+								public void process(int j)
+								{
+									// nested loops run within the thread of the outer task
+									assertEquals(threadName, Thread.currentThread().getName());
+									counts.incrementAndGet(i * n + j);
+								}
+							});
+						}
+					});
+				}
+			});
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		
+		for (int i = 0; i < n * n; i++)
+		{
+			assertEquals(1, counts.get(i));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRunWith_propagateException()
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try
+		{
+			LabelTasks.runWith(executor, 3, new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					LabelTasks.forEachInOrder(100, new LabelTasks.Task()
+					{
+						@Override
+						public void process(int index)
+						{
+							if (index == 57)
+							{
+								throw new IllegalStateException("failure");
+							}
+						}
+					});
+				}
+			});
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testOrientedBox_sameResultsSequential()
+	{
+		String fileName = getClass().getResource("/files/grains-WTH-areaOpen-lbl2.tif").getFile();
+		ImagePlus imagePlus = IJ.openImage(fileName);
+		assertNotNull(imagePlus);
+		ImageProcessor image = imagePlus.getProcessor();
+		
+		int parallelism = LabelTasks.getParallelism();
+		Map<Integer, OrientedBox2D> boxes1, boxes4;
+		try
+		{
+			LabelTasks.setParallelism(1);
+			boxes1 = OrientedBox2D.orientedBox(image);
+			LabelTasks.setParallelism(4);
+			boxes4 = OrientedBox2D.orientedBox(image);
+		}
+		finally
+		{
+			LabelTasks.setParallelism(parallelism);
+		}
+		
+		assertEquals(boxes1.keySet(), boxes4.keySet());
+		for (int label : boxes1.keySet())
+		{
+			assertEquals(boxes1.get(label).width, boxes4.get(label).width, 1e-10);
+			assertEquals(boxes1.get(label).length, boxes4.get(label).length, 1e-10);
+		}
+	}
+}
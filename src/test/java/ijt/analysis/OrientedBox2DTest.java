@@ -1,19 +1,26 @@
 package ijt.analysis;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
 import ij.IJ;
 import ij.ImageJ;
 import ij.ImagePlus;
+import ij.ImageStack;
 import ij.gui.PolygonRoi;
 import ij.measure.ResultsTable;
+import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 
 
@@ -64,4 +71,485 @@ public class OrientedBox2DTest
 		// width of oriented box
 		assertEquals(108.86, box.width, .05);
 	}
+
+	@Test
+	public void testComputeBox_criteria_rotatedRectangle()
+	{
+		// rectangle with size 30x10, rotated by 30 degrees
+		ArrayList<Point2D> points = rotatedRectangle(50, 40, 30, 10, 30);
+		
+		for (OrientedBox2D.Criterion criterion : OrientedBox2D.Criterion.values())
+		{
+			OrientedBox2D box = OrientedBox2D.computeBox(points, criterion);
+			assertEquals(50, box.x0, 1e-8);
+			assertEquals(40, box.y0, 1e-8);
+			assertEquals(30, box.length, 1e-8);
+			assertEquals(10, box.width, 1e-8);
+			assertEquals(30, box.theta, 1e-8);
+		}
+	}
+
+	@Test
+	public void testComputeBox_criteria_bruteForce()
+	{
+		// an irregular convex polygon
+		ArrayList<Point2D> points = new ArrayList<Point2D>();
+		points.add(new Point2D.Double(0, 0));
+		points.add(new Point2D.Double(40, 5));
+		points.add(new Point2D.Double(55, 25));
+		points.add(new Point2D.Double(30, 45));
+		points.add(new Point2D.Double(5, 30));
+
+		OrientedBox2D box = OrientedBox2D.computeBox(points, OrientedBox2D.Criterion.MIN_WIDTH);
+		assertEquals(bruteForceMin(points, OrientedBox2D.Criterion.MIN_WIDTH), box.width, 1e-3);
+
+		box = OrientedBox2D.computeBox(points, OrientedBox2D.Criterion.MIN_AREA);
+		assertEquals(bruteForceMin(points, OrientedBox2D.Criterion.MIN_AREA), box.length * box.width, 1e-2);
+
+		box = OrientedBox2D.computeBox(points, OrientedBox2D.Criterion.MIN_PERIMETER);
+		assertEquals(bruteForceMin(points, OrientedBox2D.Criterion.MIN_PERIMETER), 2 * (box.length + box.width), 1e-2);
+	}
+
+	@Test
+	public void testApproximateBox_errorBound()
+	{
+		ArrayList<Point2D> points = new ArrayList<Point2D>();
+		points.add(new Point2D.Double(0, 0));
+		points.add(new Point2D.Double(40, 5));
+		points.add(new Point2D.Double(55, 25));
+		points.add(new Point2D.Double(30, 45));
+		points.add(new Point2D.Double(5, 30));
+		OrientedBox2D exact = OrientedBox2D.computeBox(points);
+		
+		for (int nDirections : new int[] {1, 4, 15, 90, 360})
+		{
+			OrientedBox2D.Approximation approx = OrientedBox2D.approximateBox(points, nDirections);
+			assertTrue(approx.box.width >= exact.width - 1e-8);
+			assertTrue(approx.box.width - exact.width <= approx.widthErrorBound + 1e-8);
+			assertTrue(approx.box.length >= approx.box.width);
+		}
+	}
+
+	@Test
+	public void testApproximateBox_rotatedRectangle()
+	{
+		// rectangle with size 30x10, rotated by 30 degrees, that can be
+		// recovered exactly with 6 directions 
+		ArrayList<Point2D> points = rotatedRectangle(50, 40, 30, 10, 30);
+		
+		OrientedBox2D box = OrientedBox2D.approximateBox(points, 6).box;
+		assertEquals(50, box.x0, 1e-8);
+		assertEquals(40, box.y0, 1e-8);
+		assertEquals(30, box.length, 1e-8);
+		assertEquals(10, box.width, 1e-8);
+		assertEquals(30, box.theta, 1e-8);
+	}
+
+	@Test
+	public void testMomentsOrientedBox_rectangles()
+	{
+		ImageProcessor image = new ByteProcessor(40, 30);
+		// a 20x6 rectangle with label 3
+		for (int y = 2; y < 8; y++)
+		{
+			for (int x = 5; x < 25; x++)
+			{
+				image.set(x, y, 3);
+			}
+		}
+		// a 4x12 rectangle with label 7, touching image border
+		for (int y = 15; y < 27; y++)
+		{
+			for (int x = 36; x < 40; x++)
+			{
+				image.set(x, y, 7);
+			}
+		}
+		
+		Map<Integer, OrientedBox2D> boxes = OrientedBox2D.momentsOrientedBox(image);
+		
+		assertEquals(2, boxes.size());
+		OrientedBox2D box = boxes.get(3);
+		assertEquals(15, box.x0, 1e-8);
+		assertEquals(5, box.y0, 1e-8);
+		assertEquals(20, box.length, 1e-8);
+		assertEquals(6, box.width, 1e-8);
+		assertEquals(0, box.theta, 1e-8);
+		box = boxes.get(7);
+		assertEquals(38, box.x0, 1e-8);
+		assertEquals(21, box.y0, 1e-8);
+		assertEquals(12, box.length, 1e-8);
+		assertEquals(4, box.width, 1e-8);
+		assertEquals(90, box.theta, 1e-8);
+	}
+
+	@Test
+	public void testOrientedBoxes_stack()
+	{
+		// three planes, containing a horizontal rectangle shifted along x
+		ImageStack stack = new ImageStack(40, 30);
+		for (int i = 0; i < 3; i++)
+		{
+			ImageProcessor image = new ByteProcessor(40, 30);
+			for (int y = 2; y < 8; y++)
+			{
+				for (int x = 5 + i; x < 25 + i; x++)
+				{
+					image.set(x, y, 3);
+				}
+			}
+			stack.addSlice(image);
+		}
+		ImagePlus imagePlus = new ImagePlus("stack", stack);
+		
+		Map<Integer, OrientedBox2D>[] planeBoxMaps = OrientedBox2D.orientedBoxes(stack, OrientedBox2D.Criterion.MIN_WIDTH);
+		
+		assertEquals(3, planeBoxMaps.length);
+		for (int i = 0; i < 3; i++)
+		{
+			OrientedBox2D box = planeBoxMaps[i].get(3);
+			assertEquals(15 + i, box.x0, 1e-8);
+			assertEquals(20, box.length, 1e-8);
+			assertEquals(6, box.width, 1e-8);
+		}
+		
+		ResultsTable table = OrientedBox2D.asTable(imagePlus, planeBoxMaps);
+		assertEquals(3, table.getCounter());
+		assertEquals(3, table.getValue("Slice", 2), 1e-8);
+		assertEquals(1, table.getValue("Frame", 2), 1e-8);
+		assertEquals(3, table.getValue("Label", 2), 1e-8);
+		assertEquals(17, table.getValue("Box.Center.X", 2), 1e-8);
+		
+		Map<Integer, OrientedBox2D>[] momentsBoxMaps = OrientedBox2D.momentsOrientedBoxes(stack);
+		assertEquals(3, momentsBoxMaps.length);
+		for (int i = 0; i < 3; i++)
+		{
+			assertEquals(15 + i, momentsBoxMaps[i].get(3).x0, 1e-8);
+		}
+	}
+
+	@Test
+	public void testCriterion_fromLabel()
+	{
+		for (OrientedBox2D.Criterion criterion : OrientedBox2D.Criterion.values())
+		{
+			assertEquals(criterion, OrientedBox2D.Criterion.fromLabel(criterion.toString()));
+		}
+	}
+
+	private static final ArrayList<Point2D> rotatedRectangle(double xc, double yc, double length, double width, double thetaDegrees)
+	{
+		double cot = Math.cos(Math.toRadians(thetaDegrees));
+		double sit = Math.sin(Math.toRadians(thetaDegrees));
+		double[][] coords = new double[][] { { 1, 1 }, { -1, 1 }, { -1, -1 }, { 1, -1 } };
+		ArrayList<Point2D> points = new ArrayList<Point2D>(4);
+		for (double[] c : coords)
+		{
+			double x = c[0] * length / 2;
+			double y = c[1] * width / 2;
+			points.add(new Point2D.Double(xc + x * cot - y * sit, yc + x * sit + y * cot));
+		}
+		return points;
+	}
+
+	@Test
+	public void testOrientedBox_listener()
+	{
+		String fileName = getClass().getResource("/files/grains-WTH-areaOpen-lbl2.tif").getFile();
+		ImagePlus imagePlus = IJ.openImage(fileName);
+		assertNotNull(imagePlus);
+		ImageProcessor image = imagePlus.getProcessor();
+		
+		Map<Integer, OrientedBox2D> boxes = OrientedBox2D.orientedBox(image, OrientedBox2D.Criterion.MIN_WIDTH);
+		
+		for (OrientedBoxListener.Order order : OrientedBoxListener.Order.values())
+		{
+			final ArrayList<Integer> labels = new ArrayList<Integer>();
+			final Map<Integer, OrientedBox2D> received = new TreeMap<Integer, OrientedBox2D>();
+			OrientedBox2D.orientedBox(image, OrientedBox2D.Criterion.MIN_WIDTH, new OrientedBoxListener()
+			{
+				@Override
+				public void boxComputed(int label, OrientedBox2D box)
+				{
+					labels.add(label);
+					received.put(label, box);
+				}
+			}, order);
+			
+			assertEquals(boxes.size(), labels.size());
+			assertEquals(boxes.keySet(), received.keySet());
+			for (int label : boxes.keySet())
+			{
+				assertEquals(boxes.get(label).width, received.get(label).width, 1e-10);
+				assertEquals(boxes.get(label).length, received.get(label).length, 1e-10);
+			}
+			if (order == OrientedBoxListener.Order.LABEL)
+			{
+				assertEquals(new ArrayList<Integer>(boxes.keySet()), labels);
+			}
+		}
+	}
+
+	@Test
+	public void testOrientedBox_listenerLabelOrderParallel()
+	{
+		// a large first label, followed by many small ones, so that boxes
+		// are computed ahead of the next label to emit
+		ImageProcessor image = new ByteProcessor(200, 200);
+		for (int y = 0; y < 100; y++)
+		{
+			for (int x = 0; x < 200; x++)
+			{
+				if ((x - 100) * (x - 100) + (y - 50) * (y - 50) < 45 * 45)
+				{
+					image.set(x, y, 1);
+				}
+			}
+		}
+		for (int i = 0; i < 200; i++)
+		{
+			int x0 = (i % 20) * 10, y0 = 100 + (i / 20) * 10;
+			for (int y = y0; y < y0 + 1 + i % 7; y++)
+			{
+				for (int x = x0; x < x0 + 2 + i % 5; x++)
+				{
+					image.set(x, y, 2 + i);
+				}
+			}
+		}
+		
+		final ArrayList<Integer> labels = new ArrayList<Integer>();
+		final AtomicInteger active = new AtomicInteger(0);
+		final AtomicInteger maxActive = new AtomicInteger(0);
+		int parallelism = LabelTasks.getParallelism();
+		try
+		{
+			LabelTasks.setParallelism(4);
+			OrientedBox2D.orientedBox(image, OrientedBox2D.Criterion.MIN_WIDTH, new OrientedBoxListener()
+			{
+				@Override
+				public void boxComputed(int label, OrientedBox2D box)
+				{
+					maxActive.set(Math.max(maxActive.get(), active.incrementAndGet()));
+					labels.add(label);
+					active.decrementAndGet();
+				}
+			}, OrientedBoxListener.Order.LABEL);
+		}
+		finally
+		{
+			LabelTasks.setParallelism(parallelism);
+		}
+		
+		assertEquals(1, maxActive.get());
+		assertEquals(201, labels.size());
+		for (int i = 0; i < labels.size(); i++)
+		{
+			assertEquals(i + 1, (int) labels.get(i));
+		}
+	}
+
+	@Test
+	public void testOrientedBox_listenerCancelled()
+	{
+		String fileName = getClass().getResource("/files/grains-WTH-areaOpen-lbl2.tif").getFile();
+		ImagePlus imagePlus = IJ.openImage(fileName);
+		assertNotNull(imagePlus);
+		ImageProcessor image = imagePlus.getProcessor();
+		
+		final ArrayList<Integer> labels = new ArrayList<Integer>();
+		OrientedBoxListener listener = new OrientedBoxListener()
+		{
+			@Override
+			public void boxComputed(int label, OrientedBox2D box)
+			{
+				labels.add(label);
+			}
+		};
+		
+		CancellationToken token = new CancellationToken();
+		assertTrue(OrientedBox2D.orientedBox(image, OrientedBox2D.Criterion.MIN_WIDTH, listener,
+				OrientedBoxListener.Order.COMPLETION, token));
+		int nLabels = labels.size();
+		assertTrue(nLabels > 0);
+		
+		labels.clear();
+		token.cancel();
+		assertFalse(OrientedBox2D.orientedBox(image, OrientedBox2D.Criterion.MIN_WIDTH, listener,
+				OrientedBoxListener.Order.COMPLETION, token));
+		assertTrue(labels.size() < nLabels);
+	}
+
+	@Test
+	public void testOrientedBoxTable_cancelledDuringScan()
+	{
+		ImageProcessor image = createOverlappingRowsImage();
+		
+		// the token stays cancelled, so that no box is computed after the
+		// scan is stopped
+		OrientedBoxTable table = OrientedBox2D.orientedBoxTable(image, OrientedBox2D.Criterion.MIN_WIDTH,
+				new RowCountToken(10), ProgressListener.NONE);
+		assertFalse(table.isComplete());
+		assertEquals(0, table.size());
+		
+		final ArrayList<Integer> labels = new ArrayList<Integer>();
+		OrientedBoxListener listener = new OrientedBoxListener()
+		{
+			@Override
+			public void boxComputed(int label, OrientedBox2D box)
+			{
+				labels.add(label);
+			}
+		};
+		assertFalse(OrientedBox2D.orientedBox(image, OrientedBox2D.Criterion.MIN_WIDTH, listener,
+				OrientedBoxListener.Order.LABEL, new RowCountToken(10)));
+		assertEquals(0, labels.size());
+	}
+
+	@Test
+	public void testComputeLabelsCornersArray_noDuplicates()
+	{
+		ImageProcessor image = createOverlappingRowsImage();
+		int[] labels = new int[] { 1, 2, 3, 4 };
+		ArrayList<Point2D>[] corners = OrientedBox2D.computeLabelsCornersArray(image, labels);
+		for (ArrayList<Point2D> points : corners)
+		{
+			assertEquals(points.size(), new HashSet<Point2D>(points).size());
+		}
+		
+		// a rectangle of 4x4 pixels only has corners on its left and right
+		// sides
+		assertEquals(10, corners[0].size());
+	}
+
+	/**
+	 * Creates an image with four labels, the first two located within the
+	 * first rows of the image.
+	 */
+	private static final ImageProcessor createOverlappingRowsImage()
+	{
+		ImageProcessor image = new ByteProcessor(30, 30);
+		fillRect(image, 2, 1, 4, 4, 1);
+		fillRect(image, 8, 2, 5, 5, 2);
+		fillRect(image, 3, 5, 10, 16, 3);
+		fillRect(image, 15, 2, 10, 24, 4);
+		image.set(3, 22, 4);
+		return image;
+	}
+
+	private static final void fillRect(ImageProcessor image, int x0, int y0, int width, int height, int label)
+	{
+		for (int y = y0; y < y0 + height; y++)
+		{
+			for (int x = x0; x < x0 + width; x++)
+			{
+				image.set(x, y, label);
+			}
+		}
+	}
+
+	/**
+	 * A token that is cancelled when checked for the specified row of a scan,
+	 * and remains cancelled afterwards.
+	 */
+	private static final class RowCountToken extends CancellationToken
+	{
+		int remaining;
+		
+		RowCountToken(int nRows)
+		{
+			this.remaining = nRows;
+		}
+		
+		@Override
+		public boolean isCancelled()
+		{
+			if (this.remaining == 0)
+			{
+				return true;
+			}
+			this.remaining--;
+			return false;
+		}
+	}
+
+	@Test
+	public void testAsTable_boxTable()
+	{
+		int[] labels = new int[] { 3, 12, 40 };
+		OrientedBox2D[] boxes = new OrientedBox2D[] {
+				new OrientedBox2D(10, 15, 5, 3, 0),
+				new OrientedBox2D(20, 25, 8, 4, 45),
+				new OrientedBox2D(30, 35, 6, 2, 90) };
+		OrientedBoxTable boxTable = OrientedBoxTable.fromBoxes(labels, boxes);
+		
+		ResultsTable table = OrientedBox2D.asTable(boxTable);
+		
+		assertEquals(3, table.getCounter());
+		assertEquals("lbl-3", table.getLabel(0));
+		assertEquals("lbl-40", table.getLabel(2));
+		assertEquals(20, table.getValue("Box.Center.X", 1), 1e-10);
+		assertEquals(35, table.getValue("Box.Center.Y", 2), 1e-10);
+		assertEquals(5, table.getValue("Box.Length", 0), 1e-10);
+		assertEquals(4, table.getValue("Box.Width", 1), 1e-10);
+		assertEquals(90, table.getValue("Box.Orientation", 2), 1e-10);
+	}
+
+	/**
+	 * Row labels of stack tables are padded like the ones of the table of a
+	 * single plane.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testAsTable_stackRowLabels()
+	{
+		Map<Integer, OrientedBox2D> labelBoxMap = new TreeMap<Integer, OrientedBox2D>();
+		labelBoxMap.put(3, new OrientedBox2D(10, 15, 5, 3, 0));
+		labelBoxMap.put(12, new OrientedBox2D(20, 25, 8, 4, 45));
+		labelBoxMap.put(40, new OrientedBox2D(30, 35, 6, 2, 90));
+		ImageStack stack = new ImageStack(40, 30);
+		stack.addSlice(new ByteProcessor(40, 30));
+		stack.addSlice(new ByteProcessor(40, 30));
+		ImagePlus imagePlus = new ImagePlus("stack", stack);
+		Map<Integer, OrientedBox2D>[] planeBoxMaps = new Map[] { labelBoxMap, labelBoxMap };
+		
+		ResultsTable planeTable = OrientedBox2D.asTable(labelBoxMap);
+		ResultsTable stackTable = OrientedBox2D.asTable(imagePlus, planeBoxMaps);
+		
+		assertEquals(6, stackTable.getCounter());
+		for (int i = 0; i < 6; i++)
+		{
+			assertEquals(planeTable.getLabel(i % 3), stackTable.getLabel(i));
+		}
+	}
+
+	/**
+	 * Computes the minimal value of the criterion by rotating the points with
+	 * a small angular step.
+	 */
+	private static final double bruteForceMin(ArrayList<Point2D> points, OrientedBox2D.Criterion criterion)
+	{
+		double minValue = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < 18000; i++)
+		{
+			double angle = Math.toRadians(i * .01);
+			double cot = Math.cos(angle);
+			double sit = Math.sin(angle);
+			double xmin = Double.POSITIVE_INFINITY, xmax = Double.NEGATIVE_INFINITY;
+			double ymin = Double.POSITIVE_INFINITY, ymax = Double.NEGATIVE_INFINITY;
+			for (Point2D p : points)
+			{
+				double x = p.getX() * cot + p.getY() * sit;
+				double y = -p.getX() * sit + p.getY() * cot;
+				xmin = Math.min(xmin, x);
+				xmax = Math.max(xmax, x);
+				ymin = Math.min(ymin, y);
+				ymax = Math.max(ymax, y);
+			}
+			double dim1 = Math.max(xmax - xmin, ymax - ymin);
+			double dim2 = Math.min(xmax - xmin, ymax - ymin);
+			minValue = Math.min(minValue, criterion.evaluate(dim1, dim2));
+		}
+		return minValue;
+	}
 }
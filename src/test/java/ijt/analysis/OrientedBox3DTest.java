@@ -0,0 +1,174 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * @author dlegland
+ *
+ */
+public class OrientedBox3DTest
+{
+	@Test
+	public void testConvexHull3D_cube()
+	{
+		// corners of a cube, together with its center and face centers
+		double[] xs = new double[] { 0, 10, 0, 10, 0, 10, 0, 10, 5, 5, 0 };
+		double[] ys = new double[] { 0, 0, 10, 10, 0, 0, 10, 10, 5, 5, 5 };
+		double[] zs = new double[] { 0, 0, 0, 0, 10, 10, 10, 10, 5, 0, 5 };
+		
+		ConvexHull3D hull = ConvexHull3D.compute(xs, ys, zs, xs.length);
+		
+		assertEquals(8, hull.getVertices().length);
+		assertEquals(12, hull.getFaces().length);
+	}
+
+	@Test
+	public void testComputeBox_rotatedCuboid()
+	{
+		// corners of a 40x20x10 cuboid, rotated and translated
+		double[][] rot = rotationMatrix(30, 20, 10);
+		double[] xs = new double[8];
+		double[] ys = new double[8];
+		double[] zs = new double[8];
+		int i = 0;
+		for (int dx = -1; dx <= 1; dx += 2)
+		{
+			for (int dy = -1; dy <= 1; dy += 2)
+			{
+				for (int dz = -1; dz <= 1; dz += 2)
+				{
+					double[] p = new double[] { 20 * dx, 10 * dy, 5 * dz };
+					xs[i] = 50 + rot[0][0] * p[0] + rot[0][1] * p[1] + rot[0][2] * p[2];
+					ys[i] = 60 + rot[1][0] * p[0] + rot[1][1] * p[1] + rot[1][2] * p[2];
+					zs[i] = 70 + rot[2][0] * p[0] + rot[2][1] * p[1] + rot[2][2] * p[2];
+					i++;
+				}
+			}
+		}
+		
+		OrientedBox3D box = OrientedBox3D.computeBox(xs, ys, zs, 8);
+		
+		assertEquals(50, box.x0, 1e-6);
+		assertEquals(60, box.y0, 1e-6);
+		assertEquals(70, box.z0, 1e-6);
+		assertEquals(40, box.length, 1e-6);
+		assertEquals(20, box.width, 1e-6);
+		assertEquals(10, box.height, 1e-6);
+		assertEquals(1, Math.abs(box.axes[0][0] * rot[0][0] + box.axes[0][1] * rot[1][0] + box.axes[0][2] * rot[2][0]), 1e-6);
+	}
+
+	@Test
+	public void testOrientedBox_labelStack()
+	{
+		// a 12x6x4 block of voxels with label 5
+		ImageStack stack = new ImageStack(20, 20);
+		for (int z = 0; z < 8; z++)
+		{
+			ImageProcessor image = new ByteProcessor(20, 20);
+			if (z >= 2 && z < 6)
+			{
+				for (int y = 3; y < 9; y++)
+				{
+					for (int x = 4; x < 16; x++)
+					{
+						image.set(x, y, 5);
+					}
+				}
+			}
+			stack.addSlice(image);
+		}
+		
+		Map<Integer, OrientedBox3D> boxes = OrientedBox3D.orientedBox(stack);
+		
+		assertEquals(1, boxes.size());
+		OrientedBox3D box = boxes.get(5);
+		assertEquals(10, box.x0, 1e-8);
+		assertEquals(6, box.y0, 1e-8);
+		assertEquals(4, box.z0, 1e-8);
+		assertEquals(12, box.length, 1e-8);
+		assertEquals(6, box.width, 1e-8);
+		assertEquals(4, box.height, 1e-8);
+		assertEquals(12 * 6 * 4, box.volume(), 1e-6);
+		assertEquals(1, OrientedBox3D.asTable(boxes).getCounter());
+	}
+
+	@Test
+	public void testOrientedBox_shearedPrism()
+	{
+		// a 6x4 rectangle shifted by one pixel at each slice, so that all the
+		// slice hulls are different, and the points of the label are reduced
+		// to their hull vertices during the scan
+		int nSlices = 600;
+		ImageStack stack = new ImageStack(nSlices + 10, 10);
+		double[] xs = new double[8 * nSlices];
+		double[] ys = new double[8 * nSlices];
+		double[] zs = new double[8 * nSlices];
+		int n = 0;
+		for (int z = 0; z < nSlices; z++)
+		{
+			ImageProcessor image = new ByteProcessor(nSlices + 10, 10);
+			for (int y = 3; y < 7; y++)
+			{
+				for (int x = z + 2; x < z + 8; x++)
+				{
+					image.set(x, y, 4);
+				}
+			}
+			stack.addSlice(image);
+			
+			// the corners of the slice hull, at the bottom and the top of the slice
+			for (int k = 0; k < 4; k++)
+			{
+				for (int dz = 0; dz < 2; dz++)
+				{
+					xs[n] = k % 2 == 0 ? z + 2 : z + 8;
+					ys[n] = k < 2 ? 3 : 7;
+					zs[n] = z + dz;
+					n++;
+				}
+			}
+		}
+		
+		OrientedBox3D box = OrientedBox3D.orientedBox(stack).get(4);
+		OrientedBox3D expected = OrientedBox3D.computeBox(xs, ys, zs, n);
+		
+		assertEquals(expected.x0, box.x0, 1e-6);
+		assertEquals(expected.y0, box.y0, 1e-6);
+		assertEquals(expected.z0, box.z0, 1e-6);
+		assertEquals(expected.length, box.length, 1e-6);
+		assertEquals(expected.width, box.width, 1e-6);
+		assertEquals(expected.height, box.height, 1e-6);
+	}
+
+	private static final double[][] rotationMatrix(double azimut, double elevation, double roll)
+	{
+		double ca = Math.cos(Math.toRadians(azimut)), sa = Math.sin(Math.toRadians(azimut));
+		double ce = Math.cos(Math.toRadians(elevation)), se = Math.sin(Math.toRadians(elevation));
+		double cr = Math.cos(Math.toRadians(roll)), sr = Math.sin(Math.toRadians(roll));
+		double[][] rz = new double[][] { { ca, -sa, 0 }, { sa, ca, 0 }, { 0, 0, 1 } };
+		double[][] ry = new double[][] { { ce, 0, se }, { 0, 1, 0 }, { -se, 0, ce } };
+		double[][] rx = new double[][] { { 1, 0, 0 }, { 0, cr, -sr }, { 0, sr, cr } };
+		return multiply(rz, multiply(ry, rx));
+	}
+
+	private static final double[][] multiply(double[][] a, double[][] b)
+	{
+		double[][] res = new double[3][3];
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				for (int k = 0; k < 3; k++)
+					res[i][j] += a[i][k] * b[k][j];
+		return res;
+	}
+}
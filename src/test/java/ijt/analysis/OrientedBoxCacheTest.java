@@ -0,0 +1,95 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+/**
+ * @author dlegland
+ *
+ */
+public class OrientedBoxCacheTest
+{
+	@Test
+	public void testGet_sameResultsAfterReading() throws IOException
+	{
+		ImageProcessor image = openGrains();
+		File dir = Files.createTempDirectory("obox").toFile();
+		try
+		{
+			OrientedBoxCache cache = new OrientedBoxCache(dir, 1 << 20);
+			OrientedBox2D.Criterion criterion = OrientedBox2D.Criterion.MIN_AREA;
+			Map<Integer, OrientedBox2D> boxes1 = OrientedBox2D.orientedBox(image, criterion, cache);
+			assertTrue(cache.size() > 0);
+			
+			// read results from a new cache instance
+			OrientedBoxCache cache2 = new OrientedBoxCache(dir, 1 << 20);
+			OrientedBoxCache.Entry entry = cache2.get(image, criterion);
+			
+			assertEquals(boxes1.keySet(), entry.boxes.keySet());
+			for (int label : boxes1.keySet())
+			{
+				OrientedBox2D box1 = boxes1.get(label);
+				OrientedBox2D box2 = entry.boxes.get(label);
+				assertEquals(box1.length, box2.length, 0);
+				assertEquals(box1.theta, box2.theta, 0);
+				assertTrue(entry.hulls.get(label).size() >= 3);
+			}
+		}
+		finally
+		{
+			new OrientedBoxCache(dir, 0).clear();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testHash_changesWithContent()
+	{
+		ImageProcessor image = openGrains();
+		long hash1 = OrientedBoxCache.hash(image);
+		assertEquals(hash1, OrientedBoxCache.hash(image));
+		
+		image.set(10, 10, image.get(10, 10) + 1);
+		assertNotEquals(hash1, OrientedBoxCache.hash(image));
+	}
+
+	@Test
+	public void testEviction() throws IOException
+	{
+		ImageProcessor image = openGrains();
+		File dir = Files.createTempDirectory("obox").toFile();
+		try
+		{
+			// a cache too small to keep any result
+			OrientedBoxCache cache = new OrientedBoxCache(dir, 10);
+			cache.get(image, OrientedBox2D.Criterion.MIN_WIDTH);
+			assertEquals(0, cache.size());
+		}
+		finally
+		{
+			new OrientedBoxCache(dir, 0).clear();
+			dir.delete();
+		}
+	}
+
+	private ImageProcessor openGrains()
+	{
+		String fileName = getClass().getResource("/files/grains-WTH-areaOpen-lbl2.tif").getFile();
+		ImagePlus imagePlus = IJ.openImage(fileName);
+		assertNotNull(imagePlus);
+		return imagePlus.getProcessor();
+	}
+}
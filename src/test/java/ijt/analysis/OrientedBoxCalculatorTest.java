@@ -0,0 +1,172 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.label.LabelImages;
+
+/**
+ * @author dlegland
+ *
+ */
+public class OrientedBoxCalculatorTest
+{
+	@Test
+	public void testCompute_grains()
+	{
+		String fileName = getClass().getResource("/files/grains-WTH-areaOpen-lbl2.tif").getFile();
+		ImagePlus imagePlus = IJ.openImage(fileName);
+		assertNotNull(imagePlus);
+		ImageProcessor image = imagePlus.getProcessor();
+		
+		for (OrientedBox2D.Criterion criterion : OrientedBox2D.Criterion.values())
+		{
+			Map<Integer, OrientedBox2D> boxes = OrientedBox2D.orientedBox(image, criterion);
+			OrientedBoxCalculator calculator = new OrientedBoxCalculator(criterion);
+			
+			// process twice, to check buffers are correctly reused
+			for (int run = 0; run < 2; run++)
+			{
+				OrientedBoxTable table = calculator.compute(image);
+				assertEquals(boxes.size(), table.size());
+				for (Map.Entry<Integer, OrientedBox2D> entry : boxes.entrySet())
+				{
+					int index = table.indexOf(entry.getKey());
+					assertTrue(index >= 0);
+					assertEquals(criterion.evaluate(entry.getValue().length, entry.getValue().width), 
+							criterion.evaluate(table.length[index], table.width[index]), 1e-8);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCompute_offHeap()
+	{
+		String fileName = getClass().getResource("/files/grains-WTH-areaOpen-lbl2.tif").getFile();
+		ImagePlus imagePlus = IJ.openImage(fileName);
+		assertNotNull(imagePlus);
+		ImageProcessor image = imagePlus.getProcessor();
+		
+		OrientedBoxTable expected = new OrientedBoxCalculator().compute(image);
+		OrientedBoxCalculator calculator = new OrientedBoxCalculator(OrientedBox2D.Criterion.MIN_WIDTH, 
+				OrientedBoxCalculator.Storage.OFF_HEAP);
+		try
+		{
+			OrientedBoxTable table = calculator.compute(image);
+			assertArrayEquals(expected.labels, table.labels);
+			assertArrayEquals(expected.width, table.width, 1e-12);
+			assertArrayEquals(expected.length, table.length, 1e-12);
+			
+			// buffers are allocated again after being released
+			calculator.close();
+			table = calculator.compute(image);
+			assertArrayEquals(expected.width, table.width, 1e-12);
+		}
+		finally
+		{
+			calculator.close();
+		}
+	}
+
+	@Test
+	public void testCompute_sparseFloatLabels()
+	{
+		// labels with very different values, that can not be used as array
+		// indices
+		ImageProcessor image = new FloatProcessor(20, 16);
+		for (int y = 2; y < 12; y++)
+		{
+			for (int x = 1; x < 8; x++)
+			{
+				image.setf(x + y / 3, y, 16000000);
+				image.setf(x + 10, y + 2, 3);
+			}
+		}
+		image.setf(19, 0, 3);
+
+		OrientedBoxTable expected = OrientedBox2D.orientedBoxTable(image, OrientedBox2D.Criterion.MIN_WIDTH);
+		OrientedBoxTable table = new OrientedBoxCalculator().compute(image);
+		assertArrayEquals(new int[] {3, 16000000}, table.labels);
+		assertArrayEquals(expected.labels, table.labels);
+		assertArrayEquals(expected.width, table.width, 1e-8);
+		assertArrayEquals(expected.length, table.length, 1e-8);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCompute_labelOverflow()
+	{
+		ImageProcessor image = new FloatProcessor(5, 5);
+		image.setf(2, 2, 3e9f);
+		new OrientedBoxCalculator().compute(image);
+	}
+
+	@Test
+	public void testComputeHull_randomLabels()
+	{
+		Random random = new Random(42);
+		OrientedBoxCalculator.ScanBuffers scan = new OrientedBoxCalculator.ScanBuffers(false);
+		OrientedBoxCalculator.HullBuffers buffers = new OrientedBoxCalculator.HullBuffers();
+		for (int iter = 0; iter < 200; iter++)
+		{
+			// random image with a few labels, not necessarily connected
+			ImageProcessor image = new ByteProcessor(12, 10);
+			int nLabels = 1 + random.nextInt(3);
+			for (int i = 0; i < 30; i++)
+			{
+				image.set(random.nextInt(12), random.nextInt(10), 1 + random.nextInt(nLabels));
+			}
+			
+			scan.scan(image);
+			int[] labels = LabelImages.findAllLabels(image);
+			assertEquals(labels.length, scan.nLabels);
+			ArrayList<Point2D>[] corners = OrientedBox2D.computeLabelsCornersArray(image, labels);
+			for (int i = 0; i < labels.length; i++)
+			{
+				assertEquals(labels[i], scan.labels.get(i));
+				double area1 = Math.abs(signedArea(Polygons2D.convexHull_monotoneChain(corners[i])));
+				int nh = buffers.computeHull(scan, scan.rowOffsets.get(i), scan.rowOffsets.get(i + 1));
+				double area2 = Math.abs(signedArea(buffers.hullX, buffers.hullY, nh));
+				assertEquals(area1, area2, 1e-10);
+			}
+		}
+	}
+
+	private static final double signedArea(ArrayList<Point2D> poly)
+	{
+		int n = poly.size();
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		for (int i = 0; i < n; i++)
+		{
+			xs[i] = poly.get(i).getX();
+			ys[i] = poly.get(i).getY();
+		}
+		return signedArea(xs, ys, n);
+	}
+
+	private static final double signedArea(double[] xs, double[] ys, int n)
+	{
+		double area = 0;
+		for (int i = 0; i < n; i++)
+		{
+			int j = (i + 1) % n;
+			area += xs[i] * ys[j] - xs[j] * ys[i];
+		}
+		return area / 2;
+	}
+}
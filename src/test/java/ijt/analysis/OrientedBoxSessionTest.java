@@ -0,0 +1,125 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+/**
+ * @author dlegland
+ *
+ */
+public class OrientedBoxSessionTest
+{
+	@Test
+	public void testUpdateLabels_merge()
+	{
+		ImageProcessor image = openGrains();
+		OrientedBoxSession session = new OrientedBoxSession(image);
+		
+		// merge the second label into the first one
+		int[] labels = labels(session);
+		int label1 = labels[0];
+		int label2 = labels[1];
+		replaceLabel(image, label2, label1);
+		int[] updated = session.updateLabels(label1, label2);
+		
+		assertEquals(2, updated.length);
+		assertNull(session.getBox(label2));
+		assertSameBoxes(OrientedBox2D.orientedBox(image), session.getBoxes());
+	}
+
+	@Test
+	public void testUpdateLabels_erase()
+	{
+		ImageProcessor image = openGrains();
+		OrientedBoxSession session = new OrientedBoxSession(image);
+		int nLabels = session.getBoxes().size();
+		
+		int label = labels(session)[3];
+		replaceLabel(image, label, 0);
+		session.updateLabels(label);
+		
+		assertEquals(nLabels - 1, session.getBoxes().size());
+		assertSameBoxes(OrientedBox2D.orientedBox(image), session.getBoxes());
+	}
+
+	@Test
+	public void testUpdateRegion_paintNewLabel()
+	{
+		ImageProcessor image = openGrains();
+		OrientedBoxSession session = new OrientedBoxSession(image);
+		
+		// paint a rectangle with a new label, overlapping existing labels
+		Rectangle rect = new Rectangle(40, 50, 30, 12);
+		for (int y = rect.y; y < rect.y + rect.height; y++)
+		{
+			for (int x = rect.x; x < rect.x + rect.width; x++)
+			{
+				image.set(x, y, 250);
+			}
+		}
+		session.updateRegion(rect);
+		
+		assertEquals(30, session.getBox(250).length, 1e-8);
+		assertEquals(12, session.getBox(250).width, 1e-8);
+		assertEquals(rect, session.getBounds(250));
+		assertSameBoxes(OrientedBox2D.orientedBox(image), session.getBoxes());
+	}
+
+	private static final void assertSameBoxes(Map<Integer, OrientedBox2D> expected, Map<Integer, OrientedBox2D> boxes)
+	{
+		assertEquals(expected.keySet(), boxes.keySet());
+		for (int label : expected.keySet())
+		{
+			OrientedBox2D exp = expected.get(label);
+			OrientedBox2D box = boxes.get(label);
+			assertEquals(exp.length, box.length, 1e-8);
+			assertEquals(exp.width, box.width, 1e-8);
+			assertEquals(exp.x0, box.x0, 1e-8);
+			assertEquals(exp.y0, box.y0, 1e-8);
+		}
+	}
+
+	private ImageProcessor openGrains()
+	{
+		String fileName = getClass().getResource("/files/grains-WTH-areaOpen-lbl2.tif").getFile();
+		ImagePlus imagePlus = IJ.openImage(fileName);
+		assertNotNull(imagePlus);
+		return imagePlus.getProcessor();
+	}
+
+	private static final int[] labels(OrientedBoxSession session)
+	{
+		int[] labels = new int[session.getBoxes().size()];
+		int i = 0;
+		for (int label : session.getBoxes().keySet())
+		{
+			labels[i++] = label;
+		}
+		return labels;
+	}
+
+	private static final void replaceLabel(ImageProcessor image, int label, int newLabel)
+	{
+		for (int y = 0; y < image.getHeight(); y++)
+		{
+			for (int x = 0; x < image.getWidth(); x++)
+			{
+				if ((int) image.getf(x, y) == label)
+				{
+					image.set(x, y, newLabel);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.*;
+
+import java.nio.DoubleBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+/**
+ * @author dlegland
+ *
+ */
+public class OrientedBoxTableTest
+{
+	@Test
+	public void testIndexOf()
+	{
+		OrientedBoxTable table = createTable();
+
+		assertEquals(0, table.indexOf(2));
+		assertEquals(1, table.indexOf(5));
+		assertEquals(2, table.indexOf(9));
+		assertTrue(table.indexOf(1) < 0);
+		assertTrue(table.indexOf(6) < 0);
+		assertTrue(table.indexOf(10) < 0);
+	}
+
+	@Test
+	public void testGetLabelBox()
+	{
+		OrientedBoxTable table = createTable();
+
+		OrientedBox2D box = table.getLabelBox(5);
+		assertEquals(20, box.x0, 1e-10);
+		assertEquals(25, box.y0, 1e-10);
+		assertEquals(8, box.length, 1e-10);
+		assertEquals(4, box.width, 1e-10);
+		assertEquals(45, box.theta, 1e-10);
+		assertNull(table.getLabelBox(3));
+	}
+
+	@Test
+	public void testGetCenterX_readOnlyView()
+	{
+		OrientedBoxTable table = createTable();
+
+		DoubleBuffer buffer = table.getCenterX();
+		assertEquals(3, buffer.remaining());
+		assertEquals(20, buffer.get(1), 1e-10);
+		try
+		{
+			buffer.put(0, 1.0);
+			fail("Buffer should be read-only");
+		}
+		catch (ReadOnlyBufferException ex)
+		{
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_unsortedLabels()
+	{
+		new OrientedBoxTable(new int[] { 3, 2 }, new double[2], new double[2], new double[2], new double[2], new double[2]);
+	}
+
+	@Test
+	public void testAsMap()
+	{
+		OrientedBoxTable table = createTable();
+		Map<Integer, OrientedBox2D> map = table.asMap();
+
+		assertEquals(3, map.size());
+		assertTrue(map.containsKey(9));
+		assertFalse(map.containsKey(4));
+		assertEquals(6, map.get(9).length, 1e-10);
+		assertEquals(Arrays.asList(2, 5, 9), new ArrayList<Integer>(map.keySet()));
+		assertSame(table, OrientedBoxTable.fromMap(map));
+	}
+
+	@Test
+	public void testFromMap()
+	{
+		Map<Integer, OrientedBox2D> map = new TreeMap<Integer, OrientedBox2D>();
+		map.put(7, new OrientedBox2D(1, 2, 3, 2, 10));
+		map.put(4, new OrientedBox2D(5, 6, 7, 5, 20));
+
+		OrientedBoxTable table = OrientedBoxTable.fromMap(map);
+
+		assertEquals(2, table.size());
+		assertEquals(4, table.getLabel(0));
+		assertEquals(7, table.getLabel(1));
+		assertEquals(20, table.getTheta().get(0), 1e-10);
+	}
+
+	@Test
+	public void testOrientedBoxTable_grains()
+	{
+		String fileName = getClass().getResource("/files/grains-WTH-areaOpen-lbl2.tif").getFile();
+		ImagePlus imagePlus = IJ.openImage(fileName);
+		assertNotNull(imagePlus);
+		ImageProcessor image = imagePlus.getProcessor();
+
+		OrientedBoxTable table = OrientedBox2D.orientedBoxTable(image, OrientedBox2D.Criterion.MIN_WIDTH);
+		Map<Integer, OrientedBox2D> map = OrientedBox2D.orientedBox(image, OrientedBox2D.Criterion.MIN_WIDTH);
+
+		assertEquals(map.size(), table.size());
+		for (Map.Entry<Integer, OrientedBox2D> entry : map.entrySet())
+		{
+			int index = table.indexOf(entry.getKey());
+			assertTrue(index >= 0);
+			assertEquals(entry.getValue().width, table.width[index], 1e-10);
+			assertEquals(entry.getValue().length, table.length[index], 1e-10);
+		}
+	}
+
+	private static final OrientedBoxTable createTable()
+	{
+		int[] labels = new int[] { 2, 5, 9 };
+		OrientedBox2D[] boxes = new OrientedBox2D[] {
+				new OrientedBox2D(10, 15, 5, 3, 0),
+				new OrientedBox2D(20, 25, 8, 4, 45),
+				new OrientedBox2D(30, 35, 6, 2, 90) };
+		return OrientedBoxTable.fromBoxes(labels, boxes);
+	}
+}
@@ -82,4 +82,36 @@ public class Polygons2DTest
 		}
 	}
 
+	@Test
+	public void testConvexHull_monotoneChain_sameAsJarvis()
+	{
+		ArrayList<Point2D> points = new ArrayList<Point2D>();
+		points.add(new Point2D.Double( 30,  90));
+		points.add(new Point2D.Double(110,  10));
+		points.add(new Point2D.Double( 60,  80));
+		points.add(new Point2D.Double( 40,  30));
+		points.add(new Point2D.Double( 50, 150));
+		points.add(new Point2D.Double( 80, 110));
+		points.add(new Point2D.Double( 10,  60));
+		points.add(new Point2D.Double( 70,  40));
+		points.add(new Point2D.Double( 90,  70));
+		points.add(new Point2D.Double(140,  50));
+		points.add(new Point2D.Double(100, 130));
+		points.add(new Point2D.Double(160, 140));
+		points.add(new Point2D.Double(150,  20));
+		points.add(new Point2D.Double(130, 160));
+		points.add(new Point2D.Double( 20, 120));
+		points.add(new Point2D.Double(120, 100));
+
+		ArrayList<Point2D> hull1 = Polygons2D.convexHull_jarvis(points);
+		ArrayList<Point2D> hull2 = Polygons2D.convexHull_monotoneChain(points);
+		
+		assertEquals(hull1.size(), hull2.size());
+		assertTrue(hull1.containsAll(hull2));
+		Point2D c1 = Polygons2D.centroid(hull1);
+		Point2D c2 = Polygons2D.centroid(hull2);
+		assertEquals(c1.getX(), c2.getX(), .01);
+		assertEquals(c1.getY(), c2.getY(), .01);
+	}
+
 }
@@ -0,0 +1,111 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the default projection kernel, that may be vectorized, with the
+ * scalar implementation.
+ * 
+ * @author dlegland
+ *
+ */
+public class ProjectionKernelTest
+{
+	@Test
+	public void testProjectionRange()
+	{
+		ProjectionKernel scalar = new ScalarProjectionKernel();
+		ProjectionKernel kernel = ProjectionKernels.getDefault();
+		Random random = new Random(42);
+		
+		// use various sizes to check processing of remaining elements
+		for (int n = 1; n < 40; n++)
+		{
+			double[] xCoords = randomArray(random, n);
+			double[] yCoords = randomArray(random, n);
+			double[] exp = new double[2];
+			double[] res = new double[2];
+			scalar.projectionRange(xCoords, yCoords, n, .6, .8, exp);
+			kernel.projectionRange(xCoords, yCoords, n, .6, .8, res);
+			assertEquals(exp[0], res[0], 1e-10);
+			assertEquals(exp[1], res[1], 1e-10);
+		}
+	}
+
+	@Test
+	public void testMaxAbsCross()
+	{
+		ProjectionKernel scalar = new ScalarProjectionKernel();
+		ProjectionKernel kernel = ProjectionKernels.getDefault();
+		Random random = new Random(42);
+		
+		for (int n = 1; n < 40; n++)
+		{
+			double[] xCoords = randomArray(random, n);
+			double[] yCoords = randomArray(random, n);
+			double exp = scalar.maxAbsCross(xCoords, yCoords, n, 10, 20, 3, -4);
+			double res = kernel.maxAbsCross(xCoords, yCoords, n, 10, 20, 3, -4);
+			assertEquals(exp, res, 1e-10);
+		}
+	}
+
+	@Test
+	public void testMaxDistanceSq()
+	{
+		ProjectionKernel scalar = new ScalarProjectionKernel();
+		ProjectionKernel kernel = ProjectionKernels.getDefault();
+		Random random = new Random(42);
+		
+		for (int n = 1; n < 40; n++)
+		{
+			double[] xCoords = randomArray(random, n);
+			double[] yCoords = randomArray(random, n);
+			for (int start = 0; start <= n; start++)
+			{
+				int[] expIndex = new int[1];
+				int[] resIndex = new int[1];
+				double exp = scalar.maxDistanceSq(xCoords, yCoords, start, n, 50, 50, expIndex);
+				double res = kernel.maxDistanceSq(xCoords, yCoords, start, n, 50, 50, resIndex);
+				assertEquals(exp, res, 1e-10);
+				assertEquals(expIndex[0], resIndex[0]);
+			}
+		}
+	}
+
+	/**
+	 * When several points are at the largest distance, the first one is
+	 * returned.
+	 */
+	@Test
+	public void testMaxDistanceSq_ties()
+	{
+		ProjectionKernel kernel = ProjectionKernels.getDefault();
+		
+		for (int n = 1; n < 40; n++)
+		{
+			double[] xCoords = new double[n];
+			double[] yCoords = new double[n];
+			int[] index = new int[1];
+			double res = kernel.maxDistanceSq(xCoords, yCoords, 0, n, 3, 4, index);
+			assertEquals(25, res, 1e-10);
+			assertEquals(0, index[0]);
+		}
+	}
+
+	private static final double[] randomArray(Random random, int n)
+	{
+		double[] array = new double[n];
+		for (int i = 0; i < n; i++)
+		{
+			array[i] = random.nextDouble() * 100;
+		}
+		return array;
+	}
+}
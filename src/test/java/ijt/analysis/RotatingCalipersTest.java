@@ -0,0 +1,187 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+/**
+ * @author dlegland
+ *
+ */
+public class RotatingCalipersTest
+{
+	@Test
+	public void testCompute_rectangle()
+	{
+		ArrayList<Point2D> vertices = new ArrayList<Point2D>(4);
+		vertices.add(new Point2D.Double(10, 20));
+		vertices.add(new Point2D.Double(10+30, 20));
+		vertices.add(new Point2D.Double(10+30, 20+40));
+		vertices.add(new Point2D.Double(10, 20+40));
+
+		RotatingCalipers.Descriptors desc = RotatingCalipers.compute(vertices);
+
+		assertEquals(30, desc.minFeret, 1e-8);
+		assertEquals(50, desc.maxFeret, 1e-8);
+		assertEquals(40, desc.perpendicularFeret, 1e-8);
+		assertEquals(25, desc.box.x0, 1e-8);
+		assertEquals(40, desc.box.y0, 1e-8);
+		assertEquals(40, desc.box.length, 1e-8);
+		assertEquals(30, desc.box.width, 1e-8);
+		assertEquals(90, desc.box.theta, 1e-8);
+	}
+
+	/**
+	 * Polygon with two parallel horizontal edges, the diameter being obtained
+	 * with the second vertex of the opposite edge.
+	 */
+	@Test
+	public void testCompute_parallelEdges()
+	{
+		ArrayList<Point2D> vertices = new ArrayList<Point2D>(14);
+		vertices.add(new Point2D.Double(17, 121));
+		vertices.add(new Point2D.Double(18, 117));
+		vertices.add(new Point2D.Double(19, 114));
+		vertices.add(new Point2D.Double(21, 110));
+		vertices.add(new Point2D.Double(23, 108));
+		vertices.add(new Point2D.Double(26, 108));
+		vertices.add(new Point2D.Double(27, 112));
+		vertices.add(new Point2D.Double(27, 116));
+		vertices.add(new Point2D.Double(26, 122));
+		vertices.add(new Point2D.Double(24, 130));
+		vertices.add(new Point2D.Double(22, 136));
+		vertices.add(new Point2D.Double(21, 137));
+		vertices.add(new Point2D.Double(18, 137));
+		vertices.add(new Point2D.Double(17, 133));
+
+		RotatingCalipers.Descriptors desc = RotatingCalipers.compute(vertices);
+
+		assertEquals(Math.hypot(8, 29), desc.maxFeret, 1e-8);
+	}
+
+	/**
+	 * Hulls of random lattice points frequently have parallel opposite
+	 * edges. Compares the maximum diameter with the largest distance between
+	 * two vertices.
+	 */
+	@Test
+	public void testCompute_latticeHullsMaxFeret()
+	{
+		Random random = new Random(26);
+		for (int t = 0; t < 500; t++)
+		{
+			ArrayList<Point2D> points = new ArrayList<Point2D>();
+			int nPoints = 3 + random.nextInt(20);
+			for (int i = 0; i < nPoints; i++)
+			{
+				points.add(new Point2D.Double(random.nextInt(8), random.nextInt(8)));
+			}
+			ArrayList<Point2D> hull = Polygons2D.convexHull_monotoneChain(points);
+			if (hull.size() < 3)
+			{
+				continue;
+			}
+
+			double maxDist = 0;
+			for (Point2D p1 : hull)
+			{
+				for (Point2D p2 : hull)
+				{
+					maxDist = Math.max(maxDist, p1.distance(p2));
+				}
+			}
+
+			RotatingCalipers.Descriptors desc = RotatingCalipers.compute(hull);
+			assertEquals(maxDist, desc.maxFeret, 1e-8);
+		}
+	}
+
+	/**
+	 * The same rectangle, with clockwise orientation.
+	 */
+	@Test
+	public void testCompute_rectangleClockwise()
+	{
+		ArrayList<Point2D> vertices = new ArrayList<Point2D>(4);
+		vertices.add(new Point2D.Double(10, 20));
+		vertices.add(new Point2D.Double(10, 20+40));
+		vertices.add(new Point2D.Double(10+30, 20+40));
+		vertices.add(new Point2D.Double(10+30, 20));
+
+		RotatingCalipers.Descriptors desc = RotatingCalipers.compute(vertices);
+
+		assertEquals(30, desc.minFeret, 1e-8);
+		assertEquals(50, desc.maxFeret, 1e-8);
+		assertEquals(25, desc.box.x0, 1e-8);
+		assertEquals(40, desc.box.y0, 1e-8);
+		assertEquals(40, desc.box.length, 1e-8);
+	}
+
+	@Test
+	public void testCompute_rotatedSquare()
+	{
+		// square with side length 10*sqrt(2), rotated by 45 degrees
+		ArrayList<Point2D> vertices = new ArrayList<Point2D>(4);
+		vertices.add(new Point2D.Double(20, 10));
+		vertices.add(new Point2D.Double(30, 20));
+		vertices.add(new Point2D.Double(20, 30));
+		vertices.add(new Point2D.Double(10, 20));
+
+		RotatingCalipers.Descriptors desc = RotatingCalipers.compute(vertices);
+
+		assertEquals(10 * Math.sqrt(2), desc.minFeret, 1e-8);
+		assertEquals(20, desc.maxFeret, 1e-8);
+		assertEquals(20, desc.box.x0, 1e-8);
+		assertEquals(20, desc.box.y0, 1e-8);
+		assertEquals(45, desc.box.theta % 90, 1e-8);
+	}
+
+	@Test
+	public void testCompute_segment()
+	{
+		ArrayList<Point2D> vertices = new ArrayList<Point2D>(3);
+		vertices.add(new Point2D.Double(0, 0));
+		vertices.add(new Point2D.Double(3, 4));
+		vertices.add(new Point2D.Double(6, 8));
+
+		RotatingCalipers.Descriptors desc = RotatingCalipers.compute(vertices);
+
+		assertEquals(0, desc.minFeret, 1e-8);
+		assertEquals(10, desc.maxFeret, 1e-8);
+		assertEquals(3, desc.box.x0, 1e-8);
+		assertEquals(4, desc.box.y0, 1e-8);
+	}
+
+	@Test
+	public void testCompute_circles()
+	{
+		String fileName = getClass().getResource("/files/circles.tif").getFile();
+		ImagePlus imagePlus = IJ.openImage(fileName);
+		assertNotNull(imagePlus);
+
+		ImageProcessor image = imagePlus.getProcessor();
+		ArrayList<Point2D> points = FeretDiameters.binaryParticleCorners(image);
+		ArrayList<Point2D> convHull = Polygons2D.convexHull_jarvis(points);
+
+		RotatingCalipers.Descriptors desc = RotatingCalipers.compute(convHull);
+
+		// compare with results of separate computations
+		assertEquals(FeretDiameters.minFeretDiameterNaive(convHull).diameter, desc.minFeret, 1e-8);
+		assertEquals(FeretDiameters.maxFeretDiameter(convHull).diameter, desc.maxFeret, 1e-8);
+		assertEquals(272.23, desc.perpendicularFeret, .05);
+		assertEquals(272.23, desc.box.length, .05);
+		assertEquals(108.86, desc.box.width, .05);
+	}
+}
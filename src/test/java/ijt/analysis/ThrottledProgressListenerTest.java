@@ -0,0 +1,118 @@
+/**
+ *
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * @author dlegland
+ *
+ */
+public class ThrottledProgressListenerTest
+{
+	@Test
+	public void testProgress_throttled()
+	{
+		final AtomicInteger reports = new AtomicInteger(0);
+		ThrottledProgressListener progress = new ThrottledProgressListener(60000)
+		{
+			@Override
+			protected void report(String status, long done, long total)
+			{
+				reports.incrementAndGet();
+			}
+		};
+
+		progress.start("test", 1000);
+		for (int i = 0; i < 1000; i++)
+		{
+			progress.progress(1);
+		}
+		progress.finish();
+
+		// one report at start, one at finish
+		assertEquals(2, reports.get());
+		assertEquals(1000, progress.getDone());
+	}
+
+	@Test
+	public void testProgress_noInterval()
+	{
+		final ArrayList<Long> values = new ArrayList<Long>();
+		ThrottledProgressListener progress = new ThrottledProgressListener(0)
+		{
+			@Override
+			protected void report(String status, long done, long total)
+			{
+				values.add(done);
+			}
+		};
+
+		progress.start("test", 3);
+		progress.progress(1);
+		progress.progress(2);
+		progress.finish();
+
+		assertEquals(0, (long) values.get(0));
+		assertEquals(3, (long) values.get(values.size() - 1));
+	}
+
+	@Test
+	public void testProgress_concurrentWorkers() throws InterruptedException
+	{
+		final ThrottledProgressListener progress = new ThrottledProgressListener(1)
+		{
+			@Override
+			protected void report(String status, long done, long total)
+			{
+			}
+		};
+		progress.start("test", 40000);
+
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++)
+		{
+			threads[t] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					for (int i = 0; i < 10000; i++)
+					{
+						progress.progress(1);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+
+		assertEquals(40000, progress.getDone());
+	}
+
+	@Test
+	public void testStart_resetsCount()
+	{
+		ThrottledProgressListener progress = new ThrottledProgressListener(60000);
+		progress.start("first", 10);
+		progress.progress(5);
+		progress.start("second", 10);
+
+		assertEquals(0, progress.getDone());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructor_negativeInterval()
+	{
+		new ThrottledProgressListener(-1);
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * 
+ */
+package ijt.analysis;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+/**
+ * @author dlegland
+ *
+ */
+public class TileSummaryTest
+{
+	@Test
+	public void testMerge_sameAsWholeImage()
+	{
+		ImageProcessor image = readGrains();
+		TileSummary whole = TileSummary.compute(image, 0, 0);
+		
+		// split image into tiles with various sizes, and merge summaries in
+		// two different orders
+		ArrayList<TileSummary> tiles = computeTiles(image, 37, 53);
+		TileSummary merged1 = tiles.get(0);
+		for (int i = 1; i < tiles.size(); i++)
+		{
+			merged1 = merged1.merge(tiles.get(i));
+		}
+		Collections.reverse(tiles);
+		TileSummary merged2 = tiles.get(0);
+		for (int i = 1; i < tiles.size(); i++)
+		{
+			merged2 = tiles.get(i).merge(merged2);
+		}
+		
+		assertArrayEquals(whole.getLabels(), merged1.getLabels());
+		assertArrayEquals(whole.toByteArray(), merged1.toByteArray());
+		assertArrayEquals(whole.toByteArray(), merged2.toByteArray());
+		
+		OrientedBoxTable boxes = whole.toBoxes(OrientedBox2D.Criterion.MIN_WIDTH);
+		OrientedBoxTable mergedBoxes = merged1.toBoxes(OrientedBox2D.Criterion.MIN_WIDTH);
+		assertArrayEquals(boxes.width, mergedBoxes.width, 0.0);
+		assertArrayEquals(boxes.length, mergedBoxes.length, 0.0);
+	}
+
+	@Test
+	public void testToBoxes_sameAsOrientedBox()
+	{
+		ImageProcessor image = readGrains();
+		Map<Integer, OrientedBox2D> boxes = OrientedBox2D.orientedBox(image, OrientedBox2D.Criterion.MIN_AREA);
+		
+		TileSummary summary = TileSummary.compute(image, 0, 0);
+		OrientedBoxTable table = summary.toBoxes(OrientedBox2D.Criterion.MIN_AREA);
+		
+		assertEquals(boxes.size(), table.size());
+		for (Map.Entry<Integer, OrientedBox2D> entry : boxes.entrySet())
+		{
+			int index = table.indexOf(entry.getKey());
+			OrientedBox2D box = entry.getValue();
+			assertEquals(box.length * box.width, table.length[index] * table.width[index], 1e-8);
+		}
+	}
+
+	@Test
+	public void testPixelCountAndBounds()
+	{
+		ImageProcessor image = readGrains();
+		TileSummary summary = TileSummary.compute(image, 0, 0);
+		ArrayList<TileSummary> tiles = computeTiles(image, 64, 64);
+		TileSummary merged = tiles.get(0);
+		for (int i = 1; i < tiles.size(); i++)
+		{
+			merged = merged.merge(tiles.get(i));
+		}
+		
+		int label = summary.getLabels()[0];
+		long count = 0;
+		for (int y = 0; y < image.getHeight(); y++)
+		{
+			for (int x = 0; x < image.getWidth(); x++)
+			{
+				if ((int) image.getf(x, y) == label)
+				{
+					count++;
+				}
+			}
+		}
+		assertEquals(count, summary.getPixelCount(label));
+		assertEquals(count, merged.getPixelCount(label));
+		assertEquals(summary.getBounds(label), merged.getBounds(label));
+	}
+
+	@Test
+	public void testReadWrite() throws IOException
+	{
+		ImageProcessor image = readGrains();
+		TileSummary summary = TileSummary.compute(image, 10, 20);
+		
+		TileSummary copy = TileSummary.fromByteArray(summary.toByteArray());
+		
+		assertArrayEquals(summary.getLabels(), copy.getLabels());
+		int label = summary.getLabels()[0];
+		assertEquals(summary.getPixelCount(label), copy.getPixelCount(label));
+		assertEquals(summary.getBounds(label), copy.getBounds(label));
+		assertEquals(summary.getConvexHull(label).size(), copy.getConvexHull(label).size());
+	}
+
+	@Test(expected = IOException.class)
+	public void testRead_invalid() throws IOException
+	{
+		TileSummary.fromByteArray(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+	}
+
+	@Test
+	public void testConvexHull_collinearAndDuplicates()
+	{
+		int[] xs = new int[] { 0, 2, 4, 4, 4, 2, 0, 0, 2, 2 };
+		int[] ys = new int[] { 0, 0, 0, 2, 4, 4, 4, 2, 2, 0 };
+		int[][] hull = TileSummary.convexHull(xs, ys, xs.length);
+		
+		assertArrayEquals(new int[] { 0, 4, 4, 0 }, hull[0]);
+		assertArrayEquals(new int[] { 0, 0, 4, 4 }, hull[1]);
+	}
+
+	private ImageProcessor readGrains()
+	{
+		String fileName = getClass().getResource("/files/grains-WTH-areaOpen-lbl2.tif").getFile();
+		ImagePlus imagePlus = IJ.openImage(fileName);
+		assertNotNull(imagePlus);
+		return imagePlus.getProcessor();
+	}
+
+	private static final ArrayList<TileSummary> computeTiles(ImageProcessor image, int tileWidth, int tileHeight)
+	{
+		ArrayList<TileSummary> tiles = new ArrayList<TileSummary>();
+		for (int y0 = 0; y0 < image.getHeight(); y0 += tileHeight)
+		{
+			for (int x0 = 0; x0 < image.getWidth(); x0 += tileWidth)
+			{
+				Rectangle rect = new Rectangle(x0, y0, tileWidth, tileHeight)
+						.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+				ImageProcessor tile = image.createProcessor(rect.width, rect.height);
+				for (int y = 0; y < rect.height; y++)
+				{
+					for (int x = 0; x < rect.width; x++)
+					{
+						tile.setf(x, y, image.getf(x + rect.x, y + rect.y));
+					}
+				}
+				tiles.add(TileSummary.compute(tile, rect.x, rect.y));
+			}
+		}
+		return tiles;
+	}
+}